@@ -1,5 +1,7 @@
 package org.metadatacenter.cedar.valuerecommender;
 
+import com.codahale.metrics.Gauge;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import org.metadatacenter.cedar.util.dw.CedarMicroserviceApplication;
@@ -8,13 +10,14 @@ import org.metadatacenter.cedar.valuerecommender.resources.IndexResource;
 import org.metadatacenter.cedar.valuerecommender.resources.CommandResource;
 import org.metadatacenter.config.CedarConfig;
 import org.metadatacenter.intelligentauthoring.valuerecommender.ValueRecommenderService;
+import org.metadatacenter.intelligentauthoring.valuerecommender.recommendationcache.RecommendationCache;
 import org.metadatacenter.model.ServerName;
-import org.metadatacenter.server.search.elasticsearch.service.ElasticsearchServiceFactory;
-import org.metadatacenter.server.search.elasticsearch.service.RulesIndexingService;
 
 public class ValueRecommenderServerApplication extends
     CedarMicroserviceApplication<ValueRecommenderServerConfiguration> {
 
+  private static ValueRecommenderService valueRecommenderService;
+
   public static void main(String[] args) throws Exception {
     new ValueRecommenderServerApplication().run(args);
   }
@@ -31,11 +34,7 @@ public class ValueRecommenderServerApplication extends
 
   @Override
   public void initializeApp() {
-    ElasticsearchServiceFactory esServiceFactory = ElasticsearchServiceFactory.getInstance(cedarConfig);
-
-    RulesIndexingService rulesIndexingService = esServiceFactory.rulesIndexingService();
-    ValueRecommenderService valueRecommenderService =
-        new ValueRecommenderService(cedarConfig, rulesIndexingService);
+    valueRecommenderService = new ValueRecommenderService(cedarConfig);
 
     CommandResource.injectServices(valueRecommenderService);
   }
@@ -49,5 +48,27 @@ public class ValueRecommenderServerApplication extends
 
     final ValueRecommenderServerHealthCheck healthCheck = new ValueRecommenderServerHealthCheck();
     environment.healthChecks().register("message", healthCheck);
+
+    // Recommendation cache metrics
+    RecommendationCache recommendationCache = valueRecommenderService.getRecommendationCache();
+    environment.metrics().register("recommendation-cache.hits",
+        (Gauge<Long>) () -> recommendationCache.stats().hitCount());
+    environment.metrics().register("recommendation-cache.misses",
+        (Gauge<Long>) () -> recommendationCache.stats().missCount());
+    environment.metrics().register("recommendation-cache.evictions",
+        (Gauge<Long>) () -> recommendationCache.stats().evictionCount());
+    environment.metrics().register("recommendation-cache.size", (Gauge<Long>) recommendationCache::size);
+
+    // Stop the rules generation threads when the server stops
+    environment.lifecycle().manage(new Managed() {
+      @Override
+      public void start() {
+      }
+
+      @Override
+      public void stop() {
+        valueRecommenderService.shutdown();
+      }
+    });
   }
 }
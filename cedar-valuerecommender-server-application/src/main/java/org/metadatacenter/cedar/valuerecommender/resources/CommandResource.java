@@ -19,12 +19,15 @@ import org.metadatacenter.error.CedarErrorKey;
 import org.metadatacenter.exception.CedarException;
 import org.metadatacenter.exception.CedarProcessingException;
 import org.metadatacenter.intelligentauthoring.valuerecommender.ValueRecommenderService;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationPriority;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationRun;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationStatusReport;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.RulesMinerType;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Field;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Recommendation;
 import org.metadatacenter.intelligentauthoring.valuerecommender.io.CanGenerateRecommendationsStatus;
 import org.metadatacenter.rest.context.CedarRequestContext;
 import org.metadatacenter.server.security.model.auth.CedarPermission;
-import org.metadatacenter.server.valuerecommender.model.RulesGenerationStatus;
 import org.metadatacenter.util.http.CedarResponse;
 
 import javax.ws.rs.*;
@@ -34,7 +37,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.Optional;
 
 import static org.metadatacenter.constant.CedarPathParameters.PP_TEMPLATE_ID;
 import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
@@ -130,13 +133,92 @@ public class CommandResource extends AbstractValuerecommenderServerResource {
     return Response.ok().entity(output).build();
   }
 
+  /**
+   * Recommend values for several target fields with the same populated fields (e.g., all the fields of a form when it
+   * is opened), with a single request <br/>
+   * Input parameters: described at "recommendBatch-schema.json"
+   */
+  @POST
+  @Timed
+  @Path("/recommend-batch")
+  @ApiOperation(value = "Get recommendations for several fields", notes = "Get metadata recommendations for a list "
+      + "of target fields. It returns a recommendation per target field, in the same order as the target fields.")
+  @ApiImplicitParams({
+      @ApiImplicitParam(name = "Input", value = "The batch recommendation input", required = true,
+          dataType = "org.metadatacenter.cedar.valuerecommender.resources.swaggermodel.RecommendationBatchInput",
+          paramType = "body")
+  })
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation"),
+      @ApiResponse(code = 400, message = "Bad request"),
+      @ApiResponse(code = 401, message = "Unauthorized"),
+      @ApiResponse(code = 403, message = "Forbidden"),
+      @ApiResponse(code = 404, message = "Not found"),
+      @ApiResponse(code = 500, message = "Internal server error")
+  })
+  public Response recommendValuesBatch() throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+
+    JsonNode input = c.request().getRequestBody().asJson();
+    ObjectMapper mapper = new ObjectMapper();
+    List<Recommendation> recommendations;
+    JsonNode output = null;
+    try {
+      // Input validation against JSON schema
+      ProcessingReport validationReport = Validator.validateBatchInput(input);
+      if (!validationReport.isSuccess()) {
+        String validationMsg = Validator.extractProcessingReportMessages(validationReport);
+        return CedarResponse.badRequest()
+            .errorKey(CedarErrorKey.INVALID_INPUT)
+            .errorMessage(validationMsg)
+            .build();
+      }
+      String templateId = null;
+      if (input.get(INPUT_TEMPLATE_ID) != null) {
+        templateId = input.get(INPUT_TEMPLATE_ID).asText();
+      }
+      List<Field> populatedFields = new ArrayList<>();
+      if (input.get(INPUT_POPULATED_FIELDS) != null) {
+        populatedFields = mapper.readValue(input.get(INPUT_POPULATED_FIELDS).traverse(),
+            mapper.getTypeFactory().constructCollectionType(List.class, Field.class));
+      }
+      List<Field> targetFields = mapper.readValue(input.get(INPUT_TARGET_FIELDS).traverse(),
+          mapper.getTypeFactory().constructCollectionType(List.class, Field.class));
+
+      boolean strictMatch = false;
+      if (input.get(INPUT_STRICT_MATCH) != null) {
+        strictMatch = input.get(INPUT_STRICT_MATCH).asBoolean();
+      }
+
+      boolean includeDetails = false;
+      if (input.get(INPUT_INCLUDE_DETAILS) != null) {
+        includeDetails = input.get(INPUT_INCLUDE_DETAILS).asBoolean();
+      }
+      recommendations = valueRecommenderService.getRecommendations(templateId, populatedFields, targetFields,
+          strictMatch, FILTER_BY_RECOMMENDATION_SCORE, FILTER_BY_CONFIDENCE, FILTER_BY_SUPPORT, USE_MAPPINGS,
+          includeDetails);
+
+      output = mapper.valueToTree(recommendations);
+    } catch (IllegalArgumentException e) {
+      return CedarResponse.badRequest()
+          .errorKey(CedarErrorKey.INVALID_INPUT)
+          .errorMessage(e.getMessage())
+          .build();
+    } catch (Exception e) {
+      throw new CedarProcessingException(e);
+    }
+    return Response.ok().entity(output).build();
+  }
+
   /**
    * Generates the mining rules that the value recommender will use to generate the recommendations.
    * TODO: Think about the best strategy to invoke the rules generation process (e.g., use a cron job?,
    * generate the rules and index them in Elasticsearch when a new instance is created/updated/deleted?<br/>
    *
    * <ul>Input parameters:
-   * <li>templateId (optional): template used to generate the rules</li></ul>
+   * <li>templateId (optional): template used to generate the rules</li>
+   * <li>miner (optional): rules mining algorithm (apriori or fpgrowth)</li></ul>
    */
   @POST
   @Timed
@@ -153,14 +235,88 @@ public class CommandResource extends AbstractValuerecommenderServerResource {
   })
   public Response generateRules(
       @ApiParam(value = "Template identifier.", required = true)
-      @PathParam(PP_TEMPLATE_ID) String templateId) throws CedarException {
+      @PathParam(PP_TEMPLATE_ID) String templateId,
+      @ApiParam(value = "Rules mining algorithm (apriori or fpgrowth). Default: apriori.")
+      @QueryParam(INPUT_RULES_MINER) String miner) throws CedarException {
     CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.RULES_INDEX_REINDEX);
 
+    RulesMinerType minerType = DEFAULT_RULES_MINER;
+    if (miner != null) {
+      try {
+        minerType = RulesMinerType.fromValue(miner);
+      } catch (IllegalArgumentException e) {
+        return CedarResponse.badRequest()
+            .errorKey(CedarErrorKey.INVALID_INPUT)
+            .errorMessage(e.getMessage())
+            .build();
+      }
+    }
+
     List<String> templateIds = new ArrayList<>(Collections.singletonList(templateId));
-    // Run the rules generation process in a new thread
-    Executors.newSingleThreadExecutor().submit(() -> valueRecommenderService.generateRules(templateIds));
+    // The rules generation process runs in the background, before any queued regeneration of all the templates
+    valueRecommenderService.scheduleRulesGeneration(templateIds, minerType, RulesGenerationPriority.USER);
+    return Response.ok().build();
+  }
+
+  /**
+   * Updates the mining rules of a template after some of its instances have been created, updated or deleted. Only
+   * the rules affected by the changes are indexed again.<br/>
+   * Input parameters: described at "updateRules-schema.json"
+   */
+  @POST
+  @Timed
+  @Path("/update-rules/{template_id}")
+  @ApiOperation(value = "Update the rules of a template", notes = "Update the mining rules of a template after some "
+      + "of its instances have been created, updated or deleted.")
+  @ApiImplicitParams({
+      @ApiImplicitParam(name = "Input", value = "The template instances that have changed", required = true,
+          dataType = "org.metadatacenter.cedar.valuerecommender.resources.swaggermodel.RulesUpdateInput",
+          paramType = "body")
+  })
+  @ApiResponses({
+      @ApiResponse(code = 200, message = "Successful operation"),
+      @ApiResponse(code = 400, message = "Bad request"),
+      @ApiResponse(code = 401, message = "Unauthorized"),
+      @ApiResponse(code = 403, message = "Forbidden"),
+      @ApiResponse(code = 404, message = "Not found"),
+      @ApiResponse(code = 500, message = "Internal server error")
+  })
+  public Response updateRules(
+      @ApiParam(value = "Template identifier.", required = true)
+      @PathParam(PP_TEMPLATE_ID) String templateId) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.RULES_INDEX_REINDEX);
+
+    JsonNode input = c.request().getRequestBody().asJson();
+    ObjectMapper mapper = new ObjectMapper();
+    try {
+      // Input validation against JSON schema
+      ProcessingReport validationReport = Validator.validateUpdateRulesInput(input);
+      if (!validationReport.isSuccess()) {
+        String validationMsg = Validator.extractProcessingReportMessages(validationReport);
+        return CedarResponse.badRequest()
+            .errorKey(CedarErrorKey.INVALID_INPUT)
+            .errorMessage(validationMsg)
+            .build();
+      }
+      List<String> updatedInstanceIds = new ArrayList<>();
+      if (input.get(INPUT_UPDATED_INSTANCE_IDS) != null) {
+        updatedInstanceIds = mapper.readValue(input.get(INPUT_UPDATED_INSTANCE_IDS).traverse(),
+            mapper.getTypeFactory().constructCollectionType(List.class, String.class));
+      }
+      List<String> deletedInstanceIds = new ArrayList<>();
+      if (input.get(INPUT_DELETED_INSTANCE_IDS) != null) {
+        deletedInstanceIds = mapper.readValue(input.get(INPUT_DELETED_INSTANCE_IDS).traverse(),
+            mapper.getTypeFactory().constructCollectionType(List.class, String.class));
+      }
+      // The rules are updated in the background
+      valueRecommenderService.scheduleRulesUpdate(templateId, updatedInstanceIds, deletedInstanceIds);
+    } catch (Exception e) {
+      throw new CedarProcessingException(e);
+    }
     return Response.ok().build();
   }
 
@@ -225,12 +381,13 @@ public class CommandResource extends AbstractValuerecommenderServerResource {
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.RULES_INDEX_REINDEX);
 
-    RulesGenerationStatus status = valueRecommenderService.getRulesGenerationStatus(templateId);
+    RulesGenerationStatusReport status = valueRecommenderService.getRulesGenerationStatus(templateId);
     return Response.ok().entity(status).build();
   }
 
   /**
-   * Returns status information about the rule generation process
+   * Returns status information about the rule generation process. The templates are sorted by id, and they can be
+   * filtered by the outcome of their last run and listed in pages.
    */
   @GET
   @Timed
@@ -245,12 +402,37 @@ public class CommandResource extends AbstractValuerecommenderServerResource {
       @ApiResponse(code = 404, message = "Not found"),
       @ApiResponse(code = 500, message = "Internal server error")
   })
-  public Response getRulesGenerationStatusAll() throws CedarException {
+  public Response getRulesGenerationStatusAll(
+      @ApiParam(value = "Outcome of the last run of the templates (running, completed, failed or interrupted).")
+      @QueryParam(INPUT_OUTCOME) String outcome,
+      @ApiParam(value = "Number of templates skipped. Default: 0.")
+      @QueryParam(INPUT_OFFSET) Integer offset,
+      @ApiParam(value = "Maximum number of templates returned. Default: all.")
+      @QueryParam(INPUT_LIMIT) Integer limit) throws CedarException {
     CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.RULES_INDEX_REINDEX);
 
-    List<RulesGenerationStatus> status = valueRecommenderService.getRulesGenerationStatus();
+    Optional<RulesGenerationRun.Outcome> outcomeFilter = Optional.empty();
+    if (outcome != null) {
+      try {
+        outcomeFilter = Optional.of(RulesGenerationRun.Outcome.valueOf(outcome.toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        return CedarResponse.badRequest()
+            .errorKey(CedarErrorKey.INVALID_INPUT)
+            .errorMessage("Invalid outcome: " + outcome)
+            .build();
+      }
+    }
+    if ((offset != null && offset < 0) || (limit != null && limit < 0)) {
+      return CedarResponse.badRequest()
+          .errorKey(CedarErrorKey.INVALID_INPUT)
+          .errorMessage("The offset and the limit must not be negative")
+          .build();
+    }
+
+    List<RulesGenerationStatusReport> status = valueRecommenderService.getRulesGenerationStatus(outcomeFilter,
+        offset != null ? offset : 0, limit != null ? limit : Integer.MAX_VALUE);
     return Response.ok().entity(status).build();
   }
 }
@@ -0,0 +1,74 @@
+package org.metadatacenter.cedar.valuerecommender.resources.swaggermodel;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+/**
+ * Documentation-only model for the value-recommender batch recommendation input.
+ *
+ * <p>The {@code /recommend-batch} method reads the request body as raw JSON, so this thin bean only documents the
+ * batch recommendation input schema: the same input as {@link RecommendationInput}, with a list of target fields
+ * instead of a single target field.</p>
+ */
+@ApiModel(value = "RecommendationBatchInput", description = "The input used to request metadata recommendations "
+    + "for several target fields at once.")
+public class RecommendationBatchInput {
+
+  @ApiModelProperty(value = "Example: https://repo.metadatacenter.org/templates/"
+      + "8bc64av5-df6b-48c8-8c61-6c016245918e")
+  private String templateId;
+
+  @ApiModelProperty(value = "The fields that have already been populated in the metadata.")
+  private List<RecommendationInput.PopulatedField> populatedFields;
+
+  @ApiModelProperty(value = "The fields for which recommendations are requested.", required = true)
+  private List<RecommendationInput.TargetField> targetFields;
+
+  @ApiModelProperty(value = "If set to true, only exact matches are considered.")
+  private Boolean strictMatch;
+
+  @ApiModelProperty(value = "If set to true, it returns details about how the recommendations were generated.")
+  private Boolean includeDetails;
+
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  public void setTemplateId(String templateId) {
+    this.templateId = templateId;
+  }
+
+  public List<RecommendationInput.PopulatedField> getPopulatedFields() {
+    return populatedFields;
+  }
+
+  public void setPopulatedFields(List<RecommendationInput.PopulatedField> populatedFields) {
+    this.populatedFields = populatedFields;
+  }
+
+  public List<RecommendationInput.TargetField> getTargetFields() {
+    return targetFields;
+  }
+
+  public void setTargetFields(List<RecommendationInput.TargetField> targetFields) {
+    this.targetFields = targetFields;
+  }
+
+  public Boolean getStrictMatch() {
+    return strictMatch;
+  }
+
+  public void setStrictMatch(Boolean strictMatch) {
+    this.strictMatch = strictMatch;
+  }
+
+  public Boolean getIncludeDetails() {
+    return includeDetails;
+  }
+
+  public void setIncludeDetails(Boolean includeDetails) {
+    this.includeDetails = includeDetails;
+  }
+}
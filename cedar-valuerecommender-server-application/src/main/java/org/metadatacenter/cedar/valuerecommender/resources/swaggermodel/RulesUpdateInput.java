@@ -0,0 +1,39 @@
+package org.metadatacenter.cedar.valuerecommender.resources.swaggermodel;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+/**
+ * Documentation-only model for the rules update input.
+ *
+ * <p>The {@code /update-rules} method reads the request body as raw JSON. This bean mirrors the
+ * "updateRules-schema.json" schema: the template instances created or updated, and the ones deleted.</p>
+ */
+@ApiModel(value = "RulesUpdateInput", description = "The template instances that have changed since the rules of a "
+    + "template were generated.")
+public class RulesUpdateInput {
+
+  @ApiModelProperty(value = "Identifiers of the template instances created or updated.")
+  private List<String> updatedInstanceIds;
+
+  @ApiModelProperty(value = "Identifiers of the template instances deleted.")
+  private List<String> deletedInstanceIds;
+
+  public List<String> getUpdatedInstanceIds() {
+    return updatedInstanceIds;
+  }
+
+  public void setUpdatedInstanceIds(List<String> updatedInstanceIds) {
+    this.updatedInstanceIds = updatedInstanceIds;
+  }
+
+  public List<String> getDeletedInstanceIds() {
+    return deletedInstanceIds;
+  }
+
+  public void setDeletedInstanceIds(List<String> deletedInstanceIds) {
+    this.deletedInstanceIds = deletedInstanceIds;
+  }
+}
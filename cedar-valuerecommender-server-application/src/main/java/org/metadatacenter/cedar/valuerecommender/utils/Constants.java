@@ -7,6 +7,8 @@ package org.metadatacenter.cedar.valuerecommender.utils;
 public class Constants {
 
   public static final String RECOMMEND_VALUES_SCHEMA_PATH = "validation/recommendValues-schema.json";
+  public static final String RECOMMEND_BATCH_SCHEMA_PATH = "validation/recommendBatch-schema.json";
+  public static final String UPDATE_RULES_SCHEMA_PATH = "validation/updateRules-schema.json";
 
   // PRIVATE //
 
@@ -13,11 +13,17 @@ import java.io.IOException;
 public class Validator {
 
   private static JsonNode schema = null;
+  private static JsonNode recommendBatchSchema = null;
+  private static JsonNode updateRulesSchema = null;
 
   static {
     try {
       schema = JsonMapper.MAPPER.readTree(Validator.class.getClassLoader().getResourceAsStream(Constants
           .RECOMMEND_VALUES_SCHEMA_PATH));
+      recommendBatchSchema = JsonMapper.MAPPER.readTree(Validator.class.getClassLoader().getResourceAsStream(Constants
+          .RECOMMEND_BATCH_SCHEMA_PATH));
+      updateRulesSchema = JsonMapper.MAPPER.readTree(Validator.class.getClassLoader().getResourceAsStream(Constants
+          .UPDATE_RULES_SCHEMA_PATH));
     } catch (IOException e) {
       //TODO: add logging
       e.printStackTrace();
@@ -28,6 +34,14 @@ public class Validator {
     return validate(schema, input);
   }
 
+  public static ProcessingReport validateBatchInput(JsonNode input) throws ProcessingException {
+    return validate(recommendBatchSchema, input);
+  }
+
+  public static ProcessingReport validateUpdateRulesInput(JsonNode input) throws ProcessingException {
+    return validate(updateRulesSchema, input);
+  }
+
   private static ProcessingReport validate(JsonNode schema, JsonNode instance) throws ProcessingException {
     JsonValidator validator = JsonSchemaFactory.byDefault().getValidator();
     return validator.validate(schema, instance);
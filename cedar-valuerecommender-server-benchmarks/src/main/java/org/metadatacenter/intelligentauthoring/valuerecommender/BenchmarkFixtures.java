@@ -0,0 +1,205 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.ArffInstance;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.AssociationRulesUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.WekaInstancesBuilder;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Field;
+import org.metadatacenter.model.CedarResourceType;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
+
+/**
+ * Synthetic templates, template instances, rules and Weka datasets used by the benchmarks. They are generated from a
+ * seed, so every run measures the same inputs, and they do not need OpenSearch or MongoDB.
+ */
+public final class BenchmarkFixtures {
+
+  public static final long SEED = 42;
+  public static final String TEMPLATE_ID = "https://repo.metadatacenter.org/templates/benchmark";
+  public static final String TARGET_FIELD_PATH = "target";
+
+  private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+  private static final String FIELD_ID_PREFIX = "https://repo.metadatacenter.org/template-fields/";
+  private static final String ELEMENT_ID_PREFIX = "https://repo.metadatacenter.org/template-elements/";
+  private static final String TERM_URI_PREFIX = "http://purl.obolibrary.org/obo/BENCHMARK_";
+  private static final int ARRAY_SIZE = 2; // Items of every multi-instance element of the template instances
+  private static final int ONTOLOGY_TERM_FREQUENCY = 3; // One of every n fields has an ontology term as value
+
+  private BenchmarkFixtures() {
+  }
+
+  /** Templates and template instances **/
+
+  /**
+   * Generates a template with a chain of nested multi-instance elements (element1 > element2 > ... > elementN). The
+   * template and each element have the same number of fields, all of them with value recommendations enabled.
+   *
+   * @param depth            Number of nested elements
+   * @param fieldsPerElement Number of fields of the template and of each element
+   */
+  public static JsonNode template(int depth, int fieldsPerElement) {
+    ObjectNode template = NODES.objectNode();
+    template.set(PROPERTIES_FIELD_NAME, templateProperties(1, depth, fieldsPerElement));
+    return template;
+  }
+
+  private static ObjectNode templateProperties(int level, int depth, int fieldsPerElement) {
+    ObjectNode properties = NODES.objectNode();
+    for (int i = 0; i < fieldsPerElement; i++) {
+      ObjectNode field = properties.putObject(fieldName(i));
+      field.put(ID_FIELD_NAME, FIELD_ID_PREFIX + level + "-" + i);
+      field.put(TYPE_FIELD_NAME, CedarResourceType.FIELD.getAtType());
+      field.putObject(UI_FIELD_NAME).put(RECOMMENDATION_ENABLED_FIELD_NAME, true);
+    }
+    if (level <= depth) {
+      ObjectNode element = NODES.objectNode();
+      element.put(ID_FIELD_NAME, ELEMENT_ID_PREFIX + level);
+      element.put(TYPE_FIELD_NAME, CedarResourceType.ELEMENT.getAtType());
+      element.set(PROPERTIES_FIELD_NAME, templateProperties(level + 1, depth, fieldsPerElement));
+      ObjectNode array = properties.putObject(elementName(level));
+      array.put("type", "array");
+      array.put("minItems", 1);
+      array.set(ITEMS_FIELD_NAME, element);
+    }
+    return properties;
+  }
+
+  /**
+   * Generates an instance of {@link #template(int, int)}. Every multi-instance element has two items, so the instance
+   * is flattened into 2^depth Weka instances.
+   *
+   * @param vocabularySize Number of distinct values of each field
+   */
+  public static JsonNode templateInstance(int depth, int fieldsPerElement, int vocabularySize, Random random) {
+    return instanceProperties(1, depth, fieldsPerElement, vocabularySize, random);
+  }
+
+  private static ObjectNode instanceProperties(int level, int depth, int fieldsPerElement, int vocabularySize,
+                                               Random random) {
+    ObjectNode properties = NODES.objectNode();
+    for (int i = 0; i < fieldsPerElement; i++) {
+      ObjectNode field = properties.putObject(fieldName(i));
+      int valueIndex = random.nextInt(vocabularySize);
+      if (i % ONTOLOGY_TERM_FREQUENCY == 0) {
+        field.put(ID_FIELD_NAME, TERM_URI_PREFIX + valueIndex);
+        field.put(LABEL_FIELD_NAME, "term " + valueIndex);
+      } else {
+        field.put(VALUE_FIELD_NAME, valueLabel(valueIndex));
+      }
+    }
+    if (level <= depth) {
+      ArrayNode items = properties.putArray(elementName(level));
+      for (int i = 0; i < ARRAY_SIZE; i++) {
+        items.add(instanceProperties(level + 1, depth, fieldsPerElement, vocabularySize, random));
+      }
+    }
+    return properties;
+  }
+
+  /** Rules and recommendation contexts **/
+
+  /**
+   * Generates rules for the target field. The premise of each rule has between one and three items, taken from the
+   * fields field0..fieldN, and the consequence is a value of the target field.
+   *
+   * @param ruleCount      Number of rules
+   * @param fieldCount     Number of fields that can be used in the premises
+   * @param vocabularySize Number of distinct values of each field
+   */
+  public static List<EsRule> rules(int ruleCount, int fieldCount, int vocabularySize, Random random)
+      throws Exception {
+    List<Integer> fieldIndexes = new ArrayList<>();
+    for (int i = 0; i < fieldCount; i++) {
+      fieldIndexes.add(i);
+    }
+    List<EsRule> rules = new ArrayList<>(ruleCount);
+    for (int i = 0; i < ruleCount; i++) {
+      Collections.shuffle(fieldIndexes, random);
+      int premiseSize = 1 + random.nextInt(Math.min(3, fieldCount));
+      List<EsRuleItem> premise = new ArrayList<>(premiseSize);
+      for (int j = 0; j < premiseSize; j++) {
+        premise.add(ruleItem(fieldName(fieldIndexes.get(j)), valueLabel(random.nextInt(vocabularySize))));
+      }
+      List<EsRuleItem> consequence = new ArrayList<>(1);
+      consequence.add(ruleItem(TARGET_FIELD_PATH, valueLabel(random.nextInt(vocabularySize))));
+      double support = 1 + random.nextInt(100);
+      double confidence = 0.3 + 0.7 * random.nextDouble();
+      rules.add(new EsRule(TEMPLATE_ID, premise, consequence, support, confidence, 1.0, 0.0, 1.0, premise.size(),
+          consequence.size()));
+    }
+    return rules;
+  }
+
+  private static EsRuleItem ruleItem(String fieldPath, String valueLabel) throws Exception {
+    return AssociationRulesUtils.buildEsRuleItem("[](" + fieldPath + ")", "[](" + valueLabel + ")");
+  }
+
+  /**
+   * Generates the populated fields of a recommendation request: the first contextSize fields of
+   * {@link #rules(int, int, int, Random)}, with values of the same vocabulary
+   */
+  public static List<Field> populatedFields(int contextSize, int vocabularySize, Random random) {
+    List<Field> fields = new ArrayList<>(contextSize);
+    for (int i = 0; i < contextSize; i++) {
+      fields.add(new Field(fieldName(i), valueLabel(random.nextInt(vocabularySize)), null));
+    }
+    return fields;
+  }
+
+  /** Weka datasets **/
+
+  /**
+   * Generates a nominal Weka dataset with correlated attributes, so that Apriori finds rules. Each instance follows
+   * one of a few profiles, which determines the values of all its attributes, and some of its values are replaced
+   * with random values.
+   *
+   * @param instanceCount  Number of instances
+   * @param fieldCount     Number of attributes
+   * @param vocabularySize Number of distinct values of each attribute
+   */
+  public static Instances wekaInstances(int instanceCount, int fieldCount, int vocabularySize, Random random) {
+    int profiles = Math.max(1, vocabularySize / 2);
+    List<String> attributeNames = new ArrayList<>(fieldCount);
+    List<Boolean> consequenceEnabled = new ArrayList<>(fieldCount);
+    for (int i = 0; i < fieldCount; i++) {
+      attributeNames.add("[](" + fieldName(i) + ")");
+      consequenceEnabled.add(true);
+    }
+    WekaInstancesBuilder builder = new WekaInstancesBuilder(TEMPLATE_ID, attributeNames, consequenceEnabled);
+    for (int i = 0; i < instanceCount; i++) {
+      int profile = random.nextInt(profiles);
+      List<String> values = new ArrayList<>(fieldCount);
+      for (int j = 0; j < fieldCount; j++) {
+        int valueIndex = random.nextInt(10) == 0 ? random.nextInt(vocabularySize) : (profile + j) % vocabularySize;
+        values.add("[](" + valueLabel(valueIndex) + ")");
+      }
+      builder.addInstance(new ArffInstance(values));
+    }
+    return builder.build();
+  }
+
+  private static String fieldName(int index) {
+    return "field" + index;
+  }
+
+  private static String elementName(int level) {
+    return "element" + level;
+  }
+
+  private static String valueLabel(int index) {
+    return "Value " + index;
+  }
+
+}
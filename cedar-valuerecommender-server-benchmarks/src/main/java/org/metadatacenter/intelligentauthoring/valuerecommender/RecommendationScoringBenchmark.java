@@ -0,0 +1,78 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendationContext;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendedValue;
+import org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex.MatchedRules;
+import org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex.RulePremiseMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring and ranking of the rules that match a recommendation request
+ * ({@link ValueRecommenderService#generateRecommendations}), for different numbers of rules and context sizes. A
+ * context size of 0 measures the context-independent recommendations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecommendationScoringBenchmark {
+
+  private static final int FIELD_COUNT = 20;
+  private static final int VOCABULARY_SIZE = 10;
+
+  @Param({"100", "1000", "10000"})
+  public int ruleCount;
+
+  @Param({"0", "1", "5", "10"})
+  public int contextSize;
+
+  private List<EsRule> rules;
+  private RecommendationContext context;
+  private MatchedRules matchedRules;
+
+  @Setup
+  public void setUp() throws Exception {
+    Random random = new Random(BenchmarkFixtures.SEED);
+    rules = BenchmarkFixtures.rules(ruleCount, FIELD_COUNT, VOCABULARY_SIZE, random);
+    context = RecommendationContext.of(BenchmarkFixtures.populatedFields(contextSize, VOCABULARY_SIZE, random), false);
+    matchedRules = new MatchedRules(rules, countPremiseMatches());
+  }
+
+  private int[] countPremiseMatches() {
+    if (context.isEmpty()) {
+      return new int[rules.size()];
+    }
+    return new RulePremiseMatcher(rules).countMatches(context.getNormalizedPaths(), context.getNormalizedValues());
+  }
+
+  /**
+   * Scores and ranks rules whose premise matches have already been counted
+   */
+  @Benchmark
+  public List<RecommendedValue> generateRecommendations() {
+    return ValueRecommenderService.generateRecommendations(context, matchedRules, true, false);
+  }
+
+  @Benchmark
+  public List<RecommendedValue> generateRecommendationsWithDetails() {
+    return ValueRecommenderService.generateRecommendations(context, matchedRules, true, true);
+  }
+
+  /**
+   * Counts the premise matches of the rules (as they are counted for the rules returned by OpenSearch) and then scores
+   * and ranks them
+   */
+  @Benchmark
+  public List<RecommendedValue> matchAndGenerateRecommendations() {
+    return ValueRecommenderService.generateRecommendations(context, new MatchedRules(rules, countPremiseMatches()),
+        true, false);
+  }
+
+}
@@ -0,0 +1,46 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.BenchmarkFixtures;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.openjdk.jmh.annotations.*;
+import weka.associations.Apriori;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translation of the rules generated by Apriori to the rules indexed in OpenSearch
+ * ({@link AssociationRulesUtils#toEsRules}), for different numbers of rules. Apriori is run once per trial, on a
+ * synthetic dataset with correlated attributes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EsRulesBenchmark {
+
+  private static final int INSTANCE_COUNT = 2000;
+  private static final int FIELD_COUNT = 8;
+  private static final int VOCABULARY_SIZE = 6;
+
+  @Param({"100", "1000", "10000"})
+  public int numRules;
+
+  private Apriori aprioriResults;
+
+  @Setup
+  public void setUp() throws Exception {
+    Random random = new Random(BenchmarkFixtures.SEED);
+    aprioriResults = AssociationRulesUtils.runApriori(
+        BenchmarkFixtures.wekaInstances(INSTANCE_COUNT, FIELD_COUNT, VOCABULARY_SIZE, random), numRules, false);
+  }
+
+  @Benchmark
+  public List<EsRule> toEsRules() throws Exception {
+    return AssociationRulesUtils.toEsRules(aprioriResults, BenchmarkFixtures.TEMPLATE_ID);
+  }
+
+}
@@ -0,0 +1,80 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.metadatacenter.intelligentauthoring.valuerecommender.BenchmarkFixtures;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.TemplateNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transformation of template instances into Weka instances, as done by
+ * {@link AssociationRulesUtils#generateInstances} once the instances have been read from MongoDB. The template
+ * instances have nested multi-instance elements, so each one is flattened into 2^depth Weka instances.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstancesGenerationBenchmark {
+
+  private static final int TEMPLATE_INSTANCES = 100;
+  private static final int FIELDS_PER_ELEMENT = 10;
+  private static final int VOCABULARY_SIZE = 20;
+
+  @Param({"1", "3", "6"})
+  public int depth;
+
+  private TemplateInstanceFlattener flattener;
+  private List<String> attributeNames;
+  private List<Boolean> consequenceEnabled;
+  private List<JsonNode> templateInstances;
+
+  @Setup
+  public void setUp() throws Exception {
+    JsonNode template = BenchmarkFixtures.template(depth, FIELDS_PER_ELEMENT);
+    flattener = AssociationRulesUtils.createFlattener(BenchmarkFixtures.TEMPLATE_ID, template).get();
+    attributeNames = new ArrayList<>();
+    consequenceEnabled = new ArrayList<>();
+    for (TemplateNode node : flattener.getFieldNodes()) {
+      attributeNames.add(AssociationRulesUtils.toWekaAttributeName(node));
+      consequenceEnabled.add(node.isValueRecommendationEnabled());
+    }
+    Random random = new Random(BenchmarkFixtures.SEED);
+    templateInstances = new ArrayList<>(TEMPLATE_INSTANCES);
+    for (int i = 0; i < TEMPLATE_INSTANCES; i++) {
+      templateInstances.add(BenchmarkFixtures.templateInstance(depth, FIELDS_PER_ELEMENT, VOCABULARY_SIZE, random));
+    }
+  }
+
+  /**
+   * Flattens the template instances
+   */
+  @Benchmark
+  public void flatten(Blackhole blackhole) {
+    for (JsonNode templateInstance : templateInstances) {
+      blackhole.consume(flattener.flatten(templateInstance));
+    }
+  }
+
+  /**
+   * Flattens the template instances and builds the Weka dataset
+   */
+  @Benchmark
+  public Instances generateInstances() {
+    WekaInstancesBuilder instancesBuilder = new WekaInstancesBuilder(BenchmarkFixtures.TEMPLATE_ID, attributeNames,
+        consequenceEnabled);
+    for (JsonNode templateInstance : templateInstances) {
+      flattener.flatten(templateInstance).forEach(instancesBuilder::addInstance);
+    }
+    return instancesBuilder.build();
+  }
+
+}
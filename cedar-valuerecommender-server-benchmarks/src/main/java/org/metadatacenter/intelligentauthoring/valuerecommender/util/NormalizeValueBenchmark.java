@@ -0,0 +1,66 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization of field values ({@link CedarTextUtils#normalizeValue}) for different kinds of values. Each invocation
+ * normalizes a pool of distinct values. Non-ASCII values are cached by the normalizer, so after the warmup their
+ * results measure the cache hits, as in a long-running server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NormalizeValueBenchmark {
+
+  private static final int POOL_SIZE = 1024;
+
+  public enum ValueKind {
+    ASCII, // Plain text, e.g., homo sapiens 12
+    PUNCTUATED, // Text with symbols and mixed case, e.g., Homo-Sapiens (strain #12), v2.0!
+    NON_ASCII, // Text with diacritics, e.g., creme brulee 12 with accented letters
+    URI // Ontology term, e.g., http://purl.obolibrary.org/obo/NCBITaxon_12
+  }
+
+  @Param
+  public ValueKind kind;
+
+  private String[] values;
+
+  @Setup
+  public void setUp() {
+    values = new String[POOL_SIZE];
+    for (int i = 0; i < POOL_SIZE; i++) {
+      values[i] = value(kind, i);
+    }
+  }
+
+  private static String value(ValueKind kind, int index) {
+    switch (kind) {
+      case ASCII:
+        return "homo sapiens " + index;
+      case PUNCTUATED:
+        return "Homo-Sapiens (strain #" + index + "), v2.0!";
+      case NON_ASCII:
+        return "Caf\u00e9 cr\u00e8me br\u00fbl\u00e9e " + index;
+      case URI:
+        return "http://purl.obolibrary.org/obo/NCBITaxon_" + index;
+      default:
+        throw new IllegalArgumentException("Unknown value kind: " + kind);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(POOL_SIZE)
+  public void normalizeValue(Blackhole blackhole) {
+    for (String value : values) {
+      blackhole.consume(CedarTextUtils.normalizeValue(value));
+    }
+  }
+
+}
@@ -0,0 +1,40 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.metadatacenter.intelligentauthoring.valuerecommender.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the fields and elements of a template ({@link CedarUtils#getTemplateNodes}) for templates with
+ * different nesting depths and numbers of fields
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateNodesBenchmark {
+
+  @Param({"1", "3", "6"})
+  public int depth;
+
+  @Param({"5", "50"})
+  public int fieldsPerElement;
+
+  private JsonNode template;
+
+  @Setup
+  public void setUp() {
+    template = BenchmarkFixtures.template(depth, fieldsPerElement);
+  }
+
+  @Benchmark
+  public List<TemplateNode> getTemplateNodes() throws Exception {
+    return CedarUtils.getTemplateNodes(template, null, null);
+  }
+
+}
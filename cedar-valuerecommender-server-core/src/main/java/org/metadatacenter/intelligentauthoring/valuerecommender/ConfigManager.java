@@ -1,11 +1,20 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender;
 
 import org.metadatacenter.config.CedarConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
 
 public class ConfigManager {
 
+  private static final Logger logger = LoggerFactory.getLogger(ConfigManager.class);
+
   private static ConfigManager singleInstance;
   private static CedarConfig cedarConfig;
+  private static File dataDirectory;
 
   private ConfigManager() {};
 
@@ -24,4 +33,27 @@ public class ConfigManager {
     return cedarConfig;
   }
 
+  /**
+   * @return The folder where the data that must survive a server restart is saved (the active rules generations, the
+   * value distributions, the incremental mining states and the rules generation history). It is set with the
+   * DATA_DIRECTORY_ENV_VAR environment variable, and it defaults to DEFAULT_DATA_DIRECTORY under CEDAR_HOME.
+   */
+  public static synchronized File getDataDirectory() {
+    if (dataDirectory == null) {
+      String directory = System.getenv(DATA_DIRECTORY_ENV_VAR);
+      if (directory != null && !directory.isEmpty()) {
+        dataDirectory = new File(directory);
+      } else {
+        String cedarHome = System.getenv(CEDAR_HOME_ENV_VAR);
+        if (cedarHome == null || cedarHome.isEmpty()) {
+          cedarHome = System.getProperty("user.home");
+          logger.warn(CEDAR_HOME_ENV_VAR + " is not set. The data directory will be created in " + cedarHome);
+        }
+        dataDirectory = new File(cedarHome, DEFAULT_DATA_DIRECTORY);
+      }
+      logger.info("Data directory: " + dataDirectory.getAbsolutePath());
+    }
+    return dataDirectory;
+  }
+
 }
@@ -1,13 +1,18 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender;
 
 import org.metadatacenter.exception.CedarProcessingException;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationPriority;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationRun;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationStatusReport;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.RulesMinerType;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Field;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Recommendation;
 import org.metadatacenter.intelligentauthoring.valuerecommender.io.CanGenerateRecommendationsStatus;
-import org.metadatacenter.server.valuerecommender.model.RulesGenerationStatus;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Value Recommender service interface
@@ -16,6 +21,14 @@ public interface IValueRecommenderService {
 
   void generateRules(List<String> templateId);
 
+  void generateRules(List<String> templateId, RulesMinerType minerType);
+
+  List<CompletableFuture<Void>> scheduleRulesGeneration(List<String> templateIds, RulesMinerType minerType,
+                                                        RulesGenerationPriority priority);
+
+  CompletableFuture<Void> scheduleRulesUpdate(String templateId, List<String> updatedInstanceIds,
+                                              List<String> deletedInstanceIds);
+
   CanGenerateRecommendationsStatus canGenerateRecommendations(String templateId);
 
   Recommendation getRecommendation(String templateId, List<Field> populatedFields, Field targetField,
@@ -23,8 +36,16 @@ public interface IValueRecommenderService {
                                    boolean filterByConfidence, boolean filterBySupport, boolean useMappings,
                                    boolean includeDetails) throws IOException;
 
-  List<RulesGenerationStatus> getRulesGenerationStatus();
+  List<Recommendation> getRecommendations(String templateId, List<Field> populatedFields, List<Field> targetFields,
+                                          boolean strictMatch, boolean filterByRecommendationScore,
+                                          boolean filterByConfidence, boolean filterBySupport, boolean useMappings,
+                                          boolean includeDetails) throws IOException;
+
+  List<RulesGenerationStatusReport> getRulesGenerationStatus();
+
+  List<RulesGenerationStatusReport> getRulesGenerationStatus(Optional<RulesGenerationRun.Outcome> outcome, int offset,
+                                                             int limit);
 
-  RulesGenerationStatus getRulesGenerationStatus(String templateId) throws CedarProcessingException;
+  RulesGenerationStatusReport getRulesGenerationStatus(String templateId) throws CedarProcessingException;
 
 }
@@ -1,30 +1,58 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import org.apache.lucene.search.join.ScoreMode;
 import org.metadatacenter.config.CedarConfig;
 import org.metadatacenter.exception.CedarProcessingException;
 import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.AssociationRulesService;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationPriority;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationScheduler;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationProgress;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationRun;
 import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationStatusManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationStatusReport;
 import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
-import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.incremental.IncrementalRulesManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.incremental.RulesUpdate;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.RulesMinerType;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Field;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.NormalizedField;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Recommendation;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendationContext;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendationDetails;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendedValue;
+import org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch.BulkIndexingStats;
 import org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch.ElasticsearchQueryService;
 import org.metadatacenter.intelligentauthoring.valuerecommender.io.CanGenerateRecommendationsStatus;
-import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarFieldUtils;
-import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarTextUtils;
-import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarUtils;
-import org.metadatacenter.server.search.elasticsearch.service.RulesIndexingService;
+import org.metadatacenter.intelligentauthoring.valuerecommender.recommendationcache.RecommendationCache;
+import org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex.InMemoryRulesIndex;
+import org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex.InMemoryRulesIndexManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex.MatchedRules;
+import org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex.RulePremiseMatcher;
+import org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex.RulesGenerationsManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.FieldValueResultUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions.FieldValueDistribution;
+import org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions.TemplateValueDistributions;
+import org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions.ValueDistributionsManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions.ValueFrequency;
 import org.metadatacenter.server.valuerecommender.model.RulesGenerationStatus;
+import org.opensearch.action.search.MultiSearchRequest;
+import org.opensearch.action.search.MultiSearchResponse;
 import org.opensearch.action.search.SearchRequest;
 import org.opensearch.action.search.SearchResponse;
 import org.opensearch.client.RequestOptions;
 import org.opensearch.index.query.*;
+import org.opensearch.index.query.functionscore.ScriptScoreQueryBuilder;
+import org.opensearch.script.Script;
+import org.opensearch.script.ScriptType;
 import org.opensearch.search.SearchHit;
+import org.opensearch.search.aggregations.AggregationBuilders;
+import org.opensearch.search.aggregations.BucketOrder;
+import org.opensearch.search.aggregations.bucket.nested.Nested;
+import org.opensearch.search.aggregations.bucket.nested.ReverseNested;
+import org.opensearch.search.aggregations.bucket.terms.Terms;
+import org.opensearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.opensearch.search.aggregations.metrics.Max;
+import org.opensearch.search.aggregations.metrics.Sum;
 import org.opensearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,19 +60,34 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
 
 public class ValueRecommenderService implements IValueRecommenderService {
 
+  // context_matching_score(r,C) * confidence(r), where the score of the query is |antecedent(r) ∩ C|
+  private static final String SCRIPT_PARAM_CONTEXT_SIZE = "contextSize";
+  private static final String RECOMMENDATION_SCORE_SCRIPT =
+      "double intersection = _score; " +
+      "double union = params." + SCRIPT_PARAM_CONTEXT_SIZE + " + doc['" + INDEX_PREMISE_SIZE + "'].value - " +
+      "intersection; " +
+      "return union > 0 ? intersection / union * doc['" + INDEX_RULE_CONFIDENCE + "'].value : 0;";
+
   private final Logger logger = LoggerFactory.getLogger(ValueRecommenderService.class);
-  private RulesIndexingService rulesIndexingService;
   private static ElasticsearchQueryService esQueryService;
-
-  public ValueRecommenderService(CedarConfig config, RulesIndexingService rulesIndexingService) {
+  private InMemoryRulesIndexManager inMemoryRulesIndexManager;
+  private ValueDistributionsManager valueDistributionsManager;
+  private RulesGenerationScheduler rulesGenerationScheduler;
+  private IncrementalRulesManager incrementalRulesManager;
+  private RulesGenerationsManager rulesGenerationsManager;
+  private RecommendationCache recommendationCache;
+
+  public ValueRecommenderService(CedarConfig config) {
     // Initialize configuration manager, which will provide access to the Cedar configuration
     ConfigManager.getInstance().initialize(config);
-    this.rulesIndexingService = rulesIndexingService;
 
     // Initialize ElasticsearchQueryService
     try {
@@ -53,6 +96,12 @@ public class ValueRecommenderService implements IValueRecommenderService {
       logger.error(e.getMessage());
       e.printStackTrace();
     }
+    rulesGenerationsManager = new RulesGenerationsManager();
+    inMemoryRulesIndexManager = new InMemoryRulesIndexManager(esQueryService, rulesGenerationsManager);
+    valueDistributionsManager = new ValueDistributionsManager();
+    incrementalRulesManager = new IncrementalRulesManager();
+    recommendationCache = new RecommendationCache(RECOMMENDATION_CACHE_SIZE, RECOMMENDATION_CACHE_TTL_MINUTES);
+    rulesGenerationScheduler = new RulesGenerationScheduler(RULES_GENERATION_THREADS, this::generateRulesForTemplate);
   }
 
   /**
@@ -62,63 +111,243 @@ public class ValueRecommenderService implements IValueRecommenderService {
    */
   @Override
   public void generateRules(List<String> templateIds) {
-    AssociationRulesService service = new AssociationRulesService();
+    generateRules(templateIds, DEFAULT_RULES_MINER);
+  }
+
+  /**
+   * Generate association rules for the templates specified. The templates are processed in parallel by the rules
+   * generation scheduler, and this method returns when all of them have been processed.
+   *
+   * @param templateIds Template identifiers. If empty, the rules are generated for all the templates in the system.
+   * @param minerType   Algorithm used to generate the rules
+   */
+  @Override
+  public void generateRules(List<String> templateIds, RulesMinerType minerType) {
+    RulesGenerationPriority priority = templateIds.isEmpty() ? RulesGenerationPriority.SYSTEM :
+        RulesGenerationPriority.USER;
+    List<CompletableFuture<Void>> futures = scheduleRulesGeneration(templateIds, minerType, priority);
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException | CancellationException e) {
+      // The errors have already been logged by the scheduler
+      logger.warn("Rules generation did not complete for some templates");
+    }
+  }
+
+  /**
+   * Schedule the generation of association rules for the templates specified, without waiting for it to finish
+   *
+   * @param templateIds Template identifiers. If empty, the rules are generated for all the templates in the system.
+   * @param minerType   Algorithm used to generate the rules
+   * @param priority    Templates with a higher priority are processed first
+   * @return A future per scheduled template
+   */
+  @Override
+  public List<CompletableFuture<Void>> scheduleRulesGeneration(List<String> templateIds, RulesMinerType minerType,
+                                                               RulesGenerationPriority priority) {
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
     try {
       // Generate rules for all the templates (with instances) in the system
       if (templateIds.isEmpty()) {
         logger.info("Generating rules for all templates in the system");
-        esQueryService = new ElasticsearchQueryService(ConfigManager.getCedarConfig().getElasticsearchConfig());
         templateIds = esQueryService.getTemplateIds();
         logger.info("Total number of templates: " + templateIds.size());
       }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return futures;
+    }
 
-      logger.info("Generating rules for the following templates: " + templateIds.toString());
+    logger.info("Scheduling rules generation for the following templates: " + templateIds.toString());
+    for (String templateId : templateIds) {
+      if (Arrays.asList(IGNORED_TEMPLATES).contains(templateId)) {
+        logger.info("The template is in the list of ignored templates. Rule generation has been skipped");
+      } else {
+        futures.add(rulesGenerationScheduler.schedule(templateId, minerType, priority));
+      }
+    }
+    return futures;
+  }
 
-      for (String templateId : templateIds) {
-        if (Arrays.asList(IGNORED_TEMPLATES).contains(templateId)) {
-          logger.info("The template is in the list of ignored templates. Rule generation has been skipped");
-        } else {
-          RulesGenerationStatusManager.setStatus(templateId, RulesGenerationStatus.Status.PROCESSING);
-          // Generate rules for the template
-          logger.info("\n\n****** Generating rules for templateId: " + templateId + " ******");
-          long startTime = System.currentTimeMillis();
-          List<EsRule> rules = service.generateRulesForTemplate(templateId);
-
-          // Remove previous rules for the template
-          logger.info("Removing existing rules for templateId: " + templateId + " from the index");
-          long removedCount = rulesIndexingService.removeRulesFromIndex(templateId);
-          logger.info(removedCount + " rules removed");
-
-          // Index the new rules in bulk in Elasticsearch
-          logger.info("Indexing rules in Opensearch. Number of rules: " + rules.size());
-          esQueryService.indexRulesBulkProcessor(rules);
-          logger.info("Indexing completed");
-
-          long totalTime = System.currentTimeMillis() - startTime;
-          logger.info("Rules generation and indexing completed. Total execution time: " + totalTime / 1000 + " seg (" + totalTime + " ms)");
-          logger.info("\n****** Finished generating rules for templateId: " + templateId + " ******");
-          RulesGenerationStatusManager.setStatus(templateId, RulesGenerationStatus.Status.COMPLETED, rules.size());
+  /**
+   * Update the association rules of a template after some of its instances have been created, updated or deleted.
+   * Only the rules whose support or confidence change are indexed again. The rules of a template can only be updated
+   * incrementally if they were generated with FP-Growth, which keeps its mining state. Otherwise, they are generated
+   * again with the default miner.
+   *
+   * @param templateId         Template identifier
+   * @param updatedInstanceIds Template instances created or updated
+   * @param deletedInstanceIds Template instances deleted
+   * @return A future that is completed when the rules have been updated
+   */
+  @Override
+  public CompletableFuture<Void> scheduleRulesUpdate(String templateId, List<String> updatedInstanceIds,
+                                                     List<String> deletedInstanceIds) {
+    if (!USE_INCREMENTAL_RULES || !READ_INSTANCES_FROM_CEDAR || !incrementalRulesManager.hasState(templateId)) {
+      return rulesGenerationScheduler.schedule(templateId, DEFAULT_RULES_MINER, RulesGenerationPriority.USER);
+    }
+    incrementalRulesManager.addChanges(templateId, updatedInstanceIds, deletedInstanceIds);
+    return rulesGenerationScheduler.schedule(templateId, RulesMinerType.FP_GROWTH, RulesGenerationPriority.USER,
+        true);
+  }
+
+  /**
+   * Generate and index the association rules of a template. It is run by the rules generation scheduler, and several
+   * templates may be processed at the same time. Failures are recorded in the rules generation history.
+   */
+  private void generateRulesForTemplate(String templateId, RulesMinerType minerType, boolean incremental)
+      throws Exception {
+    RulesGenerationStatusManager.setStatus(templateId, RulesGenerationStatus.Status.PROCESSING);
+    try {
+      generateAndIndexRules(templateId, minerType, incremental);
+    } catch (Exception e) {
+      RulesGenerationStatusManager.setFailed(templateId, e.getMessage() != null ? e.getMessage() :
+          e.getClass().getSimpleName());
+      throw e;
+    }
+  }
+
+  private void generateAndIndexRules(String templateId, RulesMinerType minerType, boolean incremental)
+      throws Exception {
+    if (incremental) {
+      logger.info("\n\n****** Updating rules for templateId: " + templateId + " ******");
+      long startTime = System.currentTimeMillis();
+      // The rules are updated in the active generation, so their index ids must be known
+      Optional<Long> generation = rulesGenerationsManager.getActiveGeneration(templateId);
+      boolean hasState = incrementalRulesManager.hasState(templateId);
+      Optional<RulesUpdate> rulesUpdate =
+          generation.isPresent() ? incrementalRulesManager.update(templateId) : Optional.empty();
+      if (rulesUpdate.isPresent()) {
+        List<EsRule> rules = rulesUpdate.get().getRules();
+        setGeneration(rulesUpdate.get().getUpsertedRules(), generation.get());
+        setGeneration(rulesUpdate.get().getDeletedRules(), generation.get());
+        setGeneration(rules, generation.get());
+        RulesGenerationProgress progress = RulesGenerationStatusManager.getProgress(templateId);
+        progress.setPhase(RulesGenerationProgress.Phase.INDEXING_RULES);
+        try {
+          BulkIndexingStats stats = esQueryService.updateRules(rulesUpdate.get().getUpsertedRules(),
+              rulesUpdate.get().getDeletedRules(), progress::addRulesIndexed);
+          logger.info("Rules update indexing stats: " + stats);
+          if (stats.hasFailures()) {
+            throw new CedarProcessingException("Error updating the rules of template " + templateId);
+          }
+        } catch (Exception e) {
+          // The indexed rules no longer match the mining state, so the next update will generate them again
+          incrementalRulesManager.removeState(templateId);
+          throw e;
         }
+        incrementalRulesManager.commitState(templateId);
+        setTemplateRules(templateId, rules);
+        long totalTime = System.currentTimeMillis() - startTime;
+        logger.info("Rules update completed. Total execution time: " + totalTime + " ms");
+        RulesGenerationStatusManager.setStatus(templateId, RulesGenerationStatus.Status.COMPLETED, rules.size());
+        return;
       }
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (ProcessingException e) {
-      e.printStackTrace();
+      logger.info("The rules of template " + templateId + " cannot be updated incrementally. Generating them again");
+      // Keep the miner the rules were generated with
+      minerType = hasState ? RulesMinerType.FP_GROWTH : DEFAULT_RULES_MINER;
+    }
+
+    // Generate rules for the template
+    logger.info("\n\n****** Generating rules for templateId: " + templateId + " ******");
+    long startTime = System.currentTimeMillis();
+    List<EsRule> rules;
+    // Keep the mining state, so that instance changes can be applied to the rules
+    Optional<List<EsRule>> rebuiltRules =
+        USE_INCREMENTAL_RULES && READ_INSTANCES_FROM_CEDAR && minerType == RulesMinerType.FP_GROWTH ?
+            incrementalRulesManager.rebuild(templateId) : Optional.empty();
+    if (rebuiltRules.isPresent()) {
+      rules = rebuiltRules.get();
+    } else {
+      rules = new AssociationRulesService().generateRulesForTemplate(templateId, minerType);
+      incrementalRulesManager.removeState(templateId);
+    }
+
+    // Index the new rules in bulk in Elasticsearch, as a new generation. The queries keep using the previous rules
+    // until all the new ones have been indexed
+    long generation = rulesGenerationsManager.newGeneration(templateId);
+    setGeneration(rules, generation);
+    logger.info("Indexing rules in Opensearch. Number of rules: " + rules.size() + ". Generation: " + generation);
+    RulesGenerationProgress progress = RulesGenerationStatusManager.getProgress(templateId);
+    progress.setPhase(RulesGenerationProgress.Phase.INDEXING_RULES);
+    try {
+      BulkIndexingStats stats = esQueryService.indexRules(rules, progress::addRulesIndexed);
+      logger.info("Rules indexing stats: " + stats);
+      if (stats.hasFailures()) {
+        // The rules of the failed generation are removed when the next generation is activated
+        throw new CedarProcessingException("Error indexing the rules of template " + templateId + ". The previous " +
+            "rules are still used");
+      }
+      logger.info("Indexing completed");
+      // Switch to the new rules
+      rulesGenerationsManager.setActiveGeneration(templateId, generation);
     } catch (Exception e) {
-      e.printStackTrace();
+      // The mining state does not match the rules used, so the next update will generate them again
+      incrementalRulesManager.removeState(templateId);
+      throw e;
     }
+    incrementalRulesManager.commitState(templateId);
+
+    // Use the new rules and remove the previous ones
+    setTemplateRules(templateId, rules);
+    esQueryService.removeRulesBeforeGeneration(templateId, generation);
+
+    long totalTime = System.currentTimeMillis() - startTime;
+    logger.info("Rules generation and indexing completed. Total execution time: " + totalTime / 1000 + " seg (" + totalTime + " ms)");
+    logger.info("\n****** Finished generating rules for templateId: " + templateId + " ******");
+    RulesGenerationStatusManager.setStatus(templateId, RulesGenerationStatus.Status.COMPLETED, rules.size());
+  }
+
+  private void setGeneration(List<EsRule> rules, long generation) {
+    for (EsRule rule : rules) {
+      rule.setGeneration(generation);
+    }
+  }
+
+  /**
+   * Replaces the in-memory copy of the rules of a template and its value distributions
+   */
+  private void setTemplateRules(String templateId, List<EsRule> rules) {
+    if (USE_IN_MEMORY_RULES_INDEX) {
+      inMemoryRulesIndexManager.setRules(templateId, rules);
+    }
+    // Precompute the values used to generate context-independent recommendations
+    if (USE_VALUE_DISTRIBUTIONS) {
+      valueDistributionsManager.setRules(templateId, rules);
+    }
+    recommendationCache.invalidate(templateId);
+  }
+
+  /**
+   * @return The cache of recommended values, used to report its statistics
+   */
+  public RecommendationCache getRecommendationCache() {
+    return recommendationCache;
+  }
+
+  /**
+   * Stops the rules generation scheduler
+   */
+  public void shutdown() {
+    rulesGenerationScheduler.shutdown();
   }
 
   @Override
-  public RulesGenerationStatus getRulesGenerationStatus(String templateId) throws CedarProcessingException {
+  public RulesGenerationStatusReport getRulesGenerationStatus(String templateId) throws CedarProcessingException {
     return RulesGenerationStatusManager.getStatus(templateId);
   }
 
   @Override
-  public List<RulesGenerationStatus> getRulesGenerationStatus() {
+  public List<RulesGenerationStatusReport> getRulesGenerationStatus() {
     return RulesGenerationStatusManager.getStatus();
   }
 
+  @Override
+  public List<RulesGenerationStatusReport> getRulesGenerationStatus(Optional<RulesGenerationRun.Outcome> outcome,
+                                                                    int offset, int limit) {
+    return RulesGenerationStatusManager.getStatus(outcome, offset, limit);
+  }
+
   /**
    * This method checks if the value recommender can generate recommendations for a template or not. This call is
    * used by the Template Editor to enable or disable recommendations for a given template, before making multiple
@@ -132,7 +361,9 @@ public class ValueRecommenderService implements IValueRecommenderService {
    */
   @Override
   public CanGenerateRecommendationsStatus canGenerateRecommendations(String templateId) {
-    long numberOfRules = esQueryService.getNumberOfRules(templateId);
+    Optional<InMemoryRulesIndex> rulesIndex = inMemoryRulesIndexManager.getLoadedIndex(templateId);
+    long numberOfRules = rulesIndex.isPresent() ? rulesIndex.get().size() :
+        esQueryService.getNumberOfRules(templateId, rulesGenerationsManager.getActiveGeneration(templateId));
     boolean canGenerateRecommendations = false;
     if (numberOfRules > 0) {
       canGenerateRecommendations = true;
@@ -145,36 +376,153 @@ public class ValueRecommenderService implements IValueRecommenderService {
                                           boolean strictMatch, boolean filterByRecommendationScore,
                                           boolean filterByConfidence, boolean filterBySupport, boolean useMappings,
                                           boolean includeDetails) {
+    // The fields are normalized only once, and the normalized fields are shared by all the stages of the request
+    RecommendationContext context = RecommendationContext.of(populatedFields, useMappings);
+    NormalizedField normalizedTargetField = NormalizedField.targetField(targetField, useMappings);
+    List<RecommendedValue> recommendedValues;
+    if (USE_RECOMMENDATION_CACHE) {
+      recommendedValues = recommendationCache.get(templateId, context, normalizedTargetField, strictMatch,
+          filterByRecommendationScore, filterByConfidence, filterBySupport, includeDetails,
+          () -> generateRecommendedValues(templateId, context, normalizedTargetField, strictMatch,
+              filterByRecommendationScore, filterByConfidence, filterBySupport, includeDetails));
+    } else {
+      recommendedValues = generateRecommendedValues(templateId, context, normalizedTargetField, strictMatch,
+          filterByRecommendationScore, filterByConfidence, filterBySupport, includeDetails);
+    }
+    // The field path of the request is returned as it was received (the cached values may come from an equivalent one)
+    return new Recommendation(targetField.getFieldPath(), recommendedValues);
+  }
 
-    // Perform query to find the rules that match the condition
-    SearchResponse rulesSearchResponse = esQueryRules(Optional.ofNullable(templateId), populatedFields, targetField,
-        strictMatch,
-        filterByConfidence, filterBySupport, useMappings);
+  /**
+   * Generates the recommendations for several target fields with the same populated fields (e.g., all the fields of a
+   * form when it is opened). The relevant rules of all the target fields are found with a single pass over the
+   * in-memory rules index, or with a single multi-search request to OpenSearch.
+   *
+   * @return A recommendation per target field, in the same order as the target fields
+   */
+  @Override
+  public List<Recommendation> getRecommendations(String templateId, List<Field> populatedFields,
+                                                 List<Field> targetFields, boolean strictMatch,
+                                                 boolean filterByRecommendationScore, boolean filterByConfidence,
+                                                 boolean filterBySupport, boolean useMappings,
+                                                 boolean includeDetails) {
+    RecommendationContext context = RecommendationContext.of(populatedFields, useMappings);
+    List<NormalizedField> normalizedTargetFields = new ArrayList<>(targetFields.size());
+    for (Field targetField : targetFields) {
+      normalizedTargetFields.add(NormalizedField.targetField(targetField, useMappings));
+    }
+    List<List<RecommendedValue>> recommendedValues;
+    if (USE_RECOMMENDATION_CACHE) {
+      recommendedValues = recommendationCache.getAll(templateId, context, normalizedTargetFields, strictMatch,
+          filterByRecommendationScore, filterByConfidence, filterBySupport, includeDetails,
+          missingTargetFields -> generateRecommendedValues(templateId, context, missingTargetFields, strictMatch,
+              filterByRecommendationScore, filterByConfidence, filterBySupport, includeDetails));
+    } else {
+      recommendedValues = generateRecommendedValues(templateId, context, normalizedTargetFields, strictMatch,
+          filterByRecommendationScore, filterByConfidence, filterBySupport, includeDetails);
+    }
+    List<Recommendation> recommendations = new ArrayList<>(targetFields.size());
+    for (int i = 0; i < targetFields.size(); i++) {
+      recommendations.add(new Recommendation(targetFields.get(i).getFieldPath(), recommendedValues.get(i)));
+    }
+    return recommendations;
+  }
 
-    // Translate query result to EsRule objects
-    List<EsRule> relevantRules = new ArrayList<>();
-    for (SearchHit hit : rulesSearchResponse.getHits()) {
-      try {
-        EsRule rule = new ObjectMapper().readValue(hit.getSourceAsString(), EsRule.class);
-        relevantRules.add(rule);
-      } catch (IOException e) {
-        logger.error("Error transforming SearchHit to EsRule");
-        e.printStackTrace();
+  private List<RecommendedValue> generateRecommendedValues(String templateId, RecommendationContext context,
+                                                           NormalizedField targetField, boolean strictMatch,
+                                                           boolean filterByRecommendationScore,
+                                                           boolean filterByConfidence, boolean filterBySupport,
+                                                           boolean includeDetails) {
+    return generateRecommendedValues(templateId, context, Collections.singletonList(targetField), strictMatch,
+        filterByRecommendationScore, filterByConfidence, filterBySupport, includeDetails).get(0);
+  }
+
+  private List<List<RecommendedValue>> generateRecommendedValues(String templateId, RecommendationContext context,
+                                                                 List<NormalizedField> targetFields,
+                                                                 boolean strictMatch,
+                                                                 boolean filterByRecommendationScore,
+                                                                 boolean filterByConfidence, boolean filterBySupport,
+                                                                 boolean includeDetails) {
+    List<List<RecommendedValue>> recommendedValues = new ArrayList<>(targetFields.size());
+
+    // Context-independent recommendations are read from the value distributions of the template, if available. They
+    // are computed without filtering the rules, so they cannot be used when the rules have to be filtered.
+    if (USE_VALUE_DISTRIBUTIONS && context.isEmpty() && !filterByConfidence && !filterBySupport
+        && !context.isUseMappings()) {
+      Optional<TemplateValueDistributions> distributions = valueDistributionsManager.getDistributions(templateId);
+      if (distributions.isPresent()) {
+        for (NormalizedField targetField : targetFields) {
+          FieldValueDistribution distribution = distributions.get().getFields().get(targetField.getNormalizedPath());
+          recommendedValues.add(generateRecommendations(distribution, filterByRecommendationScore, includeDetails));
+        }
+        return recommendedValues;
+      }
+    }
+
+    List<MatchedRules> relevantRules;
+    Optional<InMemoryRulesIndex> rulesIndex =
+        USE_IN_MEMORY_RULES_INDEX ? inMemoryRulesIndexManager.getIndex(templateId) : Optional.empty();
+
+    // The details of a recommendation are generated from its rule, so they require the rules to be scored here
+    if (rulesIndex.isEmpty() && USE_SERVER_SIDE_SCORING && !includeDetails) {
+      return esScoreRecommendedValues(Optional.ofNullable(templateId), context, targetFields, strictMatch,
+          filterByRecommendationScore, filterByConfidence, filterBySupport);
+    }
+
+    if (rulesIndex.isPresent()) {
+      // Find the rules that match the condition without querying OpenSearch
+      relevantRules = rulesIndex.get().findRules(context, targetFields, strictMatch, filterByConfidence,
+          filterBySupport);
+    } else {
+      // Perform query to find the rules that match the condition
+      List<SearchResponse> rulesSearchResponses;
+      if (targetFields.size() == 1) {
+        rulesSearchResponses = Collections.singletonList(esQueryRules(Optional.ofNullable(templateId), context,
+            targetFields.get(0), strictMatch, filterByConfidence, filterBySupport));
+      } else {
+        rulesSearchResponses = esQueryRules(Optional.ofNullable(templateId), context, targetFields, strictMatch,
+            filterByConfidence, filterBySupport);
+      }
+      relevantRules = new ArrayList<>(rulesSearchResponses.size());
+      for (SearchResponse rulesSearchResponse : rulesSearchResponses) {
+        relevantRules.add(toMatchedRules(context, rulesSearchResponse));
       }
     }
 
     // Calculate the recommendation score for each rule and generate a ranked list of recommended values
-    List<RecommendedValue> recommendedValues = generateRecommendations(populatedFields, relevantRules,
-        filterByRecommendationScore, includeDetails);
+    for (MatchedRules matchedRules : relevantRules) {
+      recommendedValues.add(generateRecommendations(context, matchedRules, filterByRecommendationScore,
+          includeDetails));
+    }
+    return recommendedValues;
+  }
 
-    return new Recommendation(targetField.getFieldPath(), recommendedValues);
+  /**
+   * Translates the hits of a rules query to EsRule objects. The hits only contain the fields used to rank the
+   * recommendations (see INDEX_RULE_RANKING_FIELDS), so the rules have no mappings classes nor lift, leverage and
+   * conviction. A failed query (null response) matches no rules.
+   */
+  private MatchedRules toMatchedRules(RecommendationContext context, SearchResponse rulesSearchResponse) {
+    List<EsRule> rules = new ArrayList<>();
+    if (rulesSearchResponse != null) {
+      for (SearchHit hit : rulesSearchResponse.getHits()) {
+        try {
+          rules.add(ElasticsearchQueryService.readRule(hit));
+        } catch (IOException e) {
+          logger.error("Error transforming SearchHit to EsRule");
+          e.printStackTrace();
+        }
+      }
+    }
+    return new MatchedRules(rules, countPremiseMatches(context, rules));
   }
 
   /**
    * This method calculates the recommendation score for each value (extracted from the consequent of a rule) and
    * generates a ranked list of recommended values. Computing the recommendation scores and the final ranking
    * in Java is easy and flexible. For best performance, we could consider performing these computations
-   * at the Elasticsearch level.
+   * at the Elasticsearch level. The method does not depend on the state of the service, so it is static and can be
+   * benchmarked without connecting to OpenSearch.
    * <p>
    * The recommendation score for a value is calculated according to the following expression:
    * <p>
@@ -194,25 +542,29 @@ public class ValueRecommenderService implements IValueRecommenderService {
    * approximation for the percentage of values with a particular label for the target field. For example, if the
    * target field has only one value for all the instances, the recommendation score will be 100%.
    *
-   * @param populatedFields
-   * @param rules
+   * @param context                     Normalized populated fields
+   * @param matchedRules                Relevant rules and number of populated fields contained in their premises
    * @param filterByRecommendationScore
    * @param includeDetails
    * @return
    */
-  private List<RecommendedValue> generateRecommendations(List<Field> populatedFields, List<EsRule> rules,
-                                                         boolean filterByRecommendationScore, boolean includeDetails) {
+  static List<RecommendedValue> generateRecommendations(RecommendationContext context, MatchedRules matchedRules,
+                                                        boolean filterByRecommendationScore, boolean includeDetails) {
 
-    List<RecommendedValue> recommendedValues = new ArrayList<>();
+    // Best value for each value label (duplicated values are not recommended)
+    Map<String, RecommendedValue> recommendedValues = new LinkedHashMap<>();
     RecommendedValue.RecommendationType recommendationType;
+    List<EsRule> rules = matchedRules.getRules();
 
-    if (populatedFields.size() > 0) {
+    if (!context.isEmpty()) {
 
       recommendationType = RecommendedValue.RecommendationType.CONTEXT_DEPENDENT;
 
-      for (EsRule rule : rules) {
+      for (int i = 0; i < rules.size(); i++) {
+        EsRule rule = rules.get(i);
 
-        double contextMatchingScore = getContextMatchingScore(populatedFields, rule.getPremise());
+        double contextMatchingScore = getContextMatchingScore(context.size(), rule.getPremise().size(),
+            matchedRules.getIntersectionCounts()[i]);
         double recommendationScore = contextMatchingScore * rule.getConfidence();
 
         if (!filterByRecommendationScore || (filterByRecommendationScore && recommendationScore >= MIN_RECOMMENDATION_SCORE)) {
@@ -220,9 +572,9 @@ public class ValueRecommenderService implements IValueRecommenderService {
           RecommendedValue value = getRecommendedValueFromRule(rule, contextMatchingScore, recommendationScore,
               includeDetails, recommendationType);
 
-          if (!recommendedValues.contains(value)) { // avoid generation of duplicated values
-            recommendedValues.add(value);
-          }
+          // Keep the rule that gives the highest score to the value
+          recommendedValues.merge(value.getValueLabel(), value,
+              (current, candidate) -> candidate.compareTo(current) < 0 ? candidate : current);
         }
 
         // If we did not get any context-dependent recommendations, try context-dependent (recursive call)
@@ -259,9 +611,8 @@ public class ValueRecommenderService implements IValueRecommenderService {
           RecommendedValue value = getRecommendedValueFromRule(rule, 0, recommendationScore, includeDetails,
               recommendationType);
 
-          if (!recommendedValues.contains(value)) { // avoid generation of duplicated values
-            recommendedValues.add(value);
-          }
+          // All the rules of a value label give it the same score
+          recommendedValues.putIfAbsent(value.getValueLabel(), value);
         }
       }
     }
@@ -273,21 +624,75 @@ public class ValueRecommenderService implements IValueRecommenderService {
       maxRecommendations = MAX_RECOMMENDATIONS_CD;
     }
 
-    // Sort by score
-    Collections.sort(recommendedValues);
+    return rankRecommendations(recommendedValues.values(), maxRecommendations);
+  }
 
-    // Keep top n elements
-    if ((recommendedValues.size() > maxRecommendations) && (maxRecommendations > 1)) {
-      recommendedValues = recommendedValues.subList(0, maxRecommendations - 1);
+  /**
+   * Generates context-independent recommendations from the precomputed value distribution of the target field. The
+   * recommendation score of each value is its support as a percentage of the total support (see
+   * {@link #generateRecommendations(RecommendationContext, MatchedRules, boolean, boolean)}).
+   *
+   * @param distribution                Value distribution of the target field. It is null if there are no rules for
+   *                                    the field.
+   * @param filterByRecommendationScore
+   * @param includeDetails
+   * @return
+   */
+  private List<RecommendedValue> generateRecommendations(FieldValueDistribution distribution,
+                                                         boolean filterByRecommendationScore,
+                                                         boolean includeDetails) {
+    List<RecommendedValue> recommendedValues = new ArrayList<>();
+    if (distribution == null) {
+      return recommendedValues;
+    }
+    for (ValueFrequency valueFrequency : distribution.getValues()) {
+      double recommendationScore = valueFrequency.getSupport() / distribution.getTotalSupport();
+
+      if (!filterByRecommendationScore || recommendationScore >= MIN_RECOMMENDATION_SCORE) {
+        if (includeDetails) {
+          RecommendationDetails details = new RecommendationDetails(valueFrequency.getRule(), 0.0,
+              valueFrequency.getRuleConfidence(), valueFrequency.getRuleSupport(),
+              RecommendedValue.RecommendationType.CONTEXT_INDEPENDENT);
+          recommendedValues.add(new RecommendedValue(valueFrequency.getValueLabel(), valueFrequency.getValueType(),
+              recommendationScore, details));
+        } else {
+          recommendedValues.add(new RecommendedValue(valueFrequency.getValueLabel(), valueFrequency.getValueType(),
+              recommendationScore));
+        }
+      }
     }
+    return rankRecommendations(recommendedValues, MAX_RECOMMENDATIONS_CI);
+  }
 
-    return recommendedValues;
+  /**
+   * Selects the top recommended values (at most maxRecommendations), sorted by recommendation score
+   */
+  private static List<RecommendedValue> rankRecommendations(Collection<RecommendedValue> recommendedValues,
+                                                            int maxRecommendations) {
+    if (maxRecommendations <= 0) {
+      return new ArrayList<>();
+    }
+    // Bounded heap with the best values found so far. Its head is the worst of them, so each value is compared with
+    // it and replaces it if it is better, in O(n log k)
+    Comparator<RecommendedValue> ranking = RecommendedValue.RANKING; // Best values first
+    PriorityQueue<RecommendedValue> topValues = new PriorityQueue<>(maxRecommendations + 1, ranking.reversed());
+    for (RecommendedValue value : recommendedValues) {
+      if (topValues.size() < maxRecommendations) {
+        topValues.add(value);
+      } else if (ranking.compare(value, topValues.peek()) < 0) {
+        topValues.poll();
+        topValues.add(value);
+      }
+    }
+    List<RecommendedValue> rankedValues = new ArrayList<>(topValues);
+    rankedValues.sort(ranking);
+    return rankedValues;
   }
 
-  private RecommendedValue getRecommendedValueFromRule(EsRule rule, double contextMatchingScore,
-                                                       double recommendationScore,
-                                                       boolean includeDetails,
-                                                       RecommendedValue.RecommendationType recommendationType) {
+  private static RecommendedValue getRecommendedValueFromRule(EsRule rule, double contextMatchingScore,
+                                                              double recommendationScore,
+                                                              boolean includeDetails,
+                                                              RecommendedValue.RecommendationType recommendationType) {
     RecommendedValue value = null;
     if (includeDetails) {
       RecommendationDetails details = new RecommendationDetails(rule.toShortString(), contextMatchingScore,
@@ -305,22 +710,29 @@ public class ValueRecommenderService implements IValueRecommenderService {
   /**
    * Context matching score:
    * context_matching_score(r,C) = |antecedent(r) ∩ C| / |antecedent(r) ∪ C|
-   * <p>
-   * If there is no context, it returns a predefined value (NO_CONTEXT_FACTOR)
+   *
+   * @param contextSize       |C|, i.e., number of populated fields
+   * @param premiseSize       |antecedent(r)|
+   * @param intersectionCount |antecedent(r) ∩ C|
    */
-  private double getContextMatchingScore(List<Field> populatedFields, List<EsRuleItem> rulePremise) {
-    int intersectionCount = 0;
-    for (EsRuleItem ruleItem : rulePremise) {
-      for (Field field : populatedFields) {
-        if (ruleItemMatchesPopulatedField(ruleItem, field)) {
-          intersectionCount++;
-        }
-      }
-    }
-    int unionCount = populatedFields.size() + rulePremise.size() - intersectionCount;
+  private static double getContextMatchingScore(int contextSize, int premiseSize, int intersectionCount) {
+    int unionCount = contextSize + premiseSize - intersectionCount;
     return (double) intersectionCount / (double) unionCount;
   }
 
+  /**
+   * Counts the number of populated fields contained in the premise of each rule. The rules are matched using posting
+   * lists (see {@link RulePremiseMatcher}).
+   *
+   * @return An array with the count for each rule (same order as the rules)
+   */
+  private int[] countPremiseMatches(RecommendationContext context, List<EsRule> rules) {
+    if (context.isEmpty()) {
+      return new int[rules.size()];
+    }
+    return new RulePremiseMatcher(rules).countMatches(context.getNormalizedPaths(), context.getNormalizedValues());
+  }
+
   /**
    * This method creates and executes an Elasticsearch query that:
    * - Finds all association rules that contain the populated fields as premises and the target field as consequence.
@@ -328,7 +740,8 @@ public class ValueRecommenderService implements IValueRecommenderService {
    *
    * @param templateId         Template identifier (optional). If it is provided, the query is limited to the rules of
    *                           a particular template. Otherwise, all the rules in the system are queried.
-   * @param populatedFields    Populated fields and their values.
+   * @param context            Populated fields and their values, normalized. It also indicates whether mappings are
+   *                           used: for ontology uris, it tries to match the uri with other equivalent uris.
    * @param targetField        Target field.
    * @param strictMatch        It performs a strict search in the sense that it will only return the rules that contain
    *                           premises that exactly match the populated fields and just one consequence, which
@@ -338,12 +751,232 @@ public class ValueRecommenderService implements IValueRecommenderService {
    *                           consequence matches the target field.
    * @param filterByConfidence Sets a minimum confidence threshold
    * @param filterBySupport    Sets a minimum support threshold
-   * @param useMappings        For ontology uris, tries to match the uri with other equivalent uris
    * @return An Elasticsearch response.
    */
-  private SearchResponse esQueryRules(Optional<String> templateId, List<Field> populatedFields, Field targetField,
-                                      boolean strictMatch, boolean filterByConfidence, boolean filterBySupport,
-                                      boolean useMappings) {
+  private SearchResponse esQueryRules(Optional<String> templateId, RecommendationContext context,
+                                      NormalizedField targetField, boolean strictMatch, boolean filterByConfidence,
+                                      boolean filterBySupport) {
+    SearchRequest searchRequest = buildRulesSearchRequest(templateId, context, targetField, strictMatch,
+        filterByConfidence, filterBySupport);
+
+    //logger.info("Search query in Query DSL:\n" + searchRequest);
+
+    try {
+      SearchResponse response = esQueryService.getClient().search(searchRequest, RequestOptions.DEFAULT);
+      return response;
+    } catch (IOException e) {
+      logger.error("Error executing search request", e);
+      return null;
+    }
+  }
+
+  /**
+   * Queries the rules of several target fields with a single multi-search request
+   *
+   * @return The search response of each target field, in the same order as the target fields. The response is null if
+   * the query of the target field failed.
+   */
+  private List<SearchResponse> esQueryRules(Optional<String> templateId, RecommendationContext context,
+                                            List<NormalizedField> targetFields, boolean strictMatch,
+                                            boolean filterByConfidence, boolean filterBySupport) {
+    List<SearchRequest> searchRequests = new ArrayList<>(targetFields.size());
+    for (NormalizedField targetField : targetFields) {
+      searchRequests.add(buildRulesSearchRequest(templateId, context, targetField, strictMatch,
+          filterByConfidence, filterBySupport));
+    }
+    return multiSearch(searchRequests);
+  }
+
+  /**
+   * Executes several search requests with a single multi-search request
+   *
+   * @return The response of each search request, in the same order. The response is null if the search failed.
+   */
+  private List<SearchResponse> multiSearch(List<SearchRequest> searchRequests) {
+    MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+    for (SearchRequest searchRequest : searchRequests) {
+      multiSearchRequest.add(searchRequest);
+    }
+    List<SearchResponse> responses = new ArrayList<>(searchRequests.size());
+    try {
+      MultiSearchResponse multiSearchResponse =
+          esQueryService.getClient().msearch(multiSearchRequest, RequestOptions.DEFAULT);
+      for (MultiSearchResponse.Item item : multiSearchResponse.getResponses()) {
+        if (item.isFailure()) {
+          logger.error("Error executing search request: " + item.getFailureMessage());
+        }
+        responses.add(item.getResponse());
+      }
+    } catch (IOException e) {
+      logger.error("Error executing multi search request", e);
+      responses.addAll(Collections.nCopies(searchRequests.size(), null));
+    }
+    return responses;
+  }
+
+  /**
+   * Generates the recommended values of several target fields computing the recommendation scores in OpenSearch
+   * (see {@link #generateRecommendations(RecommendationContext, MatchedRules, boolean, boolean)} for the scores).
+   * The values are deduplicated and ranked with a terms aggregation, so only the top values are returned, and all the
+   * relevant rules are considered, not only the first MAX_ES_RESULTS hits.
+   *
+   * @return The recommended values of each target field, in the same order as the target fields. The values do not
+   * include details.
+   */
+  private List<List<RecommendedValue>> esScoreRecommendedValues(Optional<String> templateId,
+                                                                RecommendationContext context,
+                                                                List<NormalizedField> targetFields,
+                                                                boolean strictMatch,
+                                                                boolean filterByRecommendationScore,
+                                                                boolean filterByConfidence, boolean filterBySupport) {
+    List<SearchRequest> searchRequests = new ArrayList<>(targetFields.size());
+    for (NormalizedField targetField : targetFields) {
+      searchRequests.add(buildRulesScoringRequest(templateId, context, targetField, strictMatch,
+          filterByRecommendationScore, filterByConfidence, filterBySupport));
+    }
+    List<SearchResponse> responses;
+    if (searchRequests.size() == 1) {
+      SearchResponse response;
+      try {
+        response = esQueryService.getClient().search(searchRequests.get(0), RequestOptions.DEFAULT);
+      } catch (IOException e) {
+        logger.error("Error executing search request", e);
+        response = null;
+      }
+      responses = Collections.singletonList(response);
+    } else {
+      responses = multiSearch(searchRequests);
+    }
+    List<List<RecommendedValue>> recommendedValues = new ArrayList<>(responses.size());
+    for (SearchResponse response : responses) {
+      recommendedValues.add(toRecommendedValues(response, !context.isEmpty(), filterByRecommendationScore));
+    }
+    return recommendedValues;
+  }
+
+  /**
+   * Builds a request that scores the relevant rules and aggregates them by consequence value. The rules are matched
+   * with the same query used by {@link #esQueryRules}, in filter context.
+   * <ul>
+   * <li>Context-dependent recommendations: the score of a rule is context_matching_score(r,C) * confidence(r). The
+   * intersection |antecedent(r) ∩ C| is the number of premise items that match a populated field, each one counting 1,
+   * and the script computes the score from it. Each value is ranked by the maximum score of its rules.</li>
+   * <li>Context-independent recommendations: each value is ranked by the support of its rules, and the total support
+   * is aggregated to compute the recommendation score.</li>
+   * </ul>
+   */
+  private SearchRequest buildRulesScoringRequest(Optional<String> templateId, RecommendationContext context,
+                                                 NormalizedField targetField, boolean strictMatch,
+                                                 boolean filterByRecommendationScore, boolean filterByConfidence,
+                                                 boolean filterBySupport) {
+    BoolQueryBuilder rulesQuery = QueryBuilders.boolQuery().filter(buildRulesQuery(templateId, context,
+        targetField, strictMatch, filterByConfidence, filterBySupport));
+
+    SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+    searchSourceBuilder.size(0);
+    TermsAggregationBuilder valuesAggregation = AggregationBuilders.terms(AGG_BY_TARGET_FIELD_VALUE_RESULT)
+        .field(INDEX_CONSEQUENCE_FIELD_VALUE_RESULT);
+
+    if (!context.isEmpty()) {
+      // Each populated field contained in the premise adds 1 to the score, which gives the intersection count
+      for (NormalizedField field : context.getPopulatedFields()) {
+        BoolQueryBuilder premiseItemQuery = QueryBuilders.boolQuery()
+            .filter(premisePathQuery(field, context.isUseMappings()))
+            .filter(premiseValueQuery(field, context.isUseMappings()));
+        rulesQuery.should(QueryBuilders.constantScoreQuery(
+            QueryBuilders.nestedQuery(INDEX_RULE_PREMISE, premiseItemQuery, ScoreMode.None)).boost(1));
+      }
+      Map<String, Object> params = new HashMap<>();
+      params.put(SCRIPT_PARAM_CONTEXT_SIZE, context.size());
+      ScriptScoreQueryBuilder scoringQuery = QueryBuilders.scriptScoreQuery(rulesQuery,
+          new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, RECOMMENDATION_SCORE_SCRIPT, params));
+      if (filterByRecommendationScore) {
+        scoringQuery.setMinScore((float) MIN_RECOMMENDATION_SCORE);
+      }
+      searchSourceBuilder.query(scoringQuery);
+
+      valuesAggregation
+          .size(MAX_RECOMMENDATIONS_CD)
+          .order(BucketOrder.compound(BucketOrder.aggregation(METRIC_MAX_SCORE, false), BucketOrder.key(true)))
+          .subAggregation(AggregationBuilders.max(METRIC_MAX_SCORE).script(new Script("_score")));
+    } else {
+      searchSourceBuilder.query(rulesQuery);
+      searchSourceBuilder.aggregation(AggregationBuilders.sum(METRIC_TOTAL_SUPPORT).field(INDEX_RULE_SUPPORT));
+
+      valuesAggregation
+          .size(MAX_RECOMMENDATIONS_CI)
+          .order(BucketOrder.compound(BucketOrder.aggregation(METRIC_SUPPORT_PATH, false), BucketOrder.key(true)))
+          .subAggregation(AggregationBuilders.reverseNested(AGG_METRICS_INFO)
+              .subAggregation(AggregationBuilders.sum(METRIC_SUPPORT).field(INDEX_RULE_SUPPORT)));
+    }
+    searchSourceBuilder.aggregation(AggregationBuilders.nested(AGG_BY_NESTED_OBJECT, INDEX_RULE_CONSEQUENCE)
+        .subAggregation(valuesAggregation));
+
+    String indexName = ConfigManager.getCedarConfig().getElasticsearchConfig().getIndexes().getRulesIndex().getName();
+    return new SearchRequest(indexName).source(searchSourceBuilder);
+  }
+
+  /**
+   * Reads the recommended values from the aggregations of a scoring request (see {@link #buildRulesScoringRequest}).
+   * A failed request (null response) returns no values.
+   */
+  private List<RecommendedValue> toRecommendedValues(SearchResponse response, boolean contextDependent,
+                                                     boolean filterByRecommendationScore) {
+    List<RecommendedValue> recommendedValues = new ArrayList<>();
+    if (response == null || response.getAggregations() == null) {
+      return recommendedValues;
+    }
+    Nested consequences = response.getAggregations().get(AGG_BY_NESTED_OBJECT);
+    Terms values = consequences.getAggregations().get(AGG_BY_TARGET_FIELD_VALUE_RESULT);
+    double totalSupport = 0;
+    if (!contextDependent) {
+      Sum totalSupportAggregation = response.getAggregations().get(METRIC_TOTAL_SUPPORT);
+      totalSupport = totalSupportAggregation.getValue();
+    }
+    for (Terms.Bucket bucket : values.getBuckets()) {
+      double recommendationScore;
+      if (contextDependent) {
+        Max maxScore = bucket.getAggregations().get(METRIC_MAX_SCORE);
+        recommendationScore = maxScore.getValue();
+      } else {
+        ReverseNested metrics = bucket.getAggregations().get(AGG_METRICS_INFO);
+        Sum support = metrics.getAggregations().get(METRIC_SUPPORT);
+        recommendationScore = totalSupport > 0 ? support.getValue() / totalSupport : 0;
+      }
+      // Context-dependent values below the threshold have already been filtered out by OpenSearch
+      if (!filterByRecommendationScore || recommendationScore >= MIN_RECOMMENDATION_SCORE) {
+        String valueResult = bucket.getKeyAsString();
+        recommendedValues.add(new RecommendedValue(FieldValueResultUtils.getValueLabel(valueResult),
+            FieldValueResultUtils.getValueType(valueResult), recommendationScore));
+      }
+    }
+    return recommendedValues;
+  }
+
+  private SearchRequest buildRulesSearchRequest(Optional<String> templateId, RecommendationContext context,
+                                                NormalizedField targetField, boolean strictMatch,
+                                                boolean filterByConfidence, boolean filterBySupport) {
+    BoolQueryBuilder mainBoolQuery = buildRulesQuery(templateId, context, targetField, strictMatch,
+        filterByConfidence, filterBySupport);
+
+    /**  Search request **/
+    String indexName = ConfigManager.getCedarConfig().getElasticsearchConfig().getIndexes().getRulesIndex().getName();
+    SearchRequest searchRequest = new SearchRequest(indexName);
+    SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+    searchSourceBuilder.query(mainBoolQuery);
+    searchSourceBuilder.size(MAX_ES_RESULTS);
+    searchSourceBuilder.fetchSource(INDEX_RULE_RANKING_FIELDS, null);
+    searchRequest.source(searchSourceBuilder);
+    return searchRequest;
+  }
+
+  /**
+   * Builds the query that matches the relevant rules (see {@link #esQueryRules})
+   */
+  private BoolQueryBuilder buildRulesQuery(Optional<String> templateId, RecommendationContext context,
+                                           NormalizedField targetField, boolean strictMatch,
+                                           boolean filterByConfidence, boolean filterBySupport) {
+    boolean useMappings = context.isUseMappings();
 
     /** Query definition **/
 
@@ -361,15 +994,16 @@ public class ValueRecommenderService implements IValueRecommenderService {
       mainBoolQuery = mainBoolQuery.must(minSupport);
     }
 
-    // If templateId is present, the query will be limited to rules from a particular template
+    // If templateId is present, the query will be limited to the active rules from a particular template
     if (templateId.isPresent()) {
-      TermQueryBuilder matchConsequenceField = QueryBuilders.termQuery(INDEX_TEMPLATE_ID, templateId.get());
-      mainBoolQuery = mainBoolQuery.must(matchConsequenceField);
+      QueryBuilder matchTemplateRules = ElasticsearchQueryService.templateRulesQuery(templateId.get(),
+          rulesGenerationsManager.getActiveGeneration(templateId.get()));
+      mainBoolQuery = mainBoolQuery.must(matchTemplateRules);
     }
 
     // Match number of premises
-    if (populatedFields.size() > 0) {
-      TermQueryBuilder matchPremiseSize = QueryBuilders.termQuery(INDEX_PREMISE_SIZE, populatedFields.size());
+    if (!context.isEmpty()) {
+      TermQueryBuilder matchPremiseSize = QueryBuilders.termQuery(INDEX_PREMISE_SIZE, context.size());
       if (strictMatch) {
         mainBoolQuery = mainBoolQuery.must(matchPremiseSize);
       } else {
@@ -382,56 +1016,12 @@ public class ValueRecommenderService implements IValueRecommenderService {
     mainBoolQuery = mainBoolQuery.must(matchConsequenceSize);
 
     // Match fields and values in premises
-    for (Field field : populatedFields) {
-
-      // Match field path
-      TermQueryBuilder matchPremiseField = QueryBuilders.termQuery(INDEX_PREMISE_FIELD_NORMALIZED_PATH,
-          CedarTextUtils.normalizePath(field.getFieldPath()));
-
-      // Match field with other uris
-      TermQueryBuilder matchPremiseFieldOtherUris = QueryBuilders.termQuery(INDEX_PREMISE_FIELD_TYPE_MAPPINGS,
-          field.getFieldPath());
-
-      // Match field bool query
-      BoolQueryBuilder premiseFieldBoolQuery = QueryBuilders.boolQuery();
-      premiseFieldBoolQuery = premiseFieldBoolQuery.should(matchPremiseField);
-      if (useMappings) {
-        premiseFieldBoolQuery = premiseFieldBoolQuery.should(matchPremiseFieldOtherUris);
-      }
-      premiseFieldBoolQuery = premiseFieldBoolQuery.minimumShouldMatch(1); // Logical OR
-
-      // Get normalized value
-      String fieldNormalizedValue = CedarFieldUtils.normalizeFieldValue(field);
-
-      // Match field normalized value
-      QueryBuilder matchPremiseFieldNormalizedValue = null;
-      if (CedarUtils.isUri(fieldNormalizedValue)) {
-        matchPremiseFieldNormalizedValue =
-            QueryBuilders.termQuery(INDEX_PREMISE_FIELD_NORMALIZED_VALUE, fieldNormalizedValue);
-      } else {
-        matchPremiseFieldNormalizedValue =
-            QueryBuilders.matchQuery(INDEX_PREMISE_FIELD_NORMALIZED_VALUE, fieldNormalizedValue);
-      }
-
-      // Match field value bool query
-      BoolQueryBuilder premiseFieldValueBoolQuery = QueryBuilders.boolQuery();
-      premiseFieldValueBoolQuery = premiseFieldValueBoolQuery.should(matchPremiseFieldNormalizedValue);
-
-      if (useMappings) {
-
-        // Match field normalized value with other uris
-        TermQueryBuilder matchPremiseFieldNormalizedValues =
-            QueryBuilders.termQuery(INDEX_PREMISE_FIELD_VALUE_MAPPINGS, fieldNormalizedValue);
-
-        premiseFieldValueBoolQuery = premiseFieldValueBoolQuery.should(matchPremiseFieldNormalizedValues);
-      }
-
-      premiseFieldValueBoolQuery = premiseFieldValueBoolQuery.minimumShouldMatch(1); // Logical OR
+    for (NormalizedField field : context.getPopulatedFields()) {
 
       // Premise bool query
       BoolQueryBuilder premiseBoolQuery = QueryBuilders.boolQuery();
-      premiseBoolQuery = premiseBoolQuery.must(premiseFieldBoolQuery);
-      premiseBoolQuery = premiseBoolQuery.must(premiseFieldValueBoolQuery);
+      premiseBoolQuery = premiseBoolQuery.must(premisePathQuery(field, useMappings));
+      premiseBoolQuery = premiseBoolQuery.must(premiseValueQuery(field, useMappings));
 
       NestedQueryBuilder premiseNestedQuery = QueryBuilders.nestedQuery(INDEX_RULE_PREMISE, premiseBoolQuery,
           ScoreMode.Avg);
@@ -444,56 +1034,56 @@ public class ValueRecommenderService implements IValueRecommenderService {
       }
     }
 
-    // Match target field
-    TermQueryBuilder matchConsequenceField = QueryBuilders.termQuery(INDEX_CONSEQUENCE_FIELD_NORMALIZED_PATH,
-        CedarTextUtils.normalizePath(targetField.getFieldPath()));
-    TermQueryBuilder matchConsequenceFieldOtherUris = QueryBuilders.termQuery(INDEX_CONSEQUENCE_FIELD_TYPE_MAPPINGS,
-        targetField.getFieldPath());
-
-    // Match target field bool query
-    BoolQueryBuilder consequenceFieldBoolQuery = QueryBuilders.boolQuery();
-    consequenceFieldBoolQuery = consequenceFieldBoolQuery.should(matchConsequenceField);
-    if (useMappings) {
-      consequenceFieldBoolQuery = consequenceFieldBoolQuery.should(matchConsequenceFieldOtherUris);
-    }
-    consequenceFieldBoolQuery = consequenceFieldBoolQuery.minimumShouldMatch(1); // Logical OR
+    // Match target field. With mappings, any field of the same mappings class matches
+    QueryBuilder matchConsequenceField = classOrTermQuery(INDEX_CONSEQUENCE_FIELD_NORMALIZED_PATH,
+        INDEX_CONSEQUENCE_FIELD_TYPE_CLASS, targetField.getNormalizedPath(), targetField.getPathClass(), useMappings);
 
     NestedQueryBuilder consequenceNestedQuery = QueryBuilders.nestedQuery(INDEX_RULE_CONSEQUENCE,
-        consequenceFieldBoolQuery, ScoreMode.Avg);
+        matchConsequenceField, ScoreMode.Avg);
 
     // Add the consequence query to the main query
     mainBoolQuery = mainBoolQuery.must(consequenceNestedQuery);
 
-    /**  Execute query and return search results **/
-    String indexName = ConfigManager.getCedarConfig().getElasticsearchConfig().getIndexes().getRulesIndex().getName();
-    SearchRequest searchRequest = new SearchRequest(indexName);
-    SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-    searchSourceBuilder.query(mainBoolQuery);
-    searchSourceBuilder.size(MAX_ES_RESULTS);
-    searchRequest.source(searchSourceBuilder);
+    return mainBoolQuery;
+  }
 
-    //logger.info("Search query in Query DSL:\n" + searchRequest);
+  /**
+   * Matches the path of a premise item. With mappings, the canonical URI of the mappings class of the field is
+   * matched, so a single term matches all the equivalent URIs.
+   */
+  private QueryBuilder premisePathQuery(NormalizedField field, boolean useMappings) {
+    return classOrTermQuery(INDEX_PREMISE_FIELD_NORMALIZED_PATH, INDEX_PREMISE_FIELD_TYPE_CLASS,
+        field.getNormalizedPath(), field.getPathClass(), useMappings);
+  }
 
-    try {
-      SearchResponse response = esQueryService.getClient().search(searchRequest, RequestOptions.DEFAULT);
-      return response;
-    } catch (IOException e) {
-      logger.error("Error executing search request", e);
-      return null;
+  /**
+   * Matches the value of a premise item. Term URIs are matched exactly (or by their mappings class, with mappings),
+   * and free text values with a match query.
+   */
+  private QueryBuilder premiseValueQuery(NormalizedField field, boolean useMappings) {
+    if (field.isUriValue()) {
+      return classOrTermQuery(INDEX_PREMISE_FIELD_NORMALIZED_VALUE, INDEX_PREMISE_FIELD_VALUE_CLASS,
+          field.getNormalizedValue(), field.getValueClass(), useMappings);
+    } else {
+      return QueryBuilders.matchQuery(INDEX_PREMISE_FIELD_NORMALIZED_VALUE, field.getNormalizedValue());
     }
   }
 
-  private boolean ruleItemMatchesPopulatedField(EsRuleItem ruleItem, Field populatedField) {
-    String populatedFieldNormalizedPath = CedarTextUtils.normalizePath(populatedField.getFieldPath());
-    String populatedFieldNormalizedValue = CedarFieldUtils.normalizeFieldValue(populatedField);
-
-    if (populatedFieldNormalizedPath.equals(ruleItem.getFieldNormalizedPath()) &&
-        populatedFieldNormalizedValue.equals(ruleItem.getFieldNormalizedValue())) {
-      return true;
-    } else {
-      return false;
+  /**
+   * Matches a normalized path or value. With mappings, its mappings class is matched too. The normalized term is
+   * still matched because the rules indexed before the mappings classes were stored do not contain them. For the
+   * rules that contain them, it does not change the result, since equal terms have the same class.
+   */
+  private QueryBuilder classOrTermQuery(String termField, String classField, String term, String termClass,
+                                        boolean useMappings) {
+    TermQueryBuilder matchTerm = QueryBuilders.termQuery(termField, term);
+    if (!useMappings) {
+      return matchTerm;
     }
+    return QueryBuilders.boolQuery()
+        .should(matchTerm)
+        .should(QueryBuilders.termQuery(classField, termClass))
+        .minimumShouldMatch(1); // Logical OR
   }
 
 }
-
@@ -3,6 +3,9 @@ package org.metadatacenter.intelligentauthoring.valuerecommender.associationrule
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Attribute values of a Weka instance. Missing values are represented as null.
+ */
 public class ArffInstance {
 
   private List<String> values;
@@ -23,16 +26,4 @@ public class ArffInstance {
     values.add(value);
   }
 
-  public String toArffFormat() {
-    String result = "";
-    for (int i=0; i<values.size(); i++) {
-      String value = values.get(i);
-      if (i==0)
-        result = result.concat(value);
-      else
-        result = result.concat(",").concat(value);
-    }
-    return result;
-  }
-
 }
@@ -2,20 +2,19 @@ package org.metadatacenter.intelligentauthoring.valuerecommender.associationrule
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
-import com.jayway.jsonpath.Configuration;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.PathNotFoundException;
 import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
 import org.metadatacenter.bridge.CedarDataServices;
 import org.metadatacenter.config.MongoConfig;
 import org.metadatacenter.exception.CedarProcessingException;
 import org.metadatacenter.intelligentauthoring.valuerecommender.ConfigManager;
-import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.ArffAttributeValue;
 import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
 import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
 import org.metadatacenter.intelligentauthoring.valuerecommender.util.FieldValueResultUtils;
 import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Field;
 import org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch.ElasticsearchQueryService;
+import org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch.SearchIdsIterator;
 import org.metadatacenter.intelligentauthoring.valuerecommender.mappings.MappingsService;
 import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarTextUtils;
 import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarUtils;
@@ -25,15 +24,16 @@ import org.metadatacenter.server.service.TemplateInstanceService;
 import org.metadatacenter.server.service.TemplateService;
 import org.metadatacenter.server.service.mongodb.TemplateInstanceServiceMongoDB;
 import org.metadatacenter.server.service.mongodb.TemplateServiceMongoDB;
+import org.metadatacenter.util.json.JsonMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import weka.associations.Apriori;
 import weka.associations.AssociationRule;
 import weka.associations.Item;
+import weka.core.Attribute;
 import weka.core.Instances;
+import weka.core.ProtectedProperties;
 import weka.core.SelectedTag;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.StringToNominal;
 import java.io.*;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
@@ -41,6 +41,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
 import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
@@ -50,143 +51,122 @@ import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Cons
  */
 public class AssociationRulesUtils {
 
-  private static ElasticsearchQueryService esQueryService;
-  private static TemplateInstanceService<String, JsonNode> templateInstanceService;
-  private static TemplateService<String, JsonNode> templateService;
   private static final Logger logger = LoggerFactory.getLogger(AssociationRulesUtils.class);
 
-  static {
-    try {
-      // Initialize ElasticsearchQueryService
-      esQueryService = new ElasticsearchQueryService(ConfigManager.getCedarConfig().getElasticsearchConfig());
-      // Initialize template and template instance services
-      CedarDataServices.initializeMongoClientFactoryForDocuments(ConfigManager.getCedarConfig()
-          .getArtifactServerConfig().getMongoConnection());
-      MongoClient mongoClientForDocuments = CedarDataServices.getMongoClientFactoryForDocuments().getClient();
-      MongoConfig artifactServerConfig = ConfigManager.getCedarConfig().getArtifactServerConfig();
-      templateService = new TemplateServiceMongoDB(mongoClientForDocuments,
-          artifactServerConfig.getDatabaseName(),
-          artifactServerConfig.getMongoCollectionName(CedarResourceType.TEMPLATE));
-      templateInstanceService = new TemplateInstanceServiceMongoDB(mongoClientForDocuments,
-          artifactServerConfig.getDatabaseName(),
-          artifactServerConfig.getMongoCollectionName(CedarResourceType.INSTANCE));
-    } catch (UnknownHostException e) {
-      logger.error(e.getMessage());
-      e.printStackTrace();
+  /**
+   * Connections to OpenSearch and MongoDB. They are created the first time they are used (holder idiom), so the
+   * utilities that transform templates, instances and rules can be used without them (e.g., in the benchmarks).
+   */
+  private static class Services {
+    private static ElasticsearchQueryService esQueryService;
+    private static TemplateInstanceService<String, JsonNode> templateInstanceService;
+    private static TemplateService<String, JsonNode> templateService;
+    private static MongoCollection<Document> templateInstancesCollection;
+
+    static {
+      try {
+        // Initialize ElasticsearchQueryService
+        esQueryService = new ElasticsearchQueryService(ConfigManager.getCedarConfig().getElasticsearchConfig());
+        // Initialize template and template instance services
+        CedarDataServices.initializeMongoClientFactoryForDocuments(ConfigManager.getCedarConfig()
+            .getArtifactServerConfig().getMongoConnection());
+        MongoClient mongoClientForDocuments = CedarDataServices.getMongoClientFactoryForDocuments().getClient();
+        MongoConfig artifactServerConfig = ConfigManager.getCedarConfig().getArtifactServerConfig();
+        templateService = new TemplateServiceMongoDB(mongoClientForDocuments,
+            artifactServerConfig.getDatabaseName(),
+            artifactServerConfig.getMongoCollectionName(CedarResourceType.TEMPLATE));
+        templateInstanceService = new TemplateInstanceServiceMongoDB(mongoClientForDocuments,
+            artifactServerConfig.getDatabaseName(),
+            artifactServerConfig.getMongoCollectionName(CedarResourceType.INSTANCE));
+        templateInstancesCollection = mongoClientForDocuments.getDatabase(artifactServerConfig.getDatabaseName())
+            .getCollection(artifactServerConfig.getMongoCollectionName(CedarResourceType.INSTANCE));
+      } catch (UnknownHostException e) {
+        logger.error(e.getMessage());
+        e.printStackTrace();
+      }
     }
   }
 
   /**
-   * Generates an ARFF file with information from all the instances for a given template
+   * Generates a Weka dataset with information from all the instances for a given template. The instances are
+   * transformed to nominal Weka instances as they are read, so no intermediate ARFF file is needed.
    *
    * @param templateId
-   * @return The name of the ARFF file that was created
+   * @return The Weka instances, or an empty optional if there are no attributes or instances for the template
    * @throws IOException
    * @throws ProcessingException
    */
-  public static Optional<String> generateInstancesFile(String templateId) throws Exception {
+  public static Optional<Instances> generateInstances(String templateId) throws Exception {
 
-    logger.info("Generating ARFF file");
-
-    String fileName = templateId.substring(templateId.lastIndexOf("/") + 1) + ".arff";
-    String filePath = System.getProperty("java.io.tmpdir") + "/" + ARFF_FOLDER_NAME + "/" + fileName;
-    File file = new File(filePath);
-    file.getParentFile().mkdirs();
-    PrintWriter fileWriter = new PrintWriter(new FileWriter(file));
-    logger.info("File path: " + file.getAbsolutePath());
-    fileWriter.println("% ARFF file for CEDAR template id = " + templateId);
-    fileWriter.println("\n@relation example\n");
+    logger.info("Generating Weka instances");
 
     // 1. Get instance attributes
-    JsonNode template = templateService.findTemplate(templateId);
-    if (template == null) {
-      logger.warn("Template not found (id=" + templateId + ")");
-      return Optional.empty();
-    }
-    List<TemplateNode> nodes = CedarUtils.getTemplateNodes(template, null, null);
-
-    // Field nodes
-    List<TemplateNode> fieldNodes = new ArrayList<>();
-    for (TemplateNode node : nodes) {
-      if (node.getType().equals(CedarResourceType.FIELD)) {
-        if (USE_ALL_FIELDS) { // Use all fields to generate rules
-          fieldNodes.add(node);
-        } else { // Consider only field for which valueRecommendations are enabled
-          if (node.isValueRecommendationEnabled()) {
-            fieldNodes.add(node);
-          }
-        }
-      }
-    }
-
-    // If there are no fields we cannot generate a valid ARFF file
-    if (fieldNodes.isEmpty()) {
-      logger.info("Skipping generation of ARFF file for template id = " + templateId + " (no attributes available)");
-      file.delete();
+    Optional<TemplateInstanceFlattener> flattenerOptional = createFlattener(templateId);
+    if (!flattenerOptional.isPresent()) {
       return Optional.empty();
     }
     else {
-      // Generate ARFF attributes
-      for (TemplateNode node : fieldNodes) {
-        if (node.getType().equals(CedarResourceType.FIELD)) {
-          fileWriter.println(toWekaAttributeFormat(node, " string"));
-        }
+      TemplateInstanceFlattener flattener = flattenerOptional.get();
+      // Generate Weka attributes
+      List<String> attributeNames = new ArrayList<>();
+      List<Boolean> consequenceEnabled = new ArrayList<>(); // Only fields with recommendations enabled are consequences
+      for (TemplateNode node : flattener.getFieldNodes()) {
+        attributeNames.add(toWekaAttributeName(node));
+        consequenceEnabled.add(node.isValueRecommendationEnabled());
       }
+      WekaInstancesBuilder instancesBuilder = new WekaInstancesBuilder(templateId, attributeNames, consequenceEnabled);
 
-      // Array nodes
-      List<TemplateNode> arrayNodes = new ArrayList<>();
-      for (TemplateNode node : nodes) {
-        if (node.isArray()) {
-          arrayNodes.add(node);
-        }
-      }
-
-      // 2. Get template instances in ARFF format
-      fileWriter.println("\n@data");
+      // 2. Get template instances as Weka instances
       final AtomicInteger instancesCount = new AtomicInteger(0);
-
-      Map<String, Integer> arraysPathsAndIndexes = new LinkedHashMap<>();
-      Integer initialIndex = 0;
-      for (TemplateNode arrayNode : arrayNodes) {
-        arraysPathsAndIndexes.put(arrayNode.generatePathDotNotation(), initialIndex);
-      }
+      RulesGenerationProgress progress = RulesGenerationStatusManager.getProgress(templateId);
+      progress.setPhase(RulesGenerationProgress.Phase.READING_INSTANCES);
 
       if (READ_INSTANCES_FROM_CEDAR) { // Read instances from the CEDAR system
-        List<String> templateInstancesIds = esQueryService.getTemplateInstancesIdsByTemplateId(templateId);
-        logger.info("Number of template instances that will be used to generate rules: " + templateInstancesIds.size());
-        logger.info("Translating instances to ARFF format");
-        for (String tiId : templateInstancesIds) {
-          JsonNode ti = templateInstanceService.findTemplateInstance(tiId);
-          if (ti !=  null) {
-            Object tiDocument = Configuration.defaultConfiguration().jsonProvider().parse(ti.toString());
-            // Transform the template instances to a list of ARFF instances
-            List<ArffInstance> arffInstances = generateArffInstances(tiDocument, fieldNodes, arrayNodes, new ArrayList
-                (arraysPathsAndIndexes.values()), 0, null);
-
-            for (ArffInstance arffInstance : arffInstances) {
-              fileWriter.println(arffInstance.toArffFormat());
-            }
-            instancesCount.getAndAdd(1);
-            if (MAX_INSTANCES_FOR_ARM > 0 && instancesCount.get() == MAX_INSTANCES_FOR_ARM) {
-              break;
+        logger.info("Translating instances to Weka instances");
+        // The instance ids are streamed from the search index, so the first instances are read while the rest of
+        // the ids are retrieved
+        try (SearchIdsIterator templateInstancesIds = Services.esQueryService.streamTemplateInstancesIds(templateId)) {
+          if (USE_BATCHED_INSTANCES_FETCH) {
+            int fetchedCount = readTemplateInstances(templateInstancesIds, MAX_INSTANCES_FOR_ARM, flattener,
+                (tiId, arffInstances) -> {
+                  arffInstances.forEach(instancesBuilder::addInstance);
+                  progress.addInstance(arffInstances.size());
+                });
+            instancesCount.getAndAdd(fetchedCount);
+          } else {
+            while (templateInstancesIds.hasNext()) {
+              JsonNode ti = Services.templateInstanceService.findTemplateInstance(templateInstancesIds.next());
+              if (ti !=  null) {
+                // Transform the template instances to a list of ARFF instances
+                List<ArffInstance> arffInstances = flattener.flatten(ti);
+
+                for (ArffInstance arffInstance : arffInstances) {
+                  instancesBuilder.addInstance(arffInstance);
+                }
+                progress.addInstance(arffInstances.size());
+                instancesCount.getAndAdd(1);
+                if (MAX_INSTANCES_FOR_ARM > 0 && instancesCount.get() == MAX_INSTANCES_FOR_ARM) {
+                  break;
+                }
+              }
             }
           }
         }
+        logger.info("Number of template instances used to generate rules: " + instancesCount.get());
       } else { // Read instances from a local folder
         try (Stream<Path> paths = Files.walk(Paths.get(CEDAR_INSTANCES_PATH))) {
           paths.filter(Files::isRegularFile).forEach(p -> {
             try {
               if (MAX_INSTANCES_FOR_ARM == -1 || instancesCount.get() < MAX_INSTANCES_FOR_ARM) {
 
-                String fileContent = new String(Files.readAllBytes(p));
-                Object tiDocument = Configuration.defaultConfiguration().jsonProvider().parse(fileContent);
+                JsonNode tiDocument = JsonMapper.MAPPER.readTree(p.toFile());
                 // Transform the template instances to a list of ARFF instances
-                List<ArffInstance> arffInstances = generateArffInstances(tiDocument, fieldNodes, arrayNodes, new ArrayList
-                    (arraysPathsAndIndexes.values()), 0, null);
+                List<ArffInstance> arffInstances = flattener.flatten(tiDocument);
 
                 for (ArffInstance arffInstance : arffInstances) {
-                  fileWriter.println(arffInstance.toArffFormat());
+                  instancesBuilder.addInstance(arffInstance);
                 }
+                progress.addInstance(arffInstances.size());
 
                 instancesCount.getAndAdd(1);
                 if (instancesCount.get() % 1000 == 0) {
@@ -202,156 +182,102 @@ public class AssociationRulesUtils {
         }
       }
 
-      fileWriter.close();
       if (instancesCount.get() == 0) { // No instances have been generated
         logger.info("No data found for template (template id: " + templateId + ")");
-        file.delete();
         return Optional.empty();
       }
-      logger.info("ARFF file created successfully");
-      return Optional.ofNullable(fileName);
+      logger.info("Weka instances generated successfully. Number of instances: " + instancesBuilder.numInstances());
+      return Optional.of(instancesBuilder.build());
     }
   }
 
   /**
-   * Make multiple calls to generate instances using array combinations
+   * Builds the transformation of the instances of a template into Weka instances. The attributes are the template
+   * fields with value recommendations enabled (or all the template fields, if USE_ALL_FIELDS is enabled).
    *
-   * @param templateInstanceDocument
-   * @param templateInstanceDocument
-   * @param fieldNodes
-   * @param arrayNodes
-   * @param arraysIndexes
-   * @param indexOfCurrentArray
-   * @param results
-   * @return
+   * @param templateId
+   * @return The flattener, or an empty optional if the template is not found or has no attributes available
    */
-  private static List<ArffInstance> generateArffInstances(Object templateInstanceDocument,
-                                                          List<TemplateNode> fieldNodes, List<TemplateNode> arrayNodes,
-                                                          List<Integer> arraysIndexes,
-                                                          int indexOfCurrentArray, List<ArffInstance> results) {
-    if (results == null) {
-      results = new ArrayList<>();
+  public static Optional<TemplateInstanceFlattener> createFlattener(String templateId) throws Exception {
+    JsonNode template = Services.templateService.findTemplate(templateId);
+    if (template == null) {
+      logger.warn("Template not found (id=" + templateId + ")");
+      return Optional.empty();
     }
+    return createFlattener(templateId, template);
+  }
 
-    // If there are no arrays, a template instance will generate exactly an ARRF instance
-    if (arrayNodes.size() == 0) {
-      ArffInstance arffInstance = generateArffInstance(templateInstanceDocument, fieldNodes, null, null);
-      results.add(arffInstance);
-    }
-    // If there are arrays, a template instance will generate multiple ARFF instances. We will need to generate all
-    // possible combinations between indexes of different array and make multiple calls to "generateArffInstance"
-    else {
-      List<String> arraysPaths = new ArrayList<>();
-      for (TemplateNode arrayNode : arrayNodes) {
-        arraysPaths.add(arrayNode.generatePathDotNotation());
-      }
-      int i = 0;
-      boolean finished = false;
-      while (!finished) {
-        // Check if the path that we are generating exists.
-        // We only do it for i > 0 because i = 0 will be checked by the "generateArffInstance" method. Then, if i=0 does
-        // not exist for a particular array (e.g. Publication), the "generateArffInstance" method will generate a
-        // missing value ("?" in ARFF) for all the fields whose path contains the array with that index
-        // (e.g., Publication[0].title)
-        // TODO: it may be a mistake here when dealing with arrays of arrays. Test it
-        if (i > 0) {
-          // Generate paths in JsonPath format for all nodes from the root to the current resource and check if they exist
-          String jsonPath = "$";
-          String path = "";
-          TemplateNode currentArrayNode = arrayNodes.get(indexOfCurrentArray);
-          for (String key : currentArrayNode.getPath()) {
-            jsonPath = jsonPath + ("['" + key + "']");
-            path = generatePathDotNotation(path, key);
-            // If it is an array, concat index
-            if (arraysPaths.contains(path)) {
-              int index = arraysPaths.indexOf(path);
-              if (index != indexOfCurrentArray) {
-                jsonPath = jsonPath + ("[" + arraysIndexes.get(index) + "]");
-              } else { // the last index cannot be retrieved from arraysIndexes because it has not been updated yet. It
-                // is actually the one that we want to test for existence
-                jsonPath = jsonPath + ("[" + i + "]");
-              }
-              // Query the instance to check if the path exists
-              try {
-                JsonPath.read(templateInstanceDocument, jsonPath);
-              } catch (PathNotFoundException e) {
-                finished = true;
-              }
-            }
-          }
-        }
-        // END
-        if (!finished) {
-          arraysIndexes.set(indexOfCurrentArray, i);
-          // check if it is the last level
-          if (indexOfCurrentArray == arraysPaths.size() - 1) {
-            ArffInstance arffInstance = generateArffInstance(templateInstanceDocument, fieldNodes, arraysPaths,
-                arraysIndexes);
-            results.add(arffInstance);
-          } else {
-            // if the path exists, continue
-            generateArffInstances(templateInstanceDocument, fieldNodes, arrayNodes, arraysIndexes,
-                indexOfCurrentArray + 1, results);
+  /**
+   * Builds the transformation of the instances of a template into Weka instances (see
+   * {@link #createFlattener(String)})
+   *
+   * @param templateId Template identifier
+   * @param template   Template definition
+   * @return The flattener, or an empty optional if the template has no attributes available
+   */
+  public static Optional<TemplateInstanceFlattener> createFlattener(String templateId, JsonNode template)
+      throws Exception {
+    List<TemplateNode> nodes = CedarUtils.getTemplateNodes(template, null, null);
+
+    // Field nodes
+    List<TemplateNode> fieldNodes = new ArrayList<>();
+    for (TemplateNode node : nodes) {
+      if (node.getType().equals(CedarResourceType.FIELD)) {
+        if (USE_ALL_FIELDS) { // Use all fields to generate rules
+          fieldNodes.add(node);
+        } else { // Consider only field for which valueRecommendations are enabled
+          if (node.isValueRecommendationEnabled()) {
+            fieldNodes.add(node);
           }
         }
-        i++;
       }
     }
-    return results;
+
+    // If there are no fields we cannot generate a valid dataset
+    if (fieldNodes.isEmpty()) {
+      logger.info("Skipping generation of instances for template id = " + templateId + " (no attributes available)");
+      return Optional.empty();
+    }
+
+    // Array nodes
+    List<TemplateNode> arrayNodes = new ArrayList<>();
+    for (TemplateNode node : nodes) {
+      if (node.isArray()) {
+        arrayNodes.add(node);
+      }
+    }
+    return Optional.of(new TemplateInstanceFlattener(fieldNodes, arrayNodes));
+  }
+
+  /**
+   * @return The ids of the instances of a template, as indexed in OpenSearch. They are retrieved as they are consumed,
+   * and the iterator must be closed if it is not fully consumed.
+   */
+  public static SearchIdsIterator streamTemplateInstancesIds(String templateId) {
+    return Services.esQueryService.streamTemplateInstancesIds(templateId);
   }
 
   /**
-   * Generates an ARFF instance based on all the ARFF attributes defined by the "fields" attribute. If the instance
-   * contains arrays, the "arraysIndexes" specifies the particular indexes that will be accessed. For example, for an
-   * instance with two arrays, Publication and Address, arraysIndexes may specify that only Publication[1].Title,
-   * Publication[1].Year and Address[2].Street, Address[2].City will be returned by a particular call to this method.
+   * Reads template instances from CEDAR in batches and transforms them into Weka instances
    *
-   * @param templateInstanceDocument
-   * @param fields
-   * @param arraysPaths              List of array paths (e.g., Researcher.Publications, Addresses)
-   * @param arraysIndexes            List of array indexes to be accessed. Every position in the list corresponds to
-   *                                 the same position in the list of array paths. For example, arraysIndexes = [1,2]
-   *                                 will
-   *                                 mean that the method will access Researcher.Publications[1] and Addresses[2]
-   * @return
+   * @param templateInstancesIds Template instance ids
+   * @param maxInstances         Maximum number of template instances read (-1 means that there is no limit). Ids of
+   *                             instances that are not found do not count
+   * @param flattener            Transformation of the instances of the template
+   * @param consumer             Receives the id and the Weka instances of each template instance found, in the
+   *                             same order as the ids
+   * @return The number of template instances found
    */
-  private static ArffInstance generateArffInstance(Object templateInstanceDocument, List<TemplateNode> fields,
-                                                   List<String> arraysPaths, List<Integer> arraysIndexes) {
-
-    List<String> attValues = new ArrayList<>(); // Array of attribute values that will be used to build the ARFF
-    // instance
-
-    // Build the JsonPath expression
-    for (TemplateNode field : fields) {
-      StringBuilder jsonPath = new StringBuilder("$");
-      // Analyze the field path to check if it contains arrays. For every array we need to specify an index (e.g., a[2])
-      String path = "";
-      for (String key : field.getPath()) {
-        jsonPath.append("['").append(key).append("']");
-        // If it is an array, concat index
-        path = generatePathDotNotation(path, key);
-        if (arraysPaths != null && arraysPaths.contains(path)) {
-          int index = arraysPaths.indexOf(path);
-          jsonPath.append("[").append(arraysIndexes.get(index)).append("]");
-        }
-      }
-      // Query the instance to extract the value
-      //System.out.println("Path: " + jsonPath);
-      try {
-        Map attValueMap = JsonPath.read(templateInstanceDocument, jsonPath.toString());
-        Optional<ArffAttributeValue> attValue = CedarUtils.getValueOfField(attValueMap);
-        if (attValue.isPresent()) {
-          attValues.add(attValue.get().getArffValueString()); // Escape single quote
-        } else {
-          attValues.add(ARFF_MISSING_VALUE); // If the field value is null we store a missing value
-        }
-      } catch (PathNotFoundException e) { // If the array has not been defined we store a missing value
-        attValues.add(ARFF_MISSING_VALUE);
-      } catch (IOException e) { // If there was no label defined for an ontology term
-        attValues.add(ARFF_MISSING_VALUE);
-      }
-    }
-    return new ArffInstance(attValues);
+  public static int readTemplateInstances(Iterator<String> templateInstancesIds, int maxInstances,
+                                          TemplateInstanceFlattener flattener,
+                                          BiConsumer<String, List<ArffInstance>> consumer) {
+    TemplateInstancesBatchReader reader = new TemplateInstancesBatchReader(Services.templateInstancesCollection,
+        INSTANCES_FETCH_BATCH_SIZE, INSTANCES_FETCH_MAX_CONCURRENT_BATCHES, INSTANCES_TRANSFORM_THREADS);
+    // The MongoDB documents are converted to Json trees directly, without serializing them to text
+    return reader.read(templateInstancesIds, maxInstances,
+        tiDocument -> new AbstractMap.SimpleImmutableEntry<>(tiDocument.getString(ID_FIELD_NAME),
+            flattener.flatten(JsonMapper.MAPPER.valueToTree(tiDocument))),
+        entry -> consumer.accept(entry.getKey(), entry.getValue()));
   }
 
   /**
@@ -392,36 +318,17 @@ public class AssociationRulesUtils {
    * Generates the attribute name in a custom format ([term uri](field name))
    *
    * @param node
-   * @param dataType
    * @return
    * @throws UnsupportedEncodingException
    */
-  public static String toWekaAttributeFormat(TemplateNode node, String dataType) throws UnsupportedEncodingException {
+  public static String toWekaAttributeName(TemplateNode node) throws UnsupportedEncodingException {
     String instanceType = "";
     if (node.getInstanceType().isPresent()) {
       instanceType = node.getInstanceType().get();
       instanceType = CedarUtils.getTermPreferredUri(instanceType);
     }
     String pathDotNotation = generatePathDotNotation(node.getPath());
-    String result = "@attribute '[" + instanceType + "](" + pathDotNotation + ")'" + dataType;
-    return result;
-  }
-
-  /**
-   * Applies the Weka's StringToNominal filter to all the data
-   *
-   * @param data
-   * @return
-   */
-  public static Instances applyStringToNominalFilter(Instances data) throws Exception {
-
-    StringToNominal stringToNominalFilter = new StringToNominal();
-    // Set filter options
-    stringToNominalFilter.setAttributeRange("first-last");
-    stringToNominalFilter.setInputFormat(data);
-    // Apply the filter
-    Instances filteredData = Filter.useFilter(data, stringToNominalFilter);
-    return filteredData;
+    return "[" + instanceType + "](" + pathDotNotation + ")";
   }
 
   /**
@@ -441,6 +348,8 @@ public class AssociationRulesUtils {
     // Calculate minimum support
     double support = getSupport(data.numInstances());
     logger.info("Min. support: " + support);
+    aprioriObj.setUpperBoundMinSupport(APRIORI_UPPER_BOUND_MIN_SUPPORT);
+    aprioriObj.setDelta(APRIORI_DELTA);
     aprioriObj.setLowerBoundMinSupport(support);
 
     // Set the threshold for the other metric
@@ -493,6 +402,45 @@ public class AssociationRulesUtils {
     return support;
   }
 
+  /**
+   * Minimum support of the itemsets found by Apriori. Apriori does not mine at the lower bound of the minimum support
+   * (see {@link #getSupport}): it starts at the upper bound and decreases the support by delta while it is not lower
+   * than the lower bound, so it ends with the lowest of these steps (0.05 when the lower bound is lower than that).
+   * The steps are computed as in Weka's Apriori, so the results are the same.
+   *
+   * @param numberOfInstances
+   * @return The minimum support
+   */
+  public static double getAprioriMinSupport(int numberOfInstances) {
+    double lowerBound = getSupport(numberOfInstances);
+    double support = APRIORI_UPPER_BOUND_MIN_SUPPORT - APRIORI_DELTA;
+    if (support < lowerBound) {
+      return lowerBound;
+    }
+    while (support - APRIORI_DELTA >= lowerBound) {
+      support -= APRIORI_DELTA;
+    }
+    return support;
+  }
+
+  /**
+   * @param support           Minimum support
+   * @param numberOfInstances
+   * @return The minimum number of instances that contain a frequent itemset, rounded as in Weka's Apriori
+   */
+  public static int getSupportCount(double support, int numberOfInstances) {
+    return Math.max(1, (int) (support * numberOfInstances + 0.5));
+  }
+
+  /**
+   * @param numberOfInstances
+   * @return The minimum number of instances that contain an itemset found by Apriori (see
+   * {@link #getAprioriMinSupport})
+   */
+  public static int getMinSupportCount(int numberOfInstances) {
+    return getSupportCount(getAprioriMinSupport(numberOfInstances), numberOfInstances);
+  }
+
   public static boolean ruleMatchesRequirements(AssociationRule rule, Map<String, String> fieldValues, Field
       targetField) {
 
@@ -576,6 +524,13 @@ public class AssociationRulesUtils {
     List<EsRule> esRules = new ArrayList<>();
 
     for (AssociationRule rule : aprioriRules) {
+      // Keep only the rules with one consequence, whose attribute has value recommendations enabled. The rules are
+      // discarded before building their items, so the memory used does not depend on the number of discarded rules
+      if (rule.getConsequence().size() != CONSEQUENCE_SIZE ||
+          !isConsequenceEnabled(rule.getConsequence().iterator().next().getAttribute())) {
+        continue;
+      }
+
       // Check that the relevant metrics exist
       List<String> metricNames = Arrays.asList(rule.getMetricNamesForRule());
       if (!metricNames.contains(CONFIDENCE_METRIC_NAME)) {
@@ -587,7 +542,7 @@ public class AssociationRulesUtils {
       if (!metricNames.contains(LEVERAGE_METRIC_NAME)) {
         throw new Exception("Metric not found: " + LEVERAGE_METRIC_NAME);
       }
-      if (!metricNames.contains(CONFIDENCE_METRIC_NAME)) {
+      if (!metricNames.contains(CONVICTION_METRIC_NAME)) {
         throw new Exception("Metric not found: " + CONVICTION_METRIC_NAME);
       }
 
@@ -607,18 +562,37 @@ public class AssociationRulesUtils {
           rule.getNamedMetricValue(CONFIDENCE_METRIC_NAME),
           rule.getNamedMetricValue(LIFT_METRIC_NAME),
           rule.getNamedMetricValue(LEVERAGE_METRIC_NAME),
-          rule.getNamedMetricValue(CONFIDENCE_METRIC_NAME),
+          toFiniteConviction(rule.getNamedMetricValue(CONVICTION_METRIC_NAME)),
           esPremise.size(), esConsequence.size());
+      esRules.add(esRule);
+    }
+    logger.info("No. rules kept after filtering by consequence: " + esRules.size());
+    return esRules;
+  }
 
-      // Filter by number of consequences (keep only those rules with 1 consequence). Note that we do the filtering
-      // here instead of doing if after storing all the rules in the array to optimize memory usage
-      if (AssociationRulesUtils.keepRuleBasedOnNumberOfConsequences(esRule, 1)) {
-        esRules.add(esRule);
-      }
+  /**
+   * Checks if an attribute can be used as the consequence of a rule. When USE_ALL_FIELDS is enabled, the fields
+   * without value recommendations are used as premises only. Attributes without metadata (e.g., read from an ARFF
+   * file) can always be used as consequence.
+   */
+  public static boolean isConsequenceEnabled(Attribute attribute) {
+    ProtectedProperties metadata = attribute.getMetadata();
+    return metadata == null || !Boolean.FALSE.toString().equals(metadata.getProperty(RECOMMENDATION_ENABLED_FIELD_NAME));
+  }
 
+  /**
+   * The conviction of a rule with confidence 1 is infinite, and infinite values cannot be serialized to Json, so
+   * they are stored as Double.MAX_VALUE. If the consequence is present in all the instances the conviction is 0/0,
+   * and it is stored as 1 (i.e., premise and consequence are independent).
+   */
+  public static double toFiniteConviction(double conviction) {
+    if (Double.isNaN(conviction)) {
+      return 1;
     }
-    logger.info("No. rules kept after filtering by number of consequences: " + esRules.size());
-    return esRules;
+    if (Double.isInfinite(conviction)) {
+      return Double.MAX_VALUE;
+    }
+    return conviction;
   }
 
   /**
@@ -629,26 +603,37 @@ public class AssociationRulesUtils {
    * @throws Exception
    */
   public static EsRuleItem buildEsRuleItem(Item item) throws Exception {
-    String fieldPath = getEsItemFieldPath(item);
-    String fieldType = getEsItemFieldType(item).orElse(null);
+    return buildEsRuleItem(item.getAttribute().name(), item.getItemValueAsString());
+  }
+
+  /**
+   * Builds an EsRuleItem object from a Weka attribute name and value
+   *
+   * @param attributeName  Attribute name ([fieldType](fieldPath))
+   * @param attributeValue Attribute value ([fieldValueType](fieldValue))
+   * @return
+   * @throws Exception
+   */
+  public static EsRuleItem buildEsRuleItem(String attributeName, String attributeValue) throws Exception {
+    String fieldPath = getEsItemFieldPath(attributeName);
+    String fieldType = getEsItemFieldType(attributeName).orElse(null);
     String fieldNormalizedPath = getEsItemFieldNormalizedPath(fieldPath, fieldType);
-    List<String> fieldTypeMappings = getEsItemFieldTypeMappings(fieldNormalizedPath, fieldType);
-    String fieldValueType = getEsItemFieldValueType(item).orElse(null);
-    String fieldValueLabel = getEsItemFieldValueLabel(item);
-    String fieldNormalizedValue = getEsItemFieldNormalizedValue(item);
-    List<String> fieldValueMappings = getEsItemFieldValueMappings(fieldNormalizedValue);
+    String fieldTypeClass = getEsItemFieldTypeClass(fieldNormalizedPath);
+    String fieldValueType = getEsItemFieldValueType(attributeValue).orElse(null);
+    String fieldValueLabel = getEsItemFieldValueLabel(attributeValue);
+    String fieldNormalizedValue = getEsItemFieldNormalizedValue(attributeValue);
+    String fieldValueClass = getEsItemFieldValueClass(fieldNormalizedValue);
     String fieldValueResult = FieldValueResultUtils.toValueResultString(fieldValueType, fieldValueLabel);
 
-    return new EsRuleItem(fieldPath, fieldType, fieldNormalizedPath, fieldTypeMappings,
-        fieldValueType, fieldValueLabel, fieldNormalizedValue, fieldValueMappings, fieldValueResult);
+    return new EsRuleItem(fieldPath, fieldType, fieldNormalizedPath, fieldTypeClass,
+        fieldValueType, fieldValueLabel, fieldNormalizedValue, fieldValueClass, fieldValueResult);
   }
 
   /**
-   * @param item
+   * @param attributeName
    * @return The field name
    */
-  public static String getEsItemFieldPath(Item item) throws Exception {
-    String attributeName = item.getAttribute().name();
+  public static String getEsItemFieldPath(String attributeName) throws Exception {
     String separator = "](";
     // Note that attributeName follows the format: ('[fieldType](fieldPath)')
     int index = attributeName.indexOf(separator);
@@ -660,11 +645,10 @@ public class AssociationRulesUtils {
   }
 
   /**
-   * @param item
+   * @param attributeName
    * @return The URI of the controlled term that annotates the field
    */
-  public static Optional<String> getEsItemFieldType(Item item) {
-    String attributeName = item.getAttribute().name();
+  public static Optional<String> getEsItemFieldType(String attributeName) {
     String separator = "](";
     // Note that attributeName follows the format: ('[fieldType](fieldPath)')
     int index = attributeName.indexOf(separator);
@@ -695,39 +679,42 @@ public class AssociationRulesUtils {
     }
   }
 
-  public static List<String> getEsItemFieldTypeMappings(String fieldNormalizedPath, String fieldType) {
-    if (fieldType != null && fieldType.length() > 0) {
-      return MappingsService.getMappings(fieldNormalizedPath, false);
-    }
-    else {
-      return new ArrayList<>();
-    }
+  /**
+   * @param fieldNormalizedPath
+   * @return The canonical URI of the mappings class of the field. For fields that are not annotated, the normalized
+   * path itself.
+   */
+  public static String getEsItemFieldTypeClass(String fieldNormalizedPath) {
+    return MappingsService.getCanonicalUri(fieldNormalizedPath);
   }
 
   /**
-   * @param item
+   * @param attributeFullValue
    * @return The field value (i.e., @value or @id)
    */
-  public static String getEsItemFieldValue(Item item) {
-    Optional<String> valueType = getEsItemFieldValueType(item);
+  public static String getEsItemFieldValue(String attributeFullValue) {
+    Optional<String> valueType = getEsItemFieldValueType(attributeFullValue);
     if (valueType.isPresent() && valueType.get().length() > 0) {  // e.g., when attribute value is [http://purl.obolibrary.org/obo/PATO_0000384](MALE)
       return valueType.get(); // e.g., http://purl.obolibrary.org/obo/PATO_0000384
     }
     else {
-      return getEsItemFieldValueLabel(item);
+      return getEsItemFieldValueLabel(attributeFullValue);
     }
   }
 
-  public static List<String> getEsItemFieldValueMappings(String fieldNormalizedValue) {
-    return MappingsService.getMappings(fieldNormalizedValue, false);
+  /**
+   * @param fieldNormalizedValue
+   * @return The canonical URI of the mappings class of the value. For free text values, the normalized value itself.
+   */
+  public static String getEsItemFieldValueClass(String fieldNormalizedValue) {
+    return MappingsService.getCanonicalUri(fieldNormalizedValue);
   }
 
   /**
-   * @param item
+   * @param attributeFullValue
    * @return For ontology terms, the term uri (i.e., @id)
    */
-  public static Optional<String> getEsItemFieldValueType(Item item) {
-    String attributeFullValue = item.getItemValueAsString();
+  public static Optional<String> getEsItemFieldValueType(String attributeFullValue) {
     String separator = "](";
     // Note that the attribute value follows the format: ('[fieldValueType](fieldValue)')
     int index = attributeFullValue.indexOf(separator);
@@ -747,11 +734,10 @@ public class AssociationRulesUtils {
   }
 
   /**
-   * @param item
+   * @param attributeFullValue
    * @return The field value label (i.e., @value or rdfs:label)
    */
-  public static String getEsItemFieldValueLabel(Item item) {
-      String attributeFullValue = item.getItemValueAsString();
+  public static String getEsItemFieldValueLabel(String attributeFullValue) {
       String separator = "](";
       // Note that the attribute value follows the format: ('[fieldValueType](fieldValue)') and that we consider that
       // fieldValue will be always the label
@@ -771,16 +757,16 @@ public class AssociationRulesUtils {
   }
 
   /**
-   * @param item
+   * @param attributeFullValue
    * @return The field normalized value. For ontology terms, it returns the term uri. For free text values, it
    * returns the value after applying a basic normalization
    */
-  public static String getEsItemFieldNormalizedValue(Item item) {
-    Optional<String> valueType = getEsItemFieldValueType(item);
+  public static String getEsItemFieldNormalizedValue(String attributeFullValue) {
+    Optional<String> valueType = getEsItemFieldValueType(attributeFullValue);
     if (valueType.isPresent() && valueType.get().length() > 0) {
       return valueType.get();
     } else {
-      return CedarTextUtils.normalizeValue(getEsItemFieldValue(item));
+      return CedarTextUtils.normalizeValue(getEsItemFieldValue(attributeFullValue));
     }
   }
 
@@ -0,0 +1,73 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.TemplateNode;
+
+import java.util.List;
+
+/**
+ * Extracts the node at the path of a template field or element from a template instance. The path is compiled once
+ * per template into the list of Json keys and, for every key that corresponds to an array, the position of the array
+ * in the list of array indexes that is passed when the path is resolved (e.g., a.b[2].c with arraysIndexes[slot] = 2).
+ */
+public class FieldPathExtractor {
+
+  private static final int NOT_AN_ARRAY = -1;
+
+  private final String[] keys;
+  private final int[] arraySlots;
+
+  /**
+   * @param node        Template field or element
+   * @param arraysPaths Paths of the template arrays, in dot notation. The position of each path is the slot of its
+   *                    index in the arrays indexes.
+   */
+  public FieldPathExtractor(TemplateNode node, List<String> arraysPaths) {
+    List<String> path = node.getPath();
+    this.keys = path.toArray(new String[0]);
+    this.arraySlots = new int[keys.length];
+    String pathDotNotation = "";
+    for (int i = 0; i < keys.length; i++) {
+      pathDotNotation = AssociationRulesUtils.generatePathDotNotation(pathDotNotation, keys[i]);
+      arraySlots[i] = arraysPaths.indexOf(pathDotNotation);
+    }
+  }
+
+  /**
+   * Returns the node at the path
+   *
+   * @param document      Template instance
+   * @param arraysIndexes Index to access each array
+   * @return The node, or null if the path does not exist in the document
+   */
+  public JsonNode resolve(JsonNode document, int[] arraysIndexes) {
+    return resolve(document, arraysIndexes, NOT_AN_ARRAY, 0);
+  }
+
+  /**
+   * Checks if the path exists when the array in the given slot is accessed with the given index, instead of the
+   * index in arraysIndexes
+   */
+  public boolean exists(JsonNode document, int[] arraysIndexes, int slot, int index) {
+    return resolve(document, arraysIndexes, slot, index) != null;
+  }
+
+  private JsonNode resolve(JsonNode document, int[] arraysIndexes, int overriddenSlot, int overriddenIndex) {
+    JsonNode current = document;
+    for (int i = 0; i < keys.length; i++) {
+      if (current == null || !current.isObject()) {
+        return null;
+      }
+      current = current.get(keys[i]);
+      int slot = arraySlots[i];
+      if (slot != NOT_AN_ARRAY) {
+        if (current == null || !current.isArray()) {
+          return null;
+        }
+        current = current.get(slot == overriddenSlot ? overriddenIndex : arraysIndexes[slot]);
+      }
+    }
+    return current;
+  }
+
+}
@@ -1,11 +1,13 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
 
 import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.RulesMinerType;
 
 import java.util.List;
 
 public interface IAssociationRulesService
 {
   List<EsRule> generateRulesForTemplate(String templateId) throws Exception;
+  List<EsRule> generateRulesForTemplate(String templateId, RulesMinerType minerType) throws Exception;
   //List<AssociationRule> filterRules(List<AssociationRule> rules, List<Field> populatedFields, Field targetField);
 }
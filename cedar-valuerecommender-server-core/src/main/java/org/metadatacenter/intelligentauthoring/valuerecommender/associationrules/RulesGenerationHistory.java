@@ -0,0 +1,193 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the last rules generation runs of each template. It is updated by the rules generation threads and read by
+ * the status requests. The runs of a template are replaced as a whole (copy on write), so readers never see a
+ * partially updated history.
+ * <p>
+ * The history is saved to a JSON file in the background, so that it is still available after the server restarts.
+ * Several changes made while the file is being written are saved together. Runs that were running when the server
+ * stopped are loaded as interrupted.
+ */
+public class RulesGenerationHistory {
+
+  private static final Logger logger = LoggerFactory.getLogger(RulesGenerationHistory.class);
+
+  private final ObjectMapper mapper;
+  private final File file;
+  private final int maxRunsPerTemplate;
+  // Sorted by template id, so that the templates can be listed in pages
+  private final ConcurrentSkipListMap<String, List<RulesGenerationRun>> runs;
+  private final ExecutorService saveExecutor;
+  private final AtomicBoolean savePending;
+
+  /**
+   * @param file               File where the history is saved
+   * @param maxRunsPerTemplate Number of runs kept for each template
+   */
+  public RulesGenerationHistory(File file, int maxRunsPerTemplate) {
+    this.mapper = new ObjectMapper();
+    this.file = file;
+    this.maxRunsPerTemplate = maxRunsPerTemplate;
+    this.runs = new ConcurrentSkipListMap<>();
+    this.saveExecutor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "rules-generation-history");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.savePending = new AtomicBoolean(false);
+    load();
+  }
+
+  /**
+   * Records the start of a rules generation run
+   */
+  public void startRun(String templateId, int numberOfInstances) {
+    addRun(templateId, new RulesGenerationRun(templateId, numberOfInstances, System.currentTimeMillis()));
+  }
+
+  /**
+   * Records the end of the current run of a template
+   *
+   * @return False if the template has no run in progress
+   */
+  public boolean finishRun(String templateId, RulesGenerationRun.Outcome outcome, Integer rulesIndexedCount,
+                           String failureReason) {
+    boolean[] found = {false};
+    runs.computeIfPresent(templateId, (id, templateRuns) -> {
+      RulesGenerationRun lastRun = templateRuns.get(templateRuns.size() - 1);
+      if (lastRun.getOutcome() != RulesGenerationRun.Outcome.RUNNING) {
+        return templateRuns;
+      }
+      found[0] = true;
+      List<RulesGenerationRun> newRuns = new ArrayList<>(templateRuns);
+      newRuns.set(newRuns.size() - 1, lastRun.finish(outcome, System.currentTimeMillis(), rulesIndexedCount,
+          failureReason));
+      return Collections.unmodifiableList(newRuns);
+    });
+    if (found[0]) {
+      requestSave();
+    }
+    return found[0];
+  }
+
+  /**
+   * @return The last run of a template, or an empty optional if the template has no runs
+   */
+  public Optional<RulesGenerationRun> getLastRun(String templateId) {
+    List<RulesGenerationRun> templateRuns = runs.get(templateId);
+    return templateRuns == null ? Optional.empty() : Optional.of(templateRuns.get(templateRuns.size() - 1));
+  }
+
+  /**
+   * @return The runs of a template, from the oldest to the newest
+   */
+  public List<RulesGenerationRun> getRuns(String templateId) {
+    return runs.getOrDefault(templateId, Collections.emptyList());
+  }
+
+  /**
+   * Lists the last run of the templates, sorted by template id
+   *
+   * @param outcome If present, only the templates whose last run has this outcome are listed
+   * @param offset  Number of matching templates skipped
+   * @param limit   Maximum number of runs returned
+   * @return The last runs
+   */
+  public List<RulesGenerationRun> listLastRuns(Optional<RulesGenerationRun.Outcome> outcome, int offset, int limit) {
+    List<RulesGenerationRun> lastRuns = new ArrayList<>();
+    int skipped = 0;
+    for (List<RulesGenerationRun> templateRuns : runs.values()) {
+      if (lastRuns.size() >= limit) {
+        break;
+      }
+      RulesGenerationRun lastRun = templateRuns.get(templateRuns.size() - 1);
+      if (outcome.isPresent() && lastRun.getOutcome() != outcome.get()) {
+        continue;
+      }
+      if (skipped < offset) {
+        skipped++;
+      } else {
+        lastRuns.add(lastRun);
+      }
+    }
+    return lastRuns;
+  }
+
+  private void addRun(String templateId, RulesGenerationRun run) {
+    runs.compute(templateId, (id, templateRuns) -> {
+      List<RulesGenerationRun> newRuns = templateRuns == null ? new ArrayList<>() : new ArrayList<>(templateRuns);
+      newRuns.add(run);
+      if (newRuns.size() > maxRunsPerTemplate) {
+        newRuns = newRuns.subList(newRuns.size() - maxRunsPerTemplate, newRuns.size());
+      }
+      return Collections.unmodifiableList(new ArrayList<>(newRuns));
+    });
+    requestSave();
+  }
+
+  private void load() {
+    if (!file.exists()) {
+      return;
+    }
+    try {
+      Map<String, List<RulesGenerationRun>> savedRuns = mapper.readValue(file,
+          new TypeReference<Map<String, List<RulesGenerationRun>>>() {});
+      for (Map.Entry<String, List<RulesGenerationRun>> entry : savedRuns.entrySet()) {
+        if (entry.getValue().isEmpty()) {
+          continue;
+        }
+        List<RulesGenerationRun> templateRuns = new ArrayList<>();
+        for (RulesGenerationRun run : entry.getValue()) {
+          if (run.getOutcome() == RulesGenerationRun.Outcome.RUNNING) {
+            // The server stopped before the run finished
+            long finishTime = Math.max(run.getStartTime(), file.lastModified());
+            run = run.finish(RulesGenerationRun.Outcome.INTERRUPTED, finishTime, null, "Server stopped");
+          }
+          templateRuns.add(run);
+        }
+        runs.put(entry.getKey(), Collections.unmodifiableList(templateRuns));
+      }
+    } catch (IOException e) {
+      logger.error("Error reading the rules generation history from " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private void requestSave() {
+    if (savePending.compareAndSet(false, true)) {
+      saveExecutor.execute(() -> {
+        savePending.set(false);
+        save();
+      });
+    }
+  }
+
+  private void save() {
+    try {
+      file.getParentFile().mkdirs();
+      // The file is replaced atomically, so a crash while saving does not lose the previous history
+      File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+      mapper.writeValue(tmpFile, new TreeMap<>(runs));
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("Error saving the rules generation history to " + file.getAbsolutePath(), e);
+    }
+  }
+
+}
@@ -0,0 +1,11 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+/**
+ * Priority of a rules generation request. Values are declared from the highest to the lowest priority.
+ */
+public enum RulesGenerationPriority {
+
+  USER, // Rules generation triggered by a user for a particular template
+  SYSTEM // Regeneration of the rules for all the templates in the system
+
+}
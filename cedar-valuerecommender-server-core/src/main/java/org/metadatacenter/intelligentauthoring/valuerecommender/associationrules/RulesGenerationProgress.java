@@ -0,0 +1,49 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of the rules generation of a template. It is updated by the rules generation thread and read by the
+ * status requests, so all its values can be read while the rules are being generated.
+ */
+public class RulesGenerationProgress {
+
+  public enum Phase {
+    READING_INSTANCES, MINING_RULES, INDEXING_RULES, FINISHED
+  }
+
+  private volatile Phase phase = Phase.READING_INSTANCES;
+  private final AtomicLong instancesProcessed = new AtomicLong();
+  private final AtomicLong rowsFlattened = new AtomicLong(); // Each instance is flattened into one or more rows
+  private final AtomicLong rulesIndexed = new AtomicLong();
+
+  public Phase getPhase() {
+    return phase;
+  }
+
+  public void setPhase(Phase phase) {
+    this.phase = phase;
+  }
+
+  public long getInstancesProcessed() {
+    return instancesProcessed.get();
+  }
+
+  public long getRowsFlattened() {
+    return rowsFlattened.get();
+  }
+
+  public long getRulesIndexed() {
+    return rulesIndexed.get();
+  }
+
+  public void addInstance(int rows) {
+    instancesProcessed.incrementAndGet();
+    rowsFlattened.addAndGet(rows);
+  }
+
+  public void addRulesIndexed(long count) {
+    rulesIndexed.addAndGet(count);
+  }
+
+}
@@ -0,0 +1,135 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.metadatacenter.server.valuerecommender.model.RulesGenerationStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A rules generation run of a template, as kept in the rules generation history (see RulesGenerationHistory). Runs
+ * are not modified once they are in the history: a new copy is stored when a run finishes.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RulesGenerationRun {
+
+  public enum Outcome {
+    RUNNING, COMPLETED, FAILED, INTERRUPTED
+  }
+
+  private String templateId;
+  private long startTime; // Epoch milliseconds
+  private Long finishTime;
+  private Long executionDurationMs;
+  private int numberOfInstances;
+  private Integer rulesIndexedCount;
+  private Outcome outcome;
+  private String failureReason;
+
+  public RulesGenerationRun() {
+  }
+
+  public RulesGenerationRun(String templateId, int numberOfInstances, long startTime) {
+    this.templateId = templateId;
+    this.numberOfInstances = numberOfInstances;
+    this.startTime = startTime;
+    this.outcome = Outcome.RUNNING;
+  }
+
+  /**
+   * @return A copy of the run, finished at the given time
+   */
+  public RulesGenerationRun finish(Outcome outcome, long finishTime, Integer rulesIndexedCount, String failureReason) {
+    RulesGenerationRun run = new RulesGenerationRun(templateId, numberOfInstances, startTime);
+    run.outcome = outcome;
+    run.finishTime = finishTime;
+    run.executionDurationMs = finishTime - startTime;
+    run.rulesIndexedCount = rulesIndexedCount;
+    run.failureReason = failureReason;
+    return run;
+  }
+
+  /**
+   * Translates the run to the CEDAR status model, which has no failed state: failed and interrupted runs are
+   * reported as completed, and the outcome of the run tells them apart.
+   */
+  public RulesGenerationStatus toStatus() {
+    RulesGenerationStatus.Status status = outcome == Outcome.RUNNING ? RulesGenerationStatus.Status.PROCESSING :
+        RulesGenerationStatus.Status.COMPLETED;
+    RulesGenerationStatus rgs = new RulesGenerationStatus(templateId, numberOfInstances,
+        Instant.ofEpochMilli(startTime), status);
+    if (finishTime != null) {
+      rgs.setFinishTime(Instant.ofEpochMilli(finishTime));
+      rgs.setExecutionDuration(Duration.ofMillis(executionDurationMs));
+    } else {
+      rgs.setExecutionDuration(Duration.ofMillis(System.currentTimeMillis() - startTime));
+    }
+    rgs.setRulesIndexedCount(rulesIndexedCount);
+    return rgs;
+  }
+
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  public void setTemplateId(String templateId) {
+    this.templateId = templateId;
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public void setStartTime(long startTime) {
+    this.startTime = startTime;
+  }
+
+  public Long getFinishTime() {
+    return finishTime;
+  }
+
+  public void setFinishTime(Long finishTime) {
+    this.finishTime = finishTime;
+  }
+
+  public Long getExecutionDurationMs() {
+    return executionDurationMs;
+  }
+
+  public void setExecutionDurationMs(Long executionDurationMs) {
+    this.executionDurationMs = executionDurationMs;
+  }
+
+  public int getNumberOfInstances() {
+    return numberOfInstances;
+  }
+
+  public void setNumberOfInstances(int numberOfInstances) {
+    this.numberOfInstances = numberOfInstances;
+  }
+
+  public Integer getRulesIndexedCount() {
+    return rulesIndexedCount;
+  }
+
+  public void setRulesIndexedCount(Integer rulesIndexedCount) {
+    this.rulesIndexedCount = rulesIndexedCount;
+  }
+
+  public Outcome getOutcome() {
+    return outcome;
+  }
+
+  public void setOutcome(Outcome outcome) {
+    this.outcome = outcome;
+  }
+
+  public String getFailureReason() {
+    return failureReason;
+  }
+
+  public void setFailureReason(String failureReason) {
+    this.failureReason = failureReason;
+  }
+
+}
@@ -0,0 +1,215 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.RulesMinerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the rules generation of several templates in parallel, on a fixed number of threads. Pending templates are
+ * queued by priority (user requests before the regeneration of all the templates) and in order of arrival.
+ * <p>
+ * A template is queued at most once: scheduling a template that is already queued only updates its miner and, if
+ * higher, its priority. If the template is being processed, it is processed again when the current execution
+ * finishes, because its instances may have changed since the execution started. The queue is therefore bounded by
+ * the number of templates.
+ * <p>
+ * An incremental request only applies the pending instance changes of a template to its rules. When it is merged
+ * with a full generation request, the full generation is run, as it already includes the changes.
+ */
+public class RulesGenerationScheduler {
+
+  private static final Logger logger = LoggerFactory.getLogger(RulesGenerationScheduler.class);
+
+  /**
+   * Generates and indexes the rules of a template
+   */
+  @FunctionalInterface
+  public interface RulesGenerator {
+    void generateRules(String templateId, RulesMinerType minerType, boolean incremental) throws Exception;
+  }
+
+  private final RulesGenerator rulesGenerator;
+  private final ThreadPoolExecutor executor;
+  private final Map<String, Task> tasks; // template id -> queued or running task
+  private long sequence = 0;
+
+  /**
+   * @param numberOfThreads Maximum number of templates processed at the same time
+   * @param rulesGenerator  Generates the rules of a template
+   */
+  public RulesGenerationScheduler(int numberOfThreads, RulesGenerator rulesGenerator) {
+    this.rulesGenerator = rulesGenerator;
+    this.tasks = new HashMap<>();
+    AtomicInteger threadCount = new AtomicInteger(0);
+    // Tasks are passed to execute (not submit), so the queue receives them unwrapped and can compare them
+    this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0L, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "rules-generation-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    logger.info("Rules generation scheduler started. Number of threads: " + numberOfThreads);
+  }
+
+  /**
+   * Schedules the rules generation of a template
+   *
+   * @return A future that is completed when the rules of the template have been generated
+   */
+  public CompletableFuture<Void> schedule(String templateId, RulesMinerType minerType,
+                                          RulesGenerationPriority priority) {
+    return schedule(templateId, minerType, priority, false);
+  }
+
+  /**
+   * Schedules the rules generation of a template
+   *
+   * @param incremental If true, only the pending instance changes are applied to the rules of the template
+   * @return A future that is completed when the rules of the template have been generated
+   */
+  public synchronized CompletableFuture<Void> schedule(String templateId, RulesMinerType minerType,
+                                                       RulesGenerationPriority priority, boolean incremental) {
+    if (executor.isShutdown()) {
+      throw new IllegalStateException("The rules generation scheduler has been shut down");
+    }
+    Task task = tasks.get(templateId);
+    if (task == null) {
+      task = new Task(templateId, minerType, priority, incremental, sequence++);
+      tasks.put(templateId, task);
+      executor.execute(task);
+      return task.future;
+    }
+    if (task.running) {
+      if (task.next == null) {
+        task.next = new Task(templateId, minerType, priority, incremental, sequence++);
+      } else {
+        task.next.update(minerType, priority, incremental);
+      }
+      logger.info("Rules generation for template " + templateId + " is running. It will run again when finished");
+      return task.next.future;
+    }
+    // The task is queued. It is removed before changing its priority, as the queue is sorted on insertion. If it is
+    // not in the queue anymore, a thread has just taken it and the new priority is irrelevant.
+    if (priority.compareTo(task.priority) < 0 && executor.getQueue().remove(task)) {
+      task.update(minerType, priority, incremental);
+      task.sequenceNumber = sequence++; // Queued after the requests that already had the new priority
+      executor.execute(task);
+    } else {
+      task.update(minerType, task.priority, incremental);
+    }
+    logger.info("Rules generation for template " + templateId + " is already queued");
+    return task.future;
+  }
+
+  /**
+   * @return Number of templates waiting to be processed
+   */
+  public int getQueuedCount() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return Number of templates being processed
+   */
+  public int getRunningCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Stops the scheduler. Queued templates are not processed and running ones are interrupted.
+   */
+  public synchronized void shutdown() {
+    List<Runnable> queuedTasks = executor.shutdownNow();
+    for (Runnable queuedTask : queuedTasks) {
+      ((Task) queuedTask).future.completeExceptionally(new CancellationException("Scheduler shut down"));
+    }
+    for (Task task : tasks.values()) {
+      if (task.next != null) {
+        task.next.future.completeExceptionally(new CancellationException("Scheduler shut down"));
+      }
+    }
+    tasks.clear();
+    logger.info("Rules generation scheduler stopped. Discarded templates: " + queuedTasks.size());
+  }
+
+  private void run(Task task) {
+    RulesMinerType minerType;
+    boolean incremental;
+    synchronized (this) {
+      task.running = true;
+      minerType = task.minerType;
+      incremental = task.incremental;
+    }
+    try {
+      rulesGenerator.generateRules(task.templateId, minerType, incremental);
+      task.future.complete(null);
+    } catch (Exception e) {
+      logger.error("Error generating rules for template " + task.templateId + ": " + e.getMessage(), e);
+      task.future.completeExceptionally(e);
+    } finally {
+      synchronized (this) {
+        if (task.next != null && !executor.isShutdown()) {
+          tasks.put(task.templateId, task.next);
+          executor.execute(task.next);
+        } else {
+          tasks.remove(task.templateId);
+        }
+      }
+    }
+  }
+
+  private final class Task implements Runnable, Comparable<Task> {
+    private final String templateId;
+    private long sequenceNumber; // Order of arrival
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private RulesMinerType minerType;
+    private RulesGenerationPriority priority;
+    private boolean incremental;
+    private boolean running = false;
+    private Task next; // Execution requested while running
+
+    private Task(String templateId, RulesMinerType minerType, RulesGenerationPriority priority, boolean incremental,
+                 long sequenceNumber) {
+      this.templateId = templateId;
+      this.minerType = minerType;
+      this.priority = priority;
+      this.incremental = incremental;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * The latest full request determines the miner, and the highest priority is kept
+     */
+    private void update(RulesMinerType minerType, RulesGenerationPriority priority, boolean incremental) {
+      if (!incremental) {
+        this.minerType = minerType;
+        this.incremental = false;
+      }
+      if (priority.compareTo(this.priority) < 0) {
+        this.priority = priority;
+      }
+    }
+
+    @Override
+    public void run() {
+      RulesGenerationScheduler.this.run(this);
+    }
+
+    @Override
+    public int compareTo(Task other) {
+      int priorityComparison = priority.compareTo(other.priority);
+      return priorityComparison != 0 ? priorityComparison : Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+
+}
@@ -7,22 +7,28 @@ import org.metadatacenter.server.valuerecommender.model.RulesGenerationStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.net.UnknownHostException;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
 
 public class RulesGenerationStatusManager {
 
   private static final Logger logger = LoggerFactory.getLogger(RulesGenerationStatusManager.class);
   private static ElasticsearchQueryService esQueryService;
-  private static HashMap<String, RulesGenerationStatus> statusMap;
+  private static RulesGenerationHistory history; // Updated by several rules generation threads
+  private static Map<String, RulesGenerationProgress> progressMap;
 
   static {
     try {
-      statusMap = new HashMap<>();
+      history = new RulesGenerationHistory(new File(ConfigManager.getDataDirectory(),
+          RULES_GENERATION_HISTORY_FILE_NAME), RULES_GENERATION_HISTORY_SIZE);
+      progressMap = new ConcurrentHashMap<>();
       esQueryService = new ElasticsearchQueryService(ConfigManager.getCedarConfig().getElasticsearchConfig());
     } catch (UnknownHostException e) {
       logger.error(e.getMessage());
@@ -30,16 +36,47 @@ public class RulesGenerationStatusManager {
     }
   }
 
-  public static RulesGenerationStatus getStatus(String templateId) throws CedarProcessingException {
-    if (statusMap.containsKey(templateId)) {
-      return statusMap.get(templateId);
+  /**
+   * @param templateId
+   * @return The status of the last rules generation run of the template, together with the previous runs
+   * @throws CedarProcessingException If the rules of the template have never been generated
+   */
+  public static RulesGenerationStatusReport getStatus(String templateId) throws CedarProcessingException {
+    Optional<RulesGenerationRun> lastRun = history.getLastRun(templateId);
+    if (lastRun.isPresent()) {
+      return new RulesGenerationStatusReport(lastRun.get(), getProgress(templateId), history.getRuns(templateId));
     } else {
       throw new CedarProcessingException("Template not found: " + templateId);
     }
   }
 
-  public static List<RulesGenerationStatus> getStatus() {
-    return new ArrayList<>(statusMap.values());
+  public static List<RulesGenerationStatusReport> getStatus() {
+    return getStatus(Optional.empty(), 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Lists the status of the templates, sorted by template id
+   *
+   * @param outcome If present, only the templates whose last run has this outcome are listed
+   * @param offset  Number of matching templates skipped
+   * @param limit   Maximum number of templates returned
+   */
+  public static List<RulesGenerationStatusReport> getStatus(Optional<RulesGenerationRun.Outcome> outcome, int offset,
+                                                            int limit) {
+    List<RulesGenerationStatusReport> reports = new ArrayList<>();
+    for (RulesGenerationRun lastRun : history.listLastRuns(outcome, offset, limit)) {
+      reports.add(new RulesGenerationStatusReport(lastRun, getProgress(lastRun.getTemplateId()), null));
+    }
+    return reports;
+  }
+
+  /**
+   * Returns the progress of the current rules generation of a template, which is updated by the generation pipeline.
+   * If the template is not being processed, the progress returned is not tracked.
+   */
+  public static RulesGenerationProgress getProgress(String templateId) {
+    RulesGenerationProgress progress = progressMap.get(templateId);
+    return progress != null ? progress : new RulesGenerationProgress();
   }
 
   public static void setStatus(String templateId, RulesGenerationStatus.Status newStatus)
@@ -50,19 +87,13 @@ public class RulesGenerationStatusManager {
   public static void setStatus(String templateId, RulesGenerationStatus.Status newStatus, Integer rulesIndexedCount)
       throws CedarProcessingException {
     if (newStatus.equals(RulesGenerationStatus.Status.PROCESSING)) {
-      int numberOfInstances = esQueryService.getTemplateInstancesIdsByTemplateId(templateId).size();
-      Instant startTime = Instant.now();
-      RulesGenerationStatus rgs = new RulesGenerationStatus(templateId, numberOfInstances, startTime, newStatus);
-      rgs.setExecutionDuration(Duration.between(startTime, Instant.now()));
-      statusMap.put(templateId, rgs);
+      // The instances are only counted. Their ids are streamed later by the generation pipeline
+      int numberOfInstances = (int) esQueryService.countTemplateInstances(templateId);
+      progressMap.put(templateId, new RulesGenerationProgress());
+      history.startRun(templateId, numberOfInstances);
     } else if (newStatus.equals(RulesGenerationStatus.Status.COMPLETED)) {
-      if (statusMap.containsKey(templateId)) {
-        RulesGenerationStatus rgs = statusMap.get(templateId);
-        rgs.setFinishTime(Instant.now());
-        rgs.setExecutionDuration(Duration.between(rgs.getStartTime(), rgs.getFinishTime()));
-        rgs.setRulesIndexedCount(rulesIndexedCount);
-        rgs.setStatus(newStatus);
-        statusMap.put(templateId, rgs);
+      if (history.finishRun(templateId, RulesGenerationRun.Outcome.COMPLETED, rulesIndexedCount, null)) {
+        getProgress(templateId).setPhase(RulesGenerationProgress.Phase.FINISHED);
       } else {
         logger.error("Missing status for templateId: " + templateId);
         throw new CedarProcessingException("Missing status for templateId: " + templateId);
@@ -71,4 +102,16 @@ public class RulesGenerationStatusManager {
       logger.warn("Cannot set status: " + newStatus.name());
     }
   }
+
+  /**
+   * Records that the current rules generation run of a template has failed
+   *
+   * @param templateId
+   * @param failureReason Message of the error that stopped the run
+   */
+  public static void setFailed(String templateId, String failureReason) {
+    if (history.finishRun(templateId, RulesGenerationRun.Outcome.FAILED, null, failureReason)) {
+      getProgress(templateId).setPhase(RulesGenerationProgress.Phase.FINISHED);
+    }
+  }
 }
@@ -0,0 +1,49 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import org.metadatacenter.server.valuerecommender.model.RulesGenerationStatus;
+
+import java.util.List;
+
+/**
+ * Rules generation status of a template, together with the outcome of its last run, its live progress and, if
+ * requested, its previous runs. The status fields are serialized at the top level, so the response is compatible
+ * with the plain status.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RulesGenerationStatusReport {
+
+  private final RulesGenerationRun lastRun;
+  private final RulesGenerationProgress progress;
+  private final List<RulesGenerationRun> history;
+
+  public RulesGenerationStatusReport(RulesGenerationRun lastRun, RulesGenerationProgress progress,
+                                     List<RulesGenerationRun> history) {
+    this.lastRun = lastRun;
+    this.progress = progress;
+    this.history = history;
+  }
+
+  @JsonUnwrapped
+  public RulesGenerationStatus getStatus() {
+    return lastRun.toStatus();
+  }
+
+  public RulesGenerationRun.Outcome getOutcome() {
+    return lastRun.getOutcome();
+  }
+
+  public String getFailureReason() {
+    return lastRun.getFailureReason();
+  }
+
+  public RulesGenerationProgress getProgress() {
+    return progress;
+  }
+
+  public List<RulesGenerationRun> getHistory() {
+    return history;
+  }
+
+}
@@ -0,0 +1,110 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.ArffAttributeValue;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.TemplateNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Transforms template instances into Weka instances. The paths of the template fields and arrays are compiled once
+ * (see {@link FieldPathExtractor}) and reused for all the instances of the template. Instances of this class are
+ * thread-safe.
+ */
+public class TemplateInstanceFlattener {
+
+  private final List<TemplateNode> fieldNodes;
+  private final List<FieldPathExtractor> fieldExtractors;
+  private final List<FieldPathExtractor> arrayExtractors;
+
+  /**
+   * @param fieldNodes Fields that will be used as attributes
+   * @param arrayNodes Template arrays (multi-instance fields and elements)
+   */
+  public TemplateInstanceFlattener(List<TemplateNode> fieldNodes, List<TemplateNode> arrayNodes) {
+    this.fieldNodes = fieldNodes;
+    List<String> arraysPaths = new ArrayList<>();
+    for (TemplateNode arrayNode : arrayNodes) {
+      arraysPaths.add(arrayNode.generatePathDotNotation());
+    }
+    this.fieldExtractors = new ArrayList<>();
+    for (TemplateNode fieldNode : fieldNodes) {
+      fieldExtractors.add(new FieldPathExtractor(fieldNode, arraysPaths));
+    }
+    this.arrayExtractors = new ArrayList<>();
+    for (TemplateNode arrayNode : arrayNodes) {
+      arrayExtractors.add(new FieldPathExtractor(arrayNode, arraysPaths));
+    }
+  }
+
+  /**
+   * @return Fields used as attributes, in the same order as the values of the Weka instances
+   */
+  public List<TemplateNode> getFieldNodes() {
+    return fieldNodes;
+  }
+
+  /**
+   * Transforms a template instance into Weka instances. If the template has no arrays, a template instance generates
+   * exactly one Weka instance. Otherwise, it generates a Weka instance for every combination of array indexes.
+   *
+   * @param templateInstance
+   * @return
+   */
+  public List<ArffInstance> flatten(JsonNode templateInstance) {
+    List<ArffInstance> results = new ArrayList<>();
+    int[] arraysIndexes = new int[arrayExtractors.size()];
+    if (arrayExtractors.isEmpty()) {
+      results.add(generateInstance(templateInstance, arraysIndexes));
+    } else {
+      generateInstances(templateInstance, arraysIndexes, 0, results);
+    }
+    return results;
+  }
+
+  /**
+   * Iterates over the indexes of the current array, and over the indexes of the next arrays recursively
+   */
+  private void generateInstances(JsonNode templateInstance, int[] arraysIndexes, int indexOfCurrentArray,
+                                 List<ArffInstance> results) {
+    FieldPathExtractor currentArray = arrayExtractors.get(indexOfCurrentArray);
+    // The index 0 is not checked. If it does not exist for a particular array (e.g. Publication), "generateInstance"
+    // will generate a missing value for all the fields whose path contains the array (e.g., Publication[0].title)
+    for (int i = 0; i == 0 || currentArray.exists(templateInstance, arraysIndexes, indexOfCurrentArray, i); i++) {
+      arraysIndexes[indexOfCurrentArray] = i;
+      if (indexOfCurrentArray == arrayExtractors.size() - 1) {
+        results.add(generateInstance(templateInstance, arraysIndexes));
+      } else {
+        generateInstances(templateInstance, arraysIndexes, indexOfCurrentArray + 1, results);
+      }
+    }
+  }
+
+  /**
+   * Generates a Weka instance with the values of all the fields, accessing the arrays with the given indexes
+   */
+  private ArffInstance generateInstance(JsonNode templateInstance, int[] arraysIndexes) {
+    List<String> attValues = new ArrayList<>(fieldExtractors.size());
+    for (FieldPathExtractor fieldExtractor : fieldExtractors) {
+      String attValue = null; // If the field or the array are not defined we store a missing value
+      JsonNode fieldNode = fieldExtractor.resolve(templateInstance, arraysIndexes);
+      if (fieldNode != null && fieldNode.isObject()) {
+        try {
+          Optional<ArffAttributeValue> value = CedarUtils.getValueOfField(fieldNode);
+          if (value.isPresent()) {
+            attValue = value.get().getNominalValueString();
+          }
+        } catch (IOException e) { // If there was no label defined for an ontology term
+          attValue = null;
+        }
+      }
+      attValues.add(attValue);
+    }
+    return new ArffInstance(attValues);
+  }
+
+}
@@ -0,0 +1,154 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.mongodb.client.model.Filters.in;
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.ID_FIELD_NAME;
+
+/**
+ * Reads template instances from MongoDB in batches, using a query with an $in clause per batch instead of a query per
+ * instance. Up to maxConcurrentBatches batches are in flight at the same time, and the instances of each batch are
+ * transformed on a pool of worker threads while the next batches are being fetched. The transformed instances are
+ * consumed in the calling thread, in the same order as the instance ids.
+ */
+public class TemplateInstancesBatchReader {
+
+  private static final Logger logger = LoggerFactory.getLogger(TemplateInstancesBatchReader.class);
+
+  private final MongoCollection<Document> instancesCollection;
+  private final int batchSize;
+  private final int maxConcurrentBatches;
+  private final int transformThreads;
+
+  /**
+   * @param instancesCollection  MongoDB collection of template instances
+   * @param batchSize            Maximum number of instances retrieved by each query
+   * @param maxConcurrentBatches Maximum number of batches that are being fetched or transformed at the same time
+   * @param transformThreads     Number of threads used to transform the instances
+   */
+  public TemplateInstancesBatchReader(MongoCollection<Document> instancesCollection, int batchSize,
+                                      int maxConcurrentBatches, int transformThreads) {
+    this.instancesCollection = instancesCollection;
+    this.batchSize = batchSize;
+    this.maxConcurrentBatches = maxConcurrentBatches;
+    this.transformThreads = transformThreads;
+  }
+
+  /**
+   * Reads and transforms the instances with the given ids. Instances that are not found are skipped.
+   *
+   * @param instanceIds Template instance ids
+   * @param transform   Function applied to every instance. It is called concurrently from several threads.
+   * @param consumer    Receives the transformed instances, in the order of the instance ids
+   * @return The number of instances found
+   */
+  public <T> int read(List<String> instanceIds, Function<Document, T> transform, Consumer<T> consumer) {
+    return read(instanceIds.iterator(), -1, transform, consumer);
+  }
+
+  /**
+   * Reads and transforms the instances with the given ids. The ids are consumed as the batches are fetched, so the
+   * first batches are read while the next ids are still being retrieved. Instances that are not found are skipped.
+   *
+   * @param instanceIds  Template instance ids
+   * @param maxInstances Maximum number of instances consumed (-1 means that there is no limit). Instances that are
+   *                     not found do not count, so the ids are consumed until this number of instances is found
+   * @param transform    Function applied to every instance. It is called concurrently from several threads.
+   * @param consumer     Receives the transformed instances, in the order of the instance ids
+   * @return The number of instances found and consumed
+   */
+  public <T> int read(Iterator<String> instanceIds, int maxInstances, Function<Document, T> transform,
+                      Consumer<T> consumer) {
+    ExecutorService fetchExecutor = Executors.newFixedThreadPool(maxConcurrentBatches);
+    ExecutorService transformExecutor = Executors.newFixedThreadPool(transformThreads);
+    Deque<CompletableFuture<List<T>>> inFlightBatches = new ArrayDeque<>();
+    int instancesCount = 0;
+    try {
+      for (int batchNumber = 0; instanceIds.hasNext(); batchNumber++) {
+        List<String> batchIds = new ArrayList<>(batchSize);
+        while (batchIds.size() < batchSize && instanceIds.hasNext()) {
+          batchIds.add(instanceIds.next());
+        }
+        // Wait for the oldest batch before fetching a new one, so that at most maxConcurrentBatches are in flight
+        if (inFlightBatches.size() == maxConcurrentBatches) {
+          instancesCount += consume(inFlightBatches.poll().join(), consumer, remaining(instancesCount, maxInstances));
+        }
+        if (remaining(instancesCount, maxInstances) == 0) {
+          break;
+        }
+        inFlightBatches.add(CompletableFuture
+            .supplyAsync(() -> fetchBatch(batchIds), fetchExecutor)
+            .thenApplyAsync(documents -> transformBatch(documents, transform), transformExecutor));
+        if (instancesCount > 0 && batchNumber % 10 == 0) {
+          logger.info("No. instances processed: " + instancesCount);
+        }
+      }
+      // The batches that are still in flight when the limit is reached are discarded
+      while (!inFlightBatches.isEmpty() && remaining(instancesCount, maxInstances) > 0) {
+        instancesCount += consume(inFlightBatches.poll().join(), consumer, remaining(instancesCount, maxInstances));
+      }
+    } finally {
+      fetchExecutor.shutdownNow();
+      transformExecutor.shutdownNow();
+    }
+    return instancesCount;
+  }
+
+  /**
+   * Retrieves the instances of a batch, sorted in the same order as the ids
+   */
+  private List<Document> fetchBatch(List<String> batchIds) {
+    Map<String, Document> documentsById = new HashMap<>();
+    for (Document document : instancesCollection.find(in(ID_FIELD_NAME, batchIds))) {
+      document.remove("_id");
+      documentsById.put(document.getString(ID_FIELD_NAME), document);
+    }
+    List<Document> documents = new ArrayList<>(documentsById.size());
+    for (String id : batchIds) {
+      Document document = documentsById.get(id);
+      if (document != null) {
+        documents.add(document);
+      }
+    }
+    return documents;
+  }
+
+  private <T> List<T> transformBatch(List<Document> documents, Function<Document, T> transform) {
+    List<T> results = new ArrayList<>(documents.size());
+    for (Document document : documents) {
+      results.add(transform.apply(document));
+    }
+    return results;
+  }
+
+  /**
+   * Consumes the first maxResults results of a batch
+   *
+   * @return The number of results consumed
+   */
+  private <T> int consume(List<T> batchResults, Consumer<T> consumer, int maxResults) {
+    int count = Math.min(batchResults.size(), maxResults);
+    for (int i = 0; i < count; i++) {
+      consumer.accept(batchResults.get(i));
+    }
+    return count;
+  }
+
+  /**
+   * @return The number of instances that can still be consumed
+   */
+  private static int remaining(int instancesCount, int maxInstances) {
+    return maxInstances < 0 ? Integer.MAX_VALUE : Math.max(0, maxInstances - instancesCount);
+  }
+
+}
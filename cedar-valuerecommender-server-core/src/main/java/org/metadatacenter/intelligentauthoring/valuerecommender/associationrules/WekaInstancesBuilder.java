@@ -0,0 +1,96 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.ProtectedProperties;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.RECOMMENDATION_ENABLED_FIELD_NAME;
+
+/**
+ * Builds a Weka dataset with nominal attributes directly from the instances, without writing and parsing an ARFF file
+ * and without applying the StringToNominal filter. The values of each attribute are encoded as they are added, using
+ * a dictionary per attribute. Nominal values are indexed in order of appearance, as StringToNominal does.
+ * <p>
+ * Whether an attribute can be the consequence of a rule is stored in the attribute metadata (see
+ * AssociationRulesUtils.isConsequenceEnabled), so the miners can discard the other rules while mining.
+ */
+public class WekaInstancesBuilder {
+
+  private final String relationName;
+  private final List<String> attributeNames;
+  private final List<Boolean> consequenceEnabled;
+  private final List<Map<String, Integer>> dictionaries; // attribute position -> nominal value -> value index
+  private final List<double[]> rows;
+
+  /**
+   * @param relationName   Name of the Weka relation
+   * @param attributeNames     Attribute names (e.g., [fieldType](fieldPath))
+   * @param consequenceEnabled Whether each attribute can be the consequence of a rule (same order as attributeNames)
+   */
+  public WekaInstancesBuilder(String relationName, List<String> attributeNames, List<Boolean> consequenceEnabled) {
+    this.relationName = relationName;
+    this.attributeNames = attributeNames;
+    this.consequenceEnabled = consequenceEnabled;
+    this.dictionaries = new ArrayList<>();
+    for (int i = 0; i < attributeNames.size(); i++) {
+      dictionaries.add(new LinkedHashMap<>());
+    }
+    this.rows = new ArrayList<>();
+  }
+
+  /**
+   * Adds an instance
+   *
+   * @param instance Attribute values, in the same order as the attribute names. Missing values are null.
+   */
+  public void addInstance(ArffInstance instance) {
+    List<String> values = instance.getValues();
+    double[] row = new double[attributeNames.size()];
+    for (int i = 0; i < row.length; i++) {
+      String value = values.get(i);
+      if (value == null) {
+        row[i] = Utils.missingValue();
+      } else {
+        Map<String, Integer> dictionary = dictionaries.get(i);
+        Integer valueIndex = dictionary.get(value);
+        if (valueIndex == null) {
+          valueIndex = dictionary.size();
+          dictionary.put(value, valueIndex);
+        }
+        row[i] = valueIndex;
+      }
+    }
+    rows.add(row);
+  }
+
+  public int numInstances() {
+    return rows.size();
+  }
+
+  /**
+   * @return The dataset, with a nominal attribute per attribute name
+   */
+  public Instances build() {
+    ArrayList<Attribute> attributes = new ArrayList<>();
+    for (int i = 0; i < attributeNames.size(); i++) {
+      Properties metadata = new Properties();
+      metadata.setProperty(RECOMMENDATION_ENABLED_FIELD_NAME, String.valueOf(consequenceEnabled.get(i)));
+      attributes.add(new Attribute(attributeNames.get(i), new ArrayList<>(dictionaries.get(i).keySet()),
+          new ProtectedProperties(metadata)));
+    }
+    Instances instances = new Instances(relationName, attributes, rows.size());
+    for (double[] row : rows) {
+      instances.add(new DenseInstance(1.0, row));
+    }
+    return instances;
+  }
+
+}
@@ -25,13 +25,16 @@ public class ArffAttributeValue {
     return valueLabel;
   }
 
-  public String getArffValueString() {
+  /**
+   * @return The value as a Weka nominal value ([valueType](valueLabel))
+   */
+  public String getNominalValueString() {
     String valueString = null;
     if (valueType != null) { // ontology term
       valueString = "[" + valueType + "](" + valueLabel + ")";
     } else { // free text
       valueString = "[](" + valueLabel + ")";
     }
-    return "'" + valueString.replace("'", "\\'").trim() + "'";
+    return valueString.trim();
   }
 }
@@ -21,6 +21,7 @@ public class EsRule {
   private double conviction;
   private int premiseSize; // Used to simplify Elasticsearch queries
   private int consequenceSize; // Used to simplify Elasticsearch queries
+  private long generation; // Generation of the template rules (see RulesGenerationsManager). 0 if unknown.
 
   // Needed by Jackson for deserialization
   public EsRule() {}
@@ -73,6 +74,10 @@ public class EsRule {
 
   public int getConsequenceSize() { return consequenceSize; }
 
+  public long getGeneration() { return generation; }
+
+  public void setGeneration(long generation) { this.generation = generation; }
+
   @Override
   public String toString() {
 
@@ -0,0 +1,49 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates the identifiers of the rules in the rules index. The identifier only depends on the template, the
+ * generation and the items of the rule (not on its metrics), so a rule whose metrics change can be replaced in the
+ * index, and the rules of a new generation do not replace the ones that are being used.
+ */
+public class EsRuleIds {
+
+  private static final char SEPARATOR = '\u001f';
+
+  private EsRuleIds() {
+  }
+
+  public static String getRuleId(EsRule rule) {
+    // The premise items are sorted, so the id does not depend on their order
+    List<String> premiseKeys = new ArrayList<>();
+    for (EsRuleItem item : rule.getPremise()) {
+      premiseKeys.add(getItemKey(item));
+    }
+    Collections.sort(premiseKeys);
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(rule.getTemplateId(), StandardCharsets.UTF_8).putChar(SEPARATOR);
+    hasher.putLong(rule.getGeneration());
+    for (String premiseKey : premiseKeys) {
+      hasher.putString(premiseKey, StandardCharsets.UTF_8).putChar(SEPARATOR);
+    }
+    hasher.putString("=>", StandardCharsets.UTF_8).putChar(SEPARATOR);
+    for (EsRuleItem item : rule.getConsequence()) {
+      hasher.putString(getItemKey(item), StandardCharsets.UTF_8).putChar(SEPARATOR);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static String getItemKey(EsRuleItem item) {
+    return item.getFieldType() + SEPARATOR + item.getFieldPath() + SEPARATOR + item.getFieldValueType() + SEPARATOR +
+        item.getFieldValueLabel();
+  }
+
+}
@@ -1,7 +1,5 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch;
 
-import java.util.List;
-
 /**
  * This class represent each item of the premise/consequence of an association rule.
  */
@@ -10,11 +8,11 @@ public class EsRuleItem {
   private String fieldPath;
   private String fieldType;
   private String fieldNormalizedPath;
-  private List<String> fieldTypeMappings;
+  private String fieldTypeClass;
   private String fieldValueType;
   private String fieldValueLabel;
   private String fieldNormalizedValue;
-  private List<String> fieldValueMappings;
+  private String fieldValueClass;
   private String fieldValueResult;
 
   /**
@@ -34,7 +32,9 @@ public class EsRuleItem {
    *                              Limitation: our current version does not deal neither with URI paths (e.g., URI1.URI2)
    *                              nor with "mixed" paths that contain both field names and URIs
    *                              (e.g. SAMPLE.http://purl.obolibrary.org/obo/DOID_4).
-   * @param fieldTypeMappings     List of URIs equivalent to the fieldType, obtained from a mappings service.
+   * @param fieldTypeClass        Canonical URI of the class of URIs equivalent to the fieldNormalizedPath, obtained
+   *                              from the mappings service. For fields that are not annotated, it is the
+   *                              fieldNormalizedPath.
    * @param fieldValueType        For ontology terms, this field stored the content of the @id field.
    * @param fieldValueLabel       For free text values, this field stores the content of the @value field. For
    *                              ontology terms, it stores the value of the rdfs:label field.
@@ -53,24 +53,25 @@ public class EsRuleItem {
    *                              - fieldValueType = http://purl.obolibrary.org/obo/DOID_9256
    *                              - fieldValueLabel = colorectal cancer
    *                              - fieldNormalizedValue = http://purl.obolibrary.org/obo/DOID_9256
-   * @param fieldValueMappings    List of URIs equivalent to the fieldValueType (only for annotated instances)
+   * @param fieldValueClass       Canonical URI of the class of URIs equivalent to the fieldNormalizedValue. For free
+   *                              text values, it is the fieldNormalizedValue.
    * @param fieldValueResult      This field contains the information needed to generate a recommendation result. Its
    *                              String representation is used to perform the aggregation of results in Elasticsearch.
    *                              - For free-text values, fieldValueResult = [](fieldValueLabel)
    *                              - For controlled terms, fieldValueResult = [fieldValueType](fieldValueLabel)
    */
   public EsRuleItem(String fieldPath, String fieldType, String fieldNormalizedPath,
-                    List<String> fieldTypeMappings, String fieldValueType,
-                    String fieldValueLabel, String fieldNormalizedValue, List<String> fieldValueMappings,
+                    String fieldTypeClass, String fieldValueType,
+                    String fieldValueLabel, String fieldNormalizedValue, String fieldValueClass,
                     String fieldValueResult) {
     this.fieldPath = fieldPath;
     this.fieldType = fieldType;
     this.fieldNormalizedPath = fieldNormalizedPath;
-    this.fieldTypeMappings = fieldTypeMappings;
+    this.fieldTypeClass = fieldTypeClass;
     this.fieldValueType = fieldValueType;
     this.fieldValueLabel = fieldValueLabel;
     this.fieldNormalizedValue = fieldNormalizedValue;
-    this.fieldValueMappings = fieldValueMappings;
+    this.fieldValueClass = fieldValueClass;
     this.fieldValueResult = fieldValueResult;
   }
 
@@ -88,8 +89,8 @@ public class EsRuleItem {
     return fieldNormalizedPath;
   }
 
-  public List<String> getFieldTypeMappings() {
-    return fieldTypeMappings;
+  public String getFieldTypeClass() {
+    return fieldTypeClass;
   }
 
   public String getFieldValueType() {
@@ -104,8 +105,8 @@ public class EsRuleItem {
     return fieldNormalizedValue;
   }
 
-  public List<String> getFieldValueMappings() {
-    return fieldValueMappings;
+  public String getFieldValueClass() {
+    return fieldValueClass;
   }
 
   public String getFieldValueResult() {
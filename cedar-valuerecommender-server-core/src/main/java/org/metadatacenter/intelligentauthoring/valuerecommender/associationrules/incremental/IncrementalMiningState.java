@@ -0,0 +1,411 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.incremental;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.ArffInstance;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.AssociationRulesUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.FPGrowth;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.Itemset;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.INCREMENTAL_MAX_CHANGED_RATIO;
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.INCREMENTAL_MAX_NUM_ITEMSETS;
+
+/**
+ * Mining state of a template: the transactions of its instances and the support counts of its frequent itemsets
+ * (the ones needed to generate the rules, see {@link FPGrowth}). When instances are created, updated or deleted, the
+ * counts are updated from the changed transactions only, instead of mining all the transactions again.
+ * <p>
+ * Every (attribute, value) pair is encoded as an int item. Items are assigned in order of appearance and are never
+ * removed, so the item ids stay stable while the state is kept.
+ */
+public class IncrementalMiningState {
+
+  private static final int FORMAT_VERSION = 1;
+
+  private final String templateId;
+  private final List<String> attributeNames;
+  private final List<Boolean> attributeConsequenceEnabled;
+  private final List<Map<String, Integer>> valueItems; // attribute position -> value -> item id
+  private final List<Integer> itemAttributes; // item id -> attribute position
+  private final List<String> itemValues; // item id -> value
+  private final Map<String, int[][]> transactions; // template instance id -> transactions (sorted item ids)
+  private int numTransactions;
+  private int minSupportCount;
+  private Map<Itemset, Integer> itemsetSupports;
+
+  /**
+   * @param templateId                  Template identifier
+   * @param attributeNames              Attribute names (e.g., [fieldType](fieldPath))
+   * @param attributeConsequenceEnabled Whether each attribute can be the consequence of a rule
+   */
+  public IncrementalMiningState(String templateId, List<String> attributeNames,
+                                List<Boolean> attributeConsequenceEnabled) {
+    this.templateId = templateId;
+    this.attributeNames = attributeNames;
+    this.attributeConsequenceEnabled = attributeConsequenceEnabled;
+    this.valueItems = new ArrayList<>();
+    for (int i = 0; i < attributeNames.size(); i++) {
+      valueItems.add(new HashMap<>());
+    }
+    this.itemAttributes = new ArrayList<>();
+    this.itemValues = new ArrayList<>();
+    this.transactions = new HashMap<>();
+    this.numTransactions = 0;
+    this.minSupportCount = AssociationRulesUtils.getMinSupportCount(0);
+    this.itemsetSupports = new HashMap<>();
+  }
+
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  /**
+   * @return True if the state was built with the given attributes, so it can be updated with instances flattened
+   * using them
+   */
+  public boolean hasAttributes(List<String> attributeNames, List<Boolean> attributeConsequenceEnabled) {
+    return this.attributeNames.equals(attributeNames) &&
+        this.attributeConsequenceEnabled.equals(attributeConsequenceEnabled);
+  }
+
+  public int getNumTransactions() {
+    return numTransactions;
+  }
+
+  public int getMinSupportCount() {
+    return minSupportCount;
+  }
+
+  /**
+   * @return Support counts of the frequent itemsets. The map must not be modified.
+   */
+  public Map<Itemset, Integer> getItemsetSupports() {
+    return itemsetSupports;
+  }
+
+  public int getItemAttribute(int item) {
+    return itemAttributes.get(item);
+  }
+
+  public String getItemAttributeName(int item) {
+    return attributeNames.get(itemAttributes.get(item));
+  }
+
+  public String getItemValue(int item) {
+    return itemValues.get(item);
+  }
+
+  public boolean isConsequenceEnabled(int item) {
+    return attributeConsequenceEnabled.get(itemAttributes.get(item));
+  }
+
+  /**
+   * Sets the transactions of a template instance, without updating the itemset counts. Used to load all the instances
+   * before calling {@link #mine()}.
+   */
+  public void setInstance(String templateInstanceId, List<ArffInstance> arffInstances) {
+    int[][] previous = transactions.put(templateInstanceId, encode(arffInstances));
+    numTransactions += arffInstances.size() - (previous != null ? previous.length : 0);
+  }
+
+  /**
+   * Finds the frequent itemsets from all the stored transactions
+   *
+   * @return False if there are more than INCREMENTAL_MAX_NUM_ITEMSETS frequent itemsets. The state must not be used
+   * nor saved then.
+   */
+  public boolean mine() {
+    minSupportCount = AssociationRulesUtils.getMinSupportCount(numTransactions);
+    itemsetSupports = FPGrowth.mineItemsets(allTransactions(), itemAttributes.size(), getItemConsequenceEnabled(),
+        minSupportCount, INCREMENTAL_MAX_NUM_ITEMSETS);
+    return itemsetSupports != null;
+  }
+
+  /**
+   * Applies the changes of some template instances to the transactions and to the itemset counts. The counts are the
+   * same ones found by {@link #mine()} after the changes, but only the changed transactions are read, unless the
+   * minimum support decreases (itemsets that were not tracked could become frequent) or many transactions have
+   * changed. Frequent itemsets that are no longer needed to generate rules may be kept, with their exact counts.
+   *
+   * @param updatedInstances   Template instances created or updated (template instance id -> Weka instances)
+   * @param deletedInstanceIds Template instances deleted
+   * @return The previous support count of the itemsets whose count has changed, has been added (null) or has been
+   * removed, or null if there are more than INCREMENTAL_MAX_NUM_ITEMSETS frequent itemsets. The state must not be used
+   * nor saved then.
+   */
+  public Map<Itemset, Integer> applyChanges(Map<String, List<ArffInstance>> updatedInstances,
+                                            Collection<String> deletedInstanceIds) {
+    List<int[]> removedTransactions = new ArrayList<>();
+    List<int[]> addedTransactions = new ArrayList<>();
+    for (String templateInstanceId : deletedInstanceIds) {
+      int[][] previous = transactions.remove(templateInstanceId);
+      if (previous != null) {
+        removedTransactions.addAll(Arrays.asList(previous));
+      }
+    }
+    for (Map.Entry<String, List<ArffInstance>> updatedInstance : updatedInstances.entrySet()) {
+      int[][] current = encode(updatedInstance.getValue());
+      int[][] previous = transactions.put(updatedInstance.getKey(), current);
+      if (previous != null) {
+        removedTransactions.addAll(Arrays.asList(previous));
+      }
+      addedTransactions.addAll(Arrays.asList(current));
+    }
+    numTransactions += addedTransactions.size() - removedTransactions.size();
+    int newMinSupportCount = AssociationRulesUtils.getMinSupportCount(numTransactions);
+
+    Map<Itemset, Integer> previousSupports = new HashMap<>();
+    if (newMinSupportCount < minSupportCount ||
+        addedTransactions.size() + removedTransactions.size() > numTransactions * INCREMENTAL_MAX_CHANGED_RATIO) {
+      Map<Itemset, Integer> oldItemsetSupports = itemsetSupports;
+      if (!mine()) {
+        return null;
+      }
+      for (Map.Entry<Itemset, Integer> oldItemset : oldItemsetSupports.entrySet()) {
+        if (!oldItemset.getValue().equals(itemsetSupports.get(oldItemset.getKey()))) {
+          previousSupports.put(oldItemset.getKey(), oldItemset.getValue());
+        }
+      }
+      for (Itemset itemset : itemsetSupports.keySet()) {
+        if (!oldItemsetSupports.containsKey(itemset)) {
+          previousSupports.put(itemset, null);
+        }
+      }
+      return previousSupports;
+    }
+
+    // 1. Update the counts of the tracked itemsets contained in the changed transactions
+    for (Map.Entry<Itemset, Integer> itemset : itemsetSupports.entrySet()) {
+      int delta = 0;
+      for (int[] transaction : addedTransactions) {
+        if (itemset.getKey().isContainedIn(transaction)) {
+          delta++;
+        }
+      }
+      for (int[] transaction : removedTransactions) {
+        if (itemset.getKey().isContainedIn(transaction)) {
+          delta--;
+        }
+      }
+      if (delta != 0) {
+        previousSupports.put(itemset.getKey(), itemset.getValue());
+        itemset.setValue(itemset.getValue() + delta);
+      }
+    }
+
+    // 2. An itemset that becomes frequent is contained in an added transaction. For each distinct added transaction,
+    // the transactions are projected on its items and mined, which gives the exact counts of its frequent subsets
+    Set<Itemset> distinctAddedTransactions = new HashSet<>();
+    for (int[] transaction : addedTransactions) {
+      distinctAddedTransactions.add(new Itemset(transaction));
+    }
+    boolean[] itemConsequenceEnabled = getItemConsequenceEnabled();
+    for (Itemset addedTransaction : distinctAddedTransactions) {
+      List<int[]> projectedTransactions = new ArrayList<>();
+      for (int[] transaction : allTransactions()) {
+        int[] projected = intersect(transaction, addedTransaction.getItems());
+        if (projected.length > 0) {
+          projectedTransactions.add(projected);
+        }
+      }
+      Map<Itemset, Integer> projectedSupports = FPGrowth.mineItemsets(projectedTransactions, itemAttributes.size(),
+          itemConsequenceEnabled, newMinSupportCount, INCREMENTAL_MAX_NUM_ITEMSETS);
+      if (projectedSupports == null) {
+        return null;
+      }
+      for (Map.Entry<Itemset, Integer> itemset : projectedSupports.entrySet()) {
+        if (!itemsetSupports.containsKey(itemset.getKey())) {
+          previousSupports.put(itemset.getKey(), null);
+          itemsetSupports.put(itemset.getKey(), itemset.getValue());
+        }
+      }
+      if (itemsetSupports.size() > INCREMENTAL_MAX_NUM_ITEMSETS) {
+        return null;
+      }
+    }
+
+    // 3. Remove the itemsets that are no longer frequent
+    Iterator<Map.Entry<Itemset, Integer>> iterator = itemsetSupports.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Itemset, Integer> itemset = iterator.next();
+      if (itemset.getValue() < newMinSupportCount) {
+        previousSupports.putIfAbsent(itemset.getKey(), itemset.getValue());
+        iterator.remove();
+      }
+    }
+    minSupportCount = newMinSupportCount;
+    return previousSupports;
+  }
+
+  /**
+   * Writes the state in a binary format
+   */
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    writeString(out, templateId);
+    out.writeInt(attributeNames.size());
+    for (int i = 0; i < attributeNames.size(); i++) {
+      writeString(out, attributeNames.get(i));
+      out.writeBoolean(attributeConsequenceEnabled.get(i));
+    }
+    out.writeInt(itemValues.size());
+    for (int item = 0; item < itemValues.size(); item++) {
+      out.writeInt(itemAttributes.get(item));
+      writeString(out, itemValues.get(item));
+    }
+    out.writeInt(transactions.size());
+    for (Map.Entry<String, int[][]> instanceTransactions : transactions.entrySet()) {
+      writeString(out, instanceTransactions.getKey());
+      out.writeInt(instanceTransactions.getValue().length);
+      for (int[] transaction : instanceTransactions.getValue()) {
+        writeItems(out, transaction);
+      }
+    }
+    out.writeInt(minSupportCount);
+    out.writeInt(itemsetSupports.size());
+    for (Map.Entry<Itemset, Integer> itemset : itemsetSupports.entrySet()) {
+      writeItems(out, itemset.getKey().getItems());
+      out.writeInt(itemset.getValue());
+    }
+  }
+
+  /**
+   * Reads a state written by {@link #write(DataOutputStream)}
+   */
+  public static IncrementalMiningState read(DataInputStream in) throws IOException {
+    int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported incremental mining state version: " + version);
+    }
+    String templateId = readString(in);
+    int numAttributes = in.readInt();
+    List<String> attributeNames = new ArrayList<>(numAttributes);
+    List<Boolean> attributeConsequenceEnabled = new ArrayList<>(numAttributes);
+    for (int i = 0; i < numAttributes; i++) {
+      attributeNames.add(readString(in));
+      attributeConsequenceEnabled.add(in.readBoolean());
+    }
+    IncrementalMiningState state = new IncrementalMiningState(templateId, attributeNames, attributeConsequenceEnabled);
+    int numItems = in.readInt();
+    for (int item = 0; item < numItems; item++) {
+      int attribute = in.readInt();
+      String value = readString(in);
+      state.itemAttributes.add(attribute);
+      state.itemValues.add(value);
+      state.valueItems.get(attribute).put(value, item);
+    }
+    int numInstances = in.readInt();
+    for (int i = 0; i < numInstances; i++) {
+      String templateInstanceId = readString(in);
+      int[][] instanceTransactions = new int[in.readInt()][];
+      for (int t = 0; t < instanceTransactions.length; t++) {
+        instanceTransactions[t] = readItems(in);
+      }
+      state.transactions.put(templateInstanceId, instanceTransactions);
+      state.numTransactions += instanceTransactions.length;
+    }
+    state.minSupportCount = in.readInt();
+    int numItemsets = in.readInt();
+    state.itemsetSupports = new HashMap<>(numItemsets * 2);
+    for (int i = 0; i < numItemsets; i++) {
+      Itemset itemset = new Itemset(readItems(in));
+      state.itemsetSupports.put(itemset, in.readInt());
+    }
+    return state;
+  }
+
+  /**
+   * Encodes the Weka instances of a template instance as transactions with the items of their non-missing values.
+   * New values are assigned new items.
+   */
+  private int[][] encode(List<ArffInstance> arffInstances) {
+    int[][] encoded = new int[arffInstances.size()][];
+    for (int i = 0; i < arffInstances.size(); i++) {
+      List<String> values = arffInstances.get(i).getValues();
+      int[] buffer = new int[values.size()];
+      int size = 0;
+      for (int a = 0; a < values.size(); a++) {
+        String value = values.get(a);
+        if (value != null) {
+          Integer item = valueItems.get(a).get(value);
+          if (item == null) {
+            item = itemValues.size();
+            valueItems.get(a).put(value, item);
+            itemAttributes.add(a);
+            itemValues.add(value);
+          }
+          buffer[size++] = item;
+        }
+      }
+      int[] transaction = Arrays.copyOf(buffer, size);
+      Arrays.sort(transaction);
+      encoded[i] = transaction;
+    }
+    return encoded;
+  }
+
+  private Iterable<int[]> allTransactions() {
+    return () -> transactions.values().stream().flatMap(Arrays::stream).iterator();
+  }
+
+  private boolean[] getItemConsequenceEnabled() {
+    boolean[] itemConsequenceEnabled = new boolean[itemAttributes.size()];
+    for (int item = 0; item < itemConsequenceEnabled.length; item++) {
+      itemConsequenceEnabled[item] = isConsequenceEnabled(item);
+    }
+    return itemConsequenceEnabled;
+  }
+
+  /**
+   * @return The items (sorted) contained in both sorted arrays
+   */
+  private static int[] intersect(int[] items1, int[] items2) {
+    int[] buffer = new int[Math.min(items1.length, items2.length)];
+    int size = 0;
+    for (int i = 0, j = 0; i < items1.length && j < items2.length; ) {
+      if (items1[i] < items2[j]) {
+        i++;
+      } else if (items1[i] > items2[j]) {
+        j++;
+      } else {
+        buffer[size++] = items1[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(buffer, size);
+  }
+
+  private static void writeItems(DataOutputStream out, int[] items) throws IOException {
+    out.writeInt(items.length);
+    for (int item : items) {
+      out.writeInt(item);
+    }
+  }
+
+  private static int[] readItems(DataInputStream in) throws IOException {
+    int[] items = new int[in.readInt()];
+    for (int i = 0; i < items.length; i++) {
+      items[i] = in.readInt();
+    }
+    return items;
+  }
+
+  // DataOutputStream.writeUTF is limited to 64 KB, and field values may be longer
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+}
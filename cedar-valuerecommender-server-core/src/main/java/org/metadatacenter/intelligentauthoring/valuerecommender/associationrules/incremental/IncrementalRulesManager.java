@@ -0,0 +1,355 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.incremental;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.metadatacenter.intelligentauthoring.valuerecommender.ConfigManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.ArffInstance;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.AssociationRulesUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationProgress;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.RulesGenerationStatusManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.TemplateInstanceFlattener;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.Itemset;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.ItemsetRules;
+import org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch.SearchIdsIterator;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.TemplateNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
+
+/**
+ * Maintains the rules of the templates incrementally. The mining state of a template (see
+ * {@link IncrementalMiningState}) is built when its rules are generated, and saved to a file (one per template), so
+ * that it is still available after the server restarts. The instance changes received for a template are kept until
+ * its rules are updated, and then only the rules whose support or confidence has changed are recomputed.
+ * <p>
+ * A state built or updated by {@link #rebuild} or {@link #update} is not used nor saved until its rules have been
+ * indexed and {@link #commitState} is called, so the saved states never get ahead of the indexed rules.
+ * <p>
+ * Only the templates mined with FP-Growth have a state. The rules are the same ones generated by the FP-Growth miner
+ * (with the same minimum support), without limiting their number. The lift, leverage and conviction of a rule are only
+ * recomputed when its support or confidence changes. To bound the size of the saved states, a template with more than
+ * INCREMENTAL_MAX_NUM_TRANSACTIONS transactions or INCREMENTAL_MAX_NUM_ITEMSETS frequent itemsets has no state.
+ * <p>
+ * The methods that receive a template are not thread-safe for the same template. The rules generation scheduler
+ * never processes a template in several threads at the same time.
+ */
+public class IncrementalRulesManager {
+
+  private static final Logger logger = LoggerFactory.getLogger(IncrementalRulesManager.class);
+
+  private final Cache<String, IncrementalMiningState> states;
+  private final Map<String, IncrementalMiningState> uncommittedStates; // States whose rules are being indexed
+  private final Map<String, Map<String, Boolean>> pendingChanges; // template id -> template instance id -> deleted
+
+  public IncrementalRulesManager() {
+    this.states = CacheBuilder.newBuilder().maximumSize(INCREMENTAL_STATES_CACHE_SIZE).build();
+    this.uncommittedStates = new ConcurrentHashMap<>();
+    this.pendingChanges = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Records instance changes, which are applied when the template rules are updated. A later change of an instance
+   * replaces the previous one.
+   *
+   * @param templateId
+   * @param updatedInstanceIds Template instances created or updated
+   * @param deletedInstanceIds Template instances deleted
+   */
+  public void addChanges(String templateId, Collection<String> updatedInstanceIds,
+                         Collection<String> deletedInstanceIds) {
+    pendingChanges.compute(templateId, (id, changes) -> {
+      Map<String, Boolean> templateChanges = changes != null ? changes : new LinkedHashMap<>();
+      for (String templateInstanceId : updatedInstanceIds) {
+        templateChanges.put(templateInstanceId, false);
+      }
+      for (String templateInstanceId : deletedInstanceIds) {
+        templateChanges.put(templateInstanceId, true);
+      }
+      return templateChanges;
+    });
+  }
+
+  /**
+   * @return True if the template has a mining state, i.e., if its rules were generated with FP-Growth and can be
+   * updated incrementally
+   */
+  public boolean hasState(String templateId) {
+    return uncommittedStates.containsKey(templateId) || states.getIfPresent(templateId) != null ||
+        getFile(templateId).exists();
+  }
+
+  /**
+   * Reads all the instances of a template and finds its frequent itemsets. The pending changes are discarded, as the
+   * instances are read after them. The new mining state is saved when it is committed.
+   *
+   * @param templateId
+   * @return All the rules of the template, or an empty optional if the state exceeds the size limits. In that case,
+   * the template has no state and its rules must be generated by the FP-Growth miner.
+   */
+  public Optional<List<EsRule>> rebuild(String templateId) throws Exception {
+    pendingChanges.remove(templateId);
+    Optional<TemplateInstanceFlattener> flattener = AssociationRulesUtils.createFlattener(templateId);
+    if (!flattener.isPresent()) {
+      removeState(templateId);
+      return Optional.of(new ArrayList<>());
+    }
+    IncrementalMiningState state = new IncrementalMiningState(templateId, getAttributeNames(flattener.get()),
+        getAttributeConsequenceEnabled(flattener.get()));
+
+    RulesGenerationProgress progress = RulesGenerationStatusManager.getProgress(templateId);
+    progress.setPhase(RulesGenerationProgress.Phase.READING_INSTANCES);
+    try (SearchIdsIterator templateInstancesIds = AssociationRulesUtils.streamTemplateInstancesIds(templateId)) {
+      int instancesCount = AssociationRulesUtils.readTemplateInstances(templateInstancesIds, MAX_INSTANCES_FOR_ARM,
+          flattener.get(),
+          (tiId, arffInstances) -> {
+            state.setInstance(tiId, arffInstances);
+            progress.addInstance(arffInstances.size());
+          });
+      logger.info("Number of template instances used to generate rules: " + instancesCount);
+    }
+
+    if (state.getNumTransactions() > INCREMENTAL_MAX_NUM_TRANSACTIONS) {
+      logger.info("Template " + templateId + " has more than " + INCREMENTAL_MAX_NUM_TRANSACTIONS + " transactions. " +
+          "Its rules will not be updated incrementally");
+      removeState(templateId);
+      return Optional.empty();
+    }
+
+    long startTime = System.currentTimeMillis();
+    progress.setPhase(RulesGenerationProgress.Phase.MINING_RULES);
+    if (!state.mine()) {
+      logger.info("Template " + templateId + " has more than " + INCREMENTAL_MAX_NUM_ITEMSETS + " frequent " +
+          "itemsets. Its rules will not be updated incrementally");
+      removeState(templateId);
+      return Optional.empty();
+    }
+    logger.info("Number of transactions: " + state.getNumTransactions() + ". Min. support: " +
+        state.getMinSupportCount() + ". Number of frequent itemsets: " + state.getItemsetSupports().size() +
+        ". Execution time: " + (System.currentTimeMillis() - startTime) + " ms");
+    List<EsRule> rules = createItemsetRules(state, new HashMap<>()).generateRules(state.getItemsetSupports());
+    logger.info("Number of rules generated: " + rules.size());
+    uncommittedStates.put(templateId, state);
+    return Optional.of(rules);
+  }
+
+  /**
+   * Applies the pending changes of a template to its mining state and finds the rules that have changed. The updated
+   * state is saved when it is committed. If the update fails, the changes are kept for the next update.
+   *
+   * @param templateId
+   * @return The rules update, or an empty optional if the template state is not available, the template fields have
+   * changed or the state exceeds the size limits. In that case, the rules must be generated again.
+   */
+  public Optional<RulesUpdate> update(String templateId) throws Exception {
+    Map<String, Boolean> changes = pendingChanges.remove(templateId);
+    try {
+      return update(templateId, changes);
+    } catch (Exception e) {
+      if (changes != null) {
+        // The changes received during the update are more recent
+        pendingChanges.merge(templateId, changes, (newerChanges, failedChanges) -> {
+          failedChanges.putAll(newerChanges);
+          return failedChanges;
+        });
+      }
+      throw e;
+    }
+  }
+
+  private Optional<RulesUpdate> update(String templateId, Map<String, Boolean> changes) throws Exception {
+    IncrementalMiningState state = getState(templateId);
+    if (state == null) {
+      logger.info("Incremental mining state not found for template " + templateId);
+      return Optional.empty();
+    }
+    Optional<TemplateInstanceFlattener> flattener = AssociationRulesUtils.createFlattener(templateId);
+    if (!flattener.isPresent() || !state.hasAttributes(getAttributeNames(flattener.get()),
+        getAttributeConsequenceEnabled(flattener.get()))) {
+      logger.info("The fields of template " + templateId + " have changed since its rules were generated");
+      removeState(templateId);
+      return Optional.empty();
+    }
+
+    List<String> updatedInstanceIds = new ArrayList<>();
+    Set<String> deletedInstanceIds = new HashSet<>();
+    if (changes != null) {
+      for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+        if (change.getValue()) {
+          deletedInstanceIds.add(change.getKey());
+        } else {
+          updatedInstanceIds.add(change.getKey());
+        }
+      }
+    }
+    RulesGenerationProgress progress = RulesGenerationStatusManager.getProgress(templateId);
+    progress.setPhase(RulesGenerationProgress.Phase.READING_INSTANCES);
+    Map<String, List<ArffInstance>> updatedInstances = new LinkedHashMap<>();
+    AssociationRulesUtils.readTemplateInstances(updatedInstanceIds.iterator(), -1, flattener.get(),
+        (tiId, arffInstances) -> {
+          updatedInstances.put(tiId, arffInstances);
+          progress.addInstance(arffInstances.size());
+        });
+    // The updated instances that are not found have been deleted since the change was received
+    for (String templateInstanceId : updatedInstanceIds) {
+      if (!updatedInstances.containsKey(templateInstanceId)) {
+        deletedInstanceIds.add(templateInstanceId);
+      }
+    }
+    logger.info("Applying instance changes to template " + templateId + ". Updated: " + updatedInstances.size() +
+        ". Deleted: " + deletedInstanceIds.size());
+
+    long startTime = System.currentTimeMillis();
+    progress.setPhase(RulesGenerationProgress.Phase.MINING_RULES);
+    // The state is modified in place, so it is removed from the cache until it is committed. If the update fails, the
+    // saved state is read again.
+    states.invalidate(templateId);
+    Map<Integer, EsRuleItem> ruleItems = new HashMap<>();
+    ItemsetRules oldItemsetRules = createItemsetRules(state, ruleItems);
+    Map<Itemset, Integer> previousSupports = state.applyChanges(updatedInstances, deletedInstanceIds);
+    if (previousSupports == null || state.getNumTransactions() > INCREMENTAL_MAX_NUM_TRANSACTIONS) {
+      logger.info("The incremental mining state of template " + templateId + " exceeds the size limits");
+      removeState(templateId);
+      return Optional.empty();
+    }
+    ItemsetRules newItemsetRules = createItemsetRules(state, ruleItems);
+    Map<Itemset, Integer> itemsetSupports = state.getItemsetSupports();
+
+    // The rules of an itemset change if its support or the support of its premises change
+    Set<Itemset> affectedItemsets = new HashSet<>(previousSupports.keySet());
+    for (Itemset itemset : itemsetSupports.keySet()) {
+      for (int c = 0; c < itemset.size() && itemset.size() > 1; c++) {
+        if (previousSupports.containsKey(itemset.without(c))) {
+          affectedItemsets.add(itemset);
+          break;
+        }
+      }
+    }
+
+    List<EsRule> upsertedRules = new ArrayList<>();
+    List<EsRule> deletedRules = new ArrayList<>();
+    for (Itemset itemset : affectedItemsets) {
+      for (int c = 0; c < itemset.size(); c++) {
+        ItemsetRules.RuleMetrics oldMetrics = oldItemsetRules.getMetrics(itemset, c,
+            i -> previousSupports.containsKey(i) ? previousSupports.get(i) : itemsetSupports.get(i));
+        ItemsetRules.RuleMetrics newMetrics = newItemsetRules.getMetrics(itemset, c, itemsetSupports::get);
+        if (newMetrics != null) {
+          if (oldMetrics == null || oldMetrics.getSupport() != newMetrics.getSupport() ||
+              oldMetrics.getConfidence() != newMetrics.getConfidence()) {
+            upsertedRules.add(newItemsetRules.buildRule(itemset, c, newMetrics));
+          }
+        } else if (oldMetrics != null) {
+          deletedRules.add(oldItemsetRules.buildRule(itemset, c, oldMetrics));
+        }
+      }
+    }
+    List<EsRule> rules = newItemsetRules.generateRules(itemsetSupports);
+    logger.info("Number of transactions: " + state.getNumTransactions() + ". Changed itemsets: " +
+        previousSupports.size() + ". Upserted rules: " + upsertedRules.size() + ". Deleted rules: " +
+        deletedRules.size() + ". Execution time: " + (System.currentTimeMillis() - startTime) + " ms");
+    uncommittedStates.put(templateId, state);
+    return Optional.of(new RulesUpdate(upsertedRules, deletedRules, rules));
+  }
+
+  /**
+   * Saves the mining state built or updated by the last call to {@link #rebuild} or {@link #update}. It must be
+   * called once its rules have been indexed without failures.
+   */
+  public void commitState(String templateId) {
+    IncrementalMiningState state = uncommittedStates.remove(templateId);
+    if (state != null) {
+      saveState(state);
+    }
+  }
+
+  /**
+   * Removes the mining state of a template. It must be called when its rules are generated without keeping the
+   * state, or when indexing them fails, as the state would no longer match the indexed rules.
+   */
+  public void removeState(String templateId) {
+    uncommittedStates.remove(templateId);
+    states.invalidate(templateId);
+    File file = getFile(templateId);
+    if (file.exists() && !file.delete()) {
+      logger.warn("Error removing the incremental mining state of template " + templateId + " from " +
+          file.getAbsolutePath());
+    }
+  }
+
+  private IncrementalMiningState getState(String templateId) {
+    IncrementalMiningState state = states.getIfPresent(templateId);
+    if (state != null) {
+      return state;
+    }
+    File file = getFile(templateId);
+    if (!file.exists()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      state = IncrementalMiningState.read(in);
+      states.put(templateId, state);
+      return state;
+    } catch (IOException e) {
+      logger.error("Error reading the incremental mining state of template " + templateId + " from " +
+          file.getAbsolutePath(), e);
+      return null;
+    }
+  }
+
+  private void saveState(IncrementalMiningState state) {
+    states.put(state.getTemplateId(), state);
+    File file = getFile(state.getTemplateId());
+    file.getParentFile().mkdirs();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      state.write(out);
+      logger.info("Incremental mining state saved to " + file.getAbsolutePath());
+    } catch (IOException e) {
+      // The state is kept in memory, but it will not be available after restarting
+      logger.error("Error saving the incremental mining state of template " + state.getTemplateId(), e);
+    }
+  }
+
+  private File getFile(String templateId) {
+    String fileName = templateId.substring(templateId.lastIndexOf("/") + 1) + ".bin";
+    return new File(new File(ConfigManager.getDataDirectory(), INCREMENTAL_STATES_FOLDER_NAME), fileName);
+  }
+
+  /**
+   * Rules of the current itemsets of the state. The rule items are cached in ruleItems.
+   */
+  private ItemsetRules createItemsetRules(IncrementalMiningState state, Map<Integer, EsRuleItem> ruleItems) {
+    return new ItemsetRules(state.getTemplateId(), state.getNumTransactions(), state.getMinSupportCount(),
+        state::isConsequenceEnabled, state::getItemAttribute, item -> {
+      EsRuleItem ruleItem = ruleItems.get(item);
+      if (ruleItem == null) {
+        ruleItem = AssociationRulesUtils.buildEsRuleItem(state.getItemAttributeName(item), state.getItemValue(item));
+        ruleItems.put(item, ruleItem);
+      }
+      return ruleItem;
+    });
+  }
+
+  private static List<String> getAttributeNames(TemplateInstanceFlattener flattener)
+      throws UnsupportedEncodingException {
+    List<String> attributeNames = new ArrayList<>();
+    for (TemplateNode node : flattener.getFieldNodes()) {
+      attributeNames.add(AssociationRulesUtils.toWekaAttributeName(node));
+    }
+    return attributeNames;
+  }
+
+  private static List<Boolean> getAttributeConsequenceEnabled(TemplateInstanceFlattener flattener) {
+    List<Boolean> consequenceEnabled = new ArrayList<>();
+    for (TemplateNode node : flattener.getFieldNodes()) {
+      consequenceEnabled.add(node.isValueRecommendationEnabled());
+    }
+    return consequenceEnabled;
+  }
+
+}
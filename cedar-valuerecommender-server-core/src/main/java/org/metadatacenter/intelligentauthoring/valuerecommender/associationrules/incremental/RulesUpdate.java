@@ -0,0 +1,39 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.incremental;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+
+import java.util.List;
+
+/**
+ * Changes in the rules of a template after applying some instance changes
+ */
+public class RulesUpdate {
+
+  private final List<EsRule> upsertedRules;
+  private final List<EsRule> deletedRules;
+  private final List<EsRule> rules;
+
+  /**
+   * @param upsertedRules Rules that are new or whose support or confidence has changed
+   * @param deletedRules  Rules that no longer meet the thresholds
+   * @param rules         All the rules of the template after the update
+   */
+  public RulesUpdate(List<EsRule> upsertedRules, List<EsRule> deletedRules, List<EsRule> rules) {
+    this.upsertedRules = upsertedRules;
+    this.deletedRules = deletedRules;
+    this.rules = rules;
+  }
+
+  public List<EsRule> getUpsertedRules() {
+    return upsertedRules;
+  }
+
+  public List<EsRule> getDeletedRules() {
+    return deletedRules;
+  }
+
+  public List<EsRule> getRules() {
+    return rules;
+  }
+
+}
@@ -0,0 +1,38 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.AssociationRulesUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import weka.associations.Apriori;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.APRIORI_MAX_NUM_RULES;
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.VERBOSE_MODE;
+
+/**
+ * Generates the rules using the Weka implementation of Apriori
+ */
+public class AprioriRulesMiner implements RulesMiner {
+
+  private static final Logger logger = LoggerFactory.getLogger(AprioriRulesMiner.class);
+
+  @Override
+  public List<EsRule> mineRules(Instances data, String templateId) throws Exception {
+    logger.info("Running Apriori...");
+    long startTime = System.currentTimeMillis();
+    Apriori aprioriResults = AssociationRulesUtils.runApriori(data, APRIORI_MAX_NUM_RULES, VERBOSE_MODE);
+    long aprioriTime = System.currentTimeMillis() - startTime;
+    // See info about options at: http://grepcode.com/file/repo1.maven.org/maven2/nz.ac.waikato.cms
+    // .weka/weka-stable/3.6.8/weka/associations/Apriori.java
+    logger.info("Current options: " + Arrays.asList(aprioriResults.getOptions()).toString());
+    logger.info("Numer of rules limit: " + aprioriResults.getNumRules());
+    logger.info("Number of rules generated: " + aprioriResults.getAssociationRules().getRules().size());
+    logger.info("Apriori execution time: " + aprioriTime + " ms");
+    return AssociationRulesUtils.toEsRules(aprioriResults, templateId);
+  }
+
+}
@@ -0,0 +1,256 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FP-Growth algorithm over transactions of int items. The frequent itemsets are found by recursively mining the
+ * conditional FP-trees.
+ * <p>
+ * Only the itemsets needed to generate rules whose consequence is a consequence-enabled item are returned: these
+ * items are ranked before the rest, so an itemset without any of them is only kept if its conditional tree contains
+ * one (i.e., if it is the premise of a rule), and its branch is pruned otherwise.
+ */
+public class FPGrowth {
+
+  private FPGrowth() {
+  }
+
+  /**
+   * @param transactions           Transactions, as arrays of distinct item ids
+   * @param numItems               Number of items (item ids go from 0 to numItems - 1)
+   * @param itemConsequenceEnabled Whether each item can be the consequence of a rule
+   * @param minSupportCount        Minimum number of transactions that contain a frequent itemset
+   * @param maxItemsets            Maximum number of itemsets. Mining stops as soon as it is exceeded, so the memory
+   *                               used by the itemsets is bounded
+   * @return The support count of the frequent itemsets, identified by their item ids, or null if there are more than
+   * maxItemsets
+   */
+  public static Map<Itemset, Integer> mineItemsets(Iterable<int[]> transactions, int numItems,
+                                                   boolean[] itemConsequenceEnabled, int minSupportCount,
+                                                   int maxItemsets) {
+    // 1. Count the support of each item
+    int[] itemCounts = new int[numItems];
+    int maxLength = 0;
+    for (int[] transaction : transactions) {
+      for (int item : transaction) {
+        itemCounts[item]++;
+      }
+      maxLength = Math.max(maxLength, transaction.length);
+    }
+
+    // 2. Rank the frequent items: consequence-enabled items first, and then by descending support. Inside the trees,
+    // items are identified by their rank
+    List<Integer> frequentItems = new ArrayList<>();
+    int numEnabledItems = 0;
+    for (int item = 0; item < numItems; item++) {
+      if (itemCounts[item] >= minSupportCount) {
+        frequentItems.add(item);
+        if (itemConsequenceEnabled[item]) {
+          numEnabledItems++;
+        }
+      }
+    }
+    frequentItems.sort((i1, i2) -> itemConsequenceEnabled[i1] != itemConsequenceEnabled[i2] ?
+        Boolean.compare(itemConsequenceEnabled[i2], itemConsequenceEnabled[i1]) :
+        itemCounts[i1] != itemCounts[i2] ?
+            Integer.compare(itemCounts[i2], itemCounts[i1]) : Integer.compare(i1, i2));
+    int numFrequentItems = frequentItems.size();
+    int[] itemOfRank = new int[numFrequentItems];
+    int[] rankOfItem = new int[numItems];
+    Arrays.fill(rankOfItem, -1);
+    for (int rank = 0; rank < numFrequentItems; rank++) {
+      itemOfRank[rank] = frequentItems.get(rank);
+      rankOfItem[itemOfRank[rank]] = rank;
+    }
+
+    // 3. Build the FP-tree. In the initial tree, the local index of each item is its rank
+    int[] ranks = new int[numFrequentItems];
+    for (int rank = 0; rank < numFrequentItems; rank++) {
+      ranks[rank] = rank;
+    }
+    FPTree tree = new FPTree(ranks);
+    int[] path = new int[maxLength];
+    for (int[] transaction : transactions) {
+      int length = 0;
+      for (int item : transaction) {
+        if (rankOfItem[item] != -1) {
+          path[length++] = rankOfItem[item];
+        }
+      }
+      Arrays.sort(path, 0, length);
+      tree.insert(path, length, 1);
+    }
+
+    // 4. Find the frequent itemsets that are needed to generate the rules
+    Map<Itemset, Integer> itemsetSupports = new HashMap<>();
+    if (!mine(tree, new int[0], false, numEnabledItems, minSupportCount, maxItemsets, itemOfRank, itemsetSupports)) {
+      return null;
+    }
+    return itemsetSupports;
+  }
+
+  /**
+   * Mines the frequent itemsets that end with the given suffix. Itemsets without consequence-enabled items are only
+   * kept (and extended) if a consequence-enabled item can be added to them.
+   *
+   * @param tree            FP-tree (or conditional FP-tree) of the suffix
+   * @param suffix          Items (ranks) of the suffix
+   * @param suffixEnabled   Whether the suffix contains a consequence-enabled item
+   * @param numEnabledItems Number of consequence-enabled items (i.e., their ranks are lower than this value)
+   * @param minSupportCount Minimum number of transactions that contain a frequent itemset
+   * @param maxItemsets     Maximum number of itemsets
+   * @param itemOfRank      Item id of each rank
+   * @param itemsetSupports Support of every frequent itemset found
+   * @return False if the maximum number of itemsets has been exceeded
+   */
+  private static boolean mine(FPTree tree, int[] suffix, boolean suffixEnabled, int numEnabledItems,
+                              int minSupportCount, int maxItemsets, int[] itemOfRank,
+                              Map<Itemset, Integer> itemsetSupports) {
+    // Highest ranks first
+    for (int local = tree.size() - 1; local >= 0; local--) {
+      boolean itemsetEnabled = suffixEnabled || tree.ranks[local] < numEnabledItems;
+      FPTree conditionalTree = tree.buildConditionalTree(local, minSupportCount);
+      // The conditional tree only contains lower ranks, so a consequence-enabled item would be the first one
+      boolean canBeExtendedWithEnabled = conditionalTree != null && conditionalTree.ranks[0] < numEnabledItems;
+      if (!itemsetEnabled && !canBeExtendedWithEnabled) {
+        continue;
+      }
+      int[] itemset = Arrays.copyOf(suffix, suffix.length + 1);
+      itemset[suffix.length] = tree.ranks[local];
+      int[] items = new int[itemset.length];
+      for (int i = 0; i < itemset.length; i++) {
+        items[i] = itemOfRank[itemset[i]];
+      }
+      itemsetSupports.put(new Itemset(items), tree.counts[local]);
+      if (itemsetSupports.size() > maxItemsets) {
+        return false;
+      }
+
+      if (conditionalTree != null && !mine(conditionalTree, itemset, itemsetEnabled, numEnabledItems,
+          minSupportCount, maxItemsets, itemOfRank, itemsetSupports)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Node {
+    private final int local; // Index of the item in the tree header (-1 for the root)
+    private final Node parent;
+    private int count;
+    private Node firstChild;
+    private Node nextSibling;
+    private Node nextSameItem;
+
+    private Node(int local, Node parent) {
+      this.local = local;
+      this.parent = parent;
+    }
+
+    private Node getChild(int local) {
+      for (Node child = firstChild; child != null; child = child.nextSibling) {
+        if (child.local == local) {
+          return child;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * FP-tree. The items of the tree are indexed by a local index, assigned in ascending order of rank, so every path
+   * from the root visits the items in ascending order of local index.
+   */
+  private static final class FPTree {
+    private final int[] ranks; // local index -> rank
+    private final int[] counts; // local index -> support
+    private final Node[] heads; // local index -> first node of the item
+    private final Node root = new Node(-1, null);
+
+    private FPTree(int[] ranks) {
+      this.ranks = ranks;
+      this.counts = new int[ranks.length];
+      this.heads = new Node[ranks.length];
+    }
+
+    private int size() {
+      return ranks.length;
+    }
+
+    /**
+     * Inserts a path of items (local indexes, in ascending order)
+     */
+    private void insert(int[] path, int length, int count) {
+      Node node = root;
+      for (int i = 0; i < length; i++) {
+        int local = path[i];
+        Node child = node.getChild(local);
+        if (child == null) {
+          child = new Node(local, node);
+          child.nextSibling = node.firstChild;
+          node.firstChild = child;
+          child.nextSameItem = heads[local];
+          heads[local] = child;
+        }
+        child.count += count;
+        counts[local] += count;
+        node = child;
+      }
+    }
+
+    /**
+     * Builds the conditional FP-tree of an item from the prefix paths of its nodes
+     *
+     * @return The conditional tree, or null if none of the items in the prefix paths is frequent
+     */
+    private FPTree buildConditionalTree(int local, int minSupportCount) {
+      // The prefix paths only contain items with a lower local index
+      int[] baseCounts = new int[local];
+      for (Node node = heads[local]; node != null; node = node.nextSameItem) {
+        for (Node prefix = node.parent; prefix != root; prefix = prefix.parent) {
+          baseCounts[prefix.local] += node.count;
+        }
+      }
+      int[] conditionalLocal = new int[local];
+      int size = 0;
+      for (int i = 0; i < local; i++) {
+        conditionalLocal[i] = baseCounts[i] >= minSupportCount ? size++ : -1;
+      }
+      if (size == 0) {
+        return null;
+      }
+      int[] conditionalRanks = new int[size];
+      for (int i = 0; i < local; i++) {
+        if (conditionalLocal[i] != -1) {
+          conditionalRanks[conditionalLocal[i]] = ranks[i];
+        }
+      }
+
+      FPTree conditionalTree = new FPTree(conditionalRanks);
+      int[] path = new int[size];
+      for (Node node = heads[local]; node != null; node = node.nextSameItem) {
+        int length = 0;
+        for (Node prefix = node.parent; prefix != root; prefix = prefix.parent) {
+          if (conditionalLocal[prefix.local] != -1) {
+            path[length++] = conditionalLocal[prefix.local];
+          }
+        }
+        if (length > 0) {
+          // The prefix path has been collected from the leaf to the root
+          for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int tmp = path[i];
+            path[i] = path[j];
+            path[j] = tmp;
+          }
+          conditionalTree.insert(path, length, node.count);
+        }
+      }
+      return conditionalTree;
+    }
+  }
+
+}
@@ -0,0 +1,131 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.AssociationRulesUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.*;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
+
+/**
+ * Generates the rules using FP-Growth (see {@link FPGrowth}). Every (attribute, value) pair is encoded as an int
+ * item, and every instance as a transaction with the items of its non-missing values. The rules with one consequence
+ * are generated from the frequent itemsets directly as EsRule objects (see {@link ItemsetRules}).
+ * <p>
+ * Mining is constrained to the rules that are indexed: only items of attributes with value recommendations enabled
+ * (see AssociationRulesUtils.isConsequenceEnabled) are used as consequence. Rules that do not meet the metric
+ * threshold or that exceed the maximum number of rules are discarded before being built, so memory only depends on
+ * the rules returned.
+ * <p>
+ * The minimum support is the one Apriori ends with after lowering it in steps (see
+ * AssociationRulesUtils.getAprioriMinSupport), not its lower bound, and the metric threshold is the same one, so both
+ * miners generate the same rules. They differ when there are too many of them: Apriori stops lowering the support
+ * once it has found the maximum number of rules, while FP-Growth keeps the rules with the highest confidence, and
+ * only increases the support (by the same delta) when the frequent itemsets exceed FP_GROWTH_MAX_NUM_ITEMSETS.
+ */
+public class FPGrowthRulesMiner implements RulesMiner {
+
+  private static final Logger logger = LoggerFactory.getLogger(FPGrowthRulesMiner.class);
+
+  @Override
+  public List<EsRule> mineRules(Instances data, String templateId) throws Exception {
+    logger.info("Running FP-Growth...");
+    long startTime = System.currentTimeMillis();
+    int numInstances = data.numInstances();
+    double support = AssociationRulesUtils.getAprioriMinSupport(numInstances);
+    int minSupportCount = AssociationRulesUtils.getSupportCount(support, numInstances);
+    logger.info("Min. support: " + support + " (" + minSupportCount + " instances)");
+
+    // 1. Encode the items. Item id = attribute offset + value index
+    int[] attributeOffsets = new int[data.numAttributes()];
+    int numItems = 0;
+    for (int a = 0; a < data.numAttributes(); a++) {
+      attributeOffsets[a] = numItems;
+      numItems += data.attribute(a).numValues();
+    }
+    int[] itemAttributes = new int[numItems];
+    boolean[] itemConsequenceEnabled = new boolean[numItems];
+    for (int a = 0; a < data.numAttributes(); a++) {
+      Arrays.fill(itemAttributes, attributeOffsets[a], attributeOffsets[a] + data.attribute(a).numValues(), a);
+      Arrays.fill(itemConsequenceEnabled, attributeOffsets[a], attributeOffsets[a] + data.attribute(a).numValues(),
+          AssociationRulesUtils.isConsequenceEnabled(data.attribute(a)));
+    }
+
+    // 2. Build the transactions
+    List<int[]> transactions = new ArrayList<>(numInstances);
+    int[] buffer = new int[data.numAttributes()];
+    for (int i = 0; i < numInstances; i++) {
+      Instance instance = data.instance(i);
+      int size = 0;
+      for (int a = 0; a < data.numAttributes(); a++) {
+        if (!instance.isMissing(a)) {
+          buffer[size++] = attributeOffsets[a] + (int) instance.value(a);
+        }
+      }
+      transactions.add(Arrays.copyOf(buffer, size));
+    }
+
+    // 3. Find the frequent itemsets that are needed to generate the rules. If there are too many, the support is
+    // increased by one step until they fit in memory
+    Map<Itemset, Integer> itemsetSupports;
+    while ((itemsetSupports = FPGrowth.mineItemsets(transactions, numItems, itemConsequenceEnabled, minSupportCount,
+        FP_GROWTH_MAX_NUM_ITEMSETS)) == null) {
+      support += APRIORI_DELTA;
+      minSupportCount = AssociationRulesUtils.getSupportCount(support, numInstances);
+      logger.warn("More than " + FP_GROWTH_MAX_NUM_ITEMSETS + " frequent itemsets. Increasing the min. support to " +
+          support + " (" + minSupportCount + " instances)");
+    }
+    transactions = null; // The transactions are no longer needed
+    logger.info("Number of frequent itemsets: " + itemsetSupports.size());
+
+    // 4. Generate the rules with one consequence-enabled consequence. When the maximum number of rules is reached,
+    // the rule with the lowest confidence is replaced, as Apriori keeps the rules with the highest confidence
+    EsRuleItem[] ruleItems = new EsRuleItem[numItems]; // Built only once per item
+    ItemsetRules itemsetRules = new ItemsetRules(templateId, numInstances, minSupportCount,
+        item -> itemConsequenceEnabled[item], item -> itemAttributes[item],
+        item -> getRuleItem(item, data, ruleItems, itemAttributes, attributeOffsets));
+    PriorityQueue<EsRule> rules = new PriorityQueue<>(Comparator.comparingDouble(EsRule::getConfidence));
+    long minedRulesCount = 0;
+    for (Itemset itemset : itemsetSupports.keySet()) {
+      for (int c = 0; c < itemset.size(); c++) {
+        ItemsetRules.RuleMetrics metrics = itemsetRules.getMetrics(itemset, c, itemsetSupports::get);
+        if (metrics == null) {
+          continue;
+        }
+        minedRulesCount++;
+        if (rules.size() >= FP_GROWTH_MAX_NUM_RULES) {
+          if (metrics.getConfidence() <= rules.peek().getConfidence()) {
+            continue;
+          }
+          rules.poll();
+        }
+        rules.add(itemsetRules.buildRule(itemset, c, metrics));
+      }
+    }
+
+    // Rank the rules by confidence, as Apriori does
+    List<EsRule> rankedRules = new ArrayList<>(rules);
+    rankedRules.sort((r1, r2) -> Double.compare(r2.getConfidence(), r1.getConfidence()));
+    logger.info("Number of rules generated: " + minedRulesCount + " (kept: " + rankedRules.size() + ")");
+    logger.info("FP-Growth execution time: " + (System.currentTimeMillis() - startTime) + " ms");
+    return rankedRules;
+  }
+
+  private EsRuleItem getRuleItem(int item, Instances data, EsRuleItem[] ruleItems, int[] itemAttributes,
+                                 int[] attributeOffsets) throws Exception {
+    if (ruleItems[item] == null) {
+      int attributeIndex = itemAttributes[item];
+      Attribute attribute = data.attribute(attributeIndex);
+      ruleItems[item] = AssociationRulesUtils.buildEsRuleItem(attribute.name(),
+          attribute.value(item - attributeOffsets[attributeIndex]));
+    }
+    return ruleItems[item];
+  }
+
+}
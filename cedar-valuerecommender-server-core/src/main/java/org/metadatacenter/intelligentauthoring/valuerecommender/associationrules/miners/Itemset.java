@@ -0,0 +1,71 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+import java.util.Arrays;
+
+/**
+ * Set of items, represented as their sorted int ids
+ */
+public final class Itemset {
+
+  private final int[] items;
+  private final int hash;
+
+  public Itemset(int[] items) {
+    this.items = items.clone();
+    Arrays.sort(this.items);
+    this.hash = Arrays.hashCode(this.items);
+  }
+
+  /**
+   * @return The item ids, in ascending order. The array must not be modified.
+   */
+  public int[] getItems() {
+    return items;
+  }
+
+  public int size() {
+    return items.length;
+  }
+
+  /**
+   * @return The itemset without the item at the given position
+   */
+  public Itemset without(int position) {
+    int[] subset = new int[items.length - 1];
+    for (int i = 0, j = 0; i < items.length; i++) {
+      if (i != position) {
+        subset[j++] = items[i];
+      }
+    }
+    return new Itemset(subset);
+  }
+
+  /**
+   * @param sortedItems Item ids, in ascending order
+   * @return True if all the items of the itemset are contained in sortedItems
+   */
+  public boolean isContainedIn(int[] sortedItems) {
+    int j = 0;
+    for (int item : items) {
+      while (j < sortedItems.length && sortedItems[j] < item) {
+        j++;
+      }
+      if (j == sortedItems.length || sortedItems[j] != item) {
+        return false;
+      }
+      j++;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Itemset && Arrays.equals(items, ((Itemset) o).items);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+}
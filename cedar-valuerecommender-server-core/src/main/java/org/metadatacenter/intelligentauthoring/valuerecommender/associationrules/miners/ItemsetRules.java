@@ -0,0 +1,185 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.AssociationRulesUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
+
+/**
+ * Generates the rules with one consequence from the support counts of the frequent itemsets. The metrics are
+ * computed as in Weka's Apriori, and the rules are filtered using the given minimum support count and the same metric
+ * threshold.
+ */
+public class ItemsetRules {
+
+  /**
+   * Provides the rule item of an item id
+   */
+  @FunctionalInterface
+  public interface RuleItemProvider {
+    EsRuleItem getRuleItem(int item) throws Exception;
+  }
+
+  private final String templateId;
+  private final int numTransactions;
+  private final int minSupportCount;
+  private final IntPredicate itemConsequenceEnabled;
+  private final IntUnaryOperator itemAttribute;
+  private final RuleItemProvider ruleItemProvider;
+
+  /**
+   * @param templateId             Template identifier
+   * @param numTransactions        Number of transactions used to compute the support counts
+   * @param minSupportCount        Minimum support count of the rules
+   * @param itemConsequenceEnabled Whether an item can be the consequence of a rule
+   * @param itemAttribute          Attribute index of an item. The premise items are sorted by attribute.
+   * @param ruleItemProvider       Rule item of an item
+   */
+  public ItemsetRules(String templateId, int numTransactions, int minSupportCount,
+                      IntPredicate itemConsequenceEnabled, IntUnaryOperator itemAttribute,
+                      RuleItemProvider ruleItemProvider) {
+    this.templateId = templateId;
+    this.numTransactions = numTransactions;
+    this.minSupportCount = minSupportCount;
+    this.itemConsequenceEnabled = itemConsequenceEnabled;
+    this.itemAttribute = itemAttribute;
+    this.ruleItemProvider = ruleItemProvider;
+  }
+
+  /**
+   * Computes the metrics of the rule whose consequence is the item at the given position of the itemset
+   *
+   * @param itemsetSupports Support count of an itemset (null if it is not frequent)
+   * @return The metrics, or null if the rule cannot be generated or does not meet the thresholds
+   */
+  public RuleMetrics getMetrics(Itemset itemset, int consequencePosition,
+                                Function<Itemset, Integer> itemsetSupports) {
+    int consequenceItem = itemset.getItems()[consequencePosition];
+    if (itemset.size() < 2 || !itemConsequenceEnabled.test(consequenceItem)) {
+      return null;
+    }
+    Integer support = itemsetSupports.apply(itemset);
+    if (support == null || support < minSupportCount) {
+      return null;
+    }
+    Integer premiseSupport = itemsetSupports.apply(itemset.without(consequencePosition));
+    Integer consequenceSupport = itemsetSupports.apply(new Itemset(new int[]{consequenceItem}));
+    if (premiseSupport == null || consequenceSupport == null) {
+      return null;
+    }
+
+    double confidence = support / (double) premiseSupport;
+    double lift = confidence / (consequenceSupport / (double) numTransactions);
+    double leverage = support / (double) numTransactions -
+        (premiseSupport / (double) numTransactions) * (consequenceSupport / (double) numTransactions);
+    double conviction = AssociationRulesUtils.toFiniteConviction(
+        (1 - consequenceSupport / (double) numTransactions) / (1 - confidence));
+    if (!meetsMinMetric(confidence, lift, leverage, conviction)) {
+      return null;
+    }
+    return new RuleMetrics(support, confidence, lift, leverage, conviction);
+  }
+
+  /**
+   * Builds the rule whose consequence is the item at the given position of the itemset
+   */
+  public EsRule buildRule(Itemset itemset, int consequencePosition, RuleMetrics metrics) throws Exception {
+    int[] items = itemset.getItems();
+    List<Integer> premiseItems = new ArrayList<>();
+    for (int i = 0; i < items.length; i++) {
+      if (i != consequencePosition) {
+        premiseItems.add(items[i]);
+      }
+    }
+    premiseItems.sort((i1, i2) -> itemAttribute.applyAsInt(i1) != itemAttribute.applyAsInt(i2) ?
+        Integer.compare(itemAttribute.applyAsInt(i1), itemAttribute.applyAsInt(i2)) : Integer.compare(i1, i2));
+
+    List<EsRuleItem> esPremise = new ArrayList<>();
+    for (int item : premiseItems) {
+      esPremise.add(ruleItemProvider.getRuleItem(item));
+    }
+    List<EsRuleItem> esConsequence = new ArrayList<>();
+    esConsequence.add(ruleItemProvider.getRuleItem(items[consequencePosition]));
+    return new EsRule(templateId, esPremise, esConsequence, metrics.getSupport(), metrics.getConfidence(),
+        metrics.getLift(), metrics.getLeverage(), metrics.getConviction(), esPremise.size(), esConsequence.size());
+  }
+
+  /**
+   * Generates all the rules
+   *
+   * @param itemsetSupports Support counts of the frequent itemsets
+   */
+  public List<EsRule> generateRules(Map<Itemset, Integer> itemsetSupports) throws Exception {
+    List<EsRule> rules = new ArrayList<>();
+    for (Itemset itemset : itemsetSupports.keySet()) {
+      for (int c = 0; c < itemset.size(); c++) {
+        RuleMetrics metrics = getMetrics(itemset, c, itemsetSupports::get);
+        if (metrics != null) {
+          rules.add(buildRule(itemset, c, metrics));
+        }
+      }
+    }
+    return rules;
+  }
+
+  private boolean meetsMinMetric(double confidence, double lift, double leverage, double conviction) {
+    // 0 = confidence | 1 = lift | 2 = leverage | 3 = Conviction
+    if (METRIC_TYPE_ID == 0) {
+      return confidence >= MIN_CONFIDENCE;
+    } else if (METRIC_TYPE_ID == 1) {
+      return lift >= MIN_LIFT;
+    } else if (METRIC_TYPE_ID == 2) {
+      return leverage >= MIN_LEVERAGE;
+    } else {
+      return conviction >= MIN_CONVICTION;
+    }
+  }
+
+  /**
+   * Metrics of a rule
+   */
+  public static class RuleMetrics {
+    private final int support;
+    private final double confidence;
+    private final double lift;
+    private final double leverage;
+    private final double conviction;
+
+    private RuleMetrics(int support, double confidence, double lift, double leverage, double conviction) {
+      this.support = support;
+      this.confidence = confidence;
+      this.lift = lift;
+      this.leverage = leverage;
+      this.conviction = conviction;
+    }
+
+    public int getSupport() {
+      return support;
+    }
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public double getLift() {
+      return lift;
+    }
+
+    public double getLeverage() {
+      return leverage;
+    }
+
+    public double getConviction() {
+      return conviction;
+    }
+  }
+
+}
@@ -0,0 +1,23 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import weka.core.Instances;
+
+import java.util.List;
+
+/**
+ * Association rules mining algorithm
+ */
+public interface RulesMiner {
+
+  /**
+   * Generates the association rules of a template
+   *
+   * @param data       Template instances, with nominal attributes
+   * @param templateId Template identifier
+   * @return Rules with one consequence, whose attribute can be used as consequence (see
+   * AssociationRulesUtils.isConsequenceEnabled)
+   */
+  List<EsRule> mineRules(Instances data, String templateId) throws Exception;
+
+}
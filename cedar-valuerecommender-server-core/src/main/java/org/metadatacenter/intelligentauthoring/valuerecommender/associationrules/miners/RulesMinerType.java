@@ -0,0 +1,37 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+/**
+ * Available association rules mining algorithms
+ */
+public enum RulesMinerType {
+
+  APRIORI("apriori"),
+  FP_GROWTH("fpgrowth");
+
+  private final String value;
+
+  RulesMinerType(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  public RulesMiner createMiner() {
+    if (this == FP_GROWTH) {
+      return new FPGrowthRulesMiner();
+    }
+    return new AprioriRulesMiner();
+  }
+
+  public static RulesMinerType fromValue(String value) {
+    for (RulesMinerType type : values()) {
+      if (type.value.equalsIgnoreCase(value)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("Unknown rules miner: " + value);
+  }
+
+}
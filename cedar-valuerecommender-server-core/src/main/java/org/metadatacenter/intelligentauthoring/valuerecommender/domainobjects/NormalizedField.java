@@ -0,0 +1,93 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.mappings.MappingsService;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarFieldUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarTextUtils;
+import org.metadatacenter.intelligentauthoring.valuerecommender.util.CedarUtils;
+
+/**
+ * A field of a recommendation request, normalized only once when the request is received. It contains everything
+ * needed to match the field against the rules: the normalized path and value, whether the value is a term URI, and
+ * the mappings classes of the path and the value. It is immutable.
+ */
+public final class NormalizedField {
+
+  private final String fieldPath;
+  private final String normalizedPath;
+  private final String normalizedValue;
+  private final boolean uriValue;
+  private final String pathClass;
+  private final String valueClass;
+
+  private NormalizedField(String fieldPath, String normalizedPath, String normalizedValue, boolean uriValue,
+                          String pathClass, String valueClass) {
+    this.fieldPath = fieldPath;
+    this.normalizedPath = normalizedPath;
+    this.normalizedValue = normalizedValue;
+    this.uriValue = uriValue;
+    this.pathClass = pathClass;
+    this.valueClass = valueClass;
+  }
+
+  /**
+   * Normalizes a populated field
+   *
+   * @param useMappings If false, the mappings classes are the normalized path and value themselves
+   */
+  public static NormalizedField populatedField(Field field, boolean useMappings) {
+    String normalizedPath = CedarTextUtils.normalizePath(field.getFieldPath());
+    String normalizedValue = CedarFieldUtils.normalizeFieldValue(field);
+    return new NormalizedField(field.getFieldPath(), normalizedPath, normalizedValue,
+        CedarUtils.isUri(normalizedValue), getClass(normalizedPath, useMappings),
+        getClass(normalizedValue, useMappings));
+  }
+
+  /**
+   * Normalizes a target field, which has no value
+   *
+   * @param useMappings If false, the mappings class is the normalized path itself
+   */
+  public static NormalizedField targetField(Field field, boolean useMappings) {
+    String normalizedPath = CedarTextUtils.normalizePath(field.getFieldPath());
+    return new NormalizedField(field.getFieldPath(), normalizedPath, null, false,
+        getClass(normalizedPath, useMappings), null);
+  }
+
+  private static String getClass(String normalizedString, boolean useMappings) {
+    return useMappings ? MappingsService.getCanonicalUri(normalizedString) : normalizedString;
+  }
+
+  /**
+   * @return The field path, as it was received
+   */
+  public String getFieldPath() {
+    return fieldPath;
+  }
+
+  public String getNormalizedPath() {
+    return normalizedPath;
+  }
+
+  /**
+   * @return The normalized value, or null for target fields
+   */
+  public String getNormalizedValue() {
+    return normalizedValue;
+  }
+
+  public boolean isUriValue() {
+    return uriValue;
+  }
+
+  public String getPathClass() {
+    return pathClass;
+  }
+
+  /**
+   * @return The mappings class of the value, or null for target fields
+   */
+  public String getValueClass() {
+    return valueClass;
+  }
+
+}
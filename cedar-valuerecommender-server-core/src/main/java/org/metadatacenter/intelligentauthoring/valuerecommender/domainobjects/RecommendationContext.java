@@ -0,0 +1,106 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects;
+
+import java.util.*;
+
+/**
+ * The populated fields of a recommendation request (i.e., the context C), normalized once when the request is
+ * received and shared by the cache, the query building and the scoring of the rules. It is immutable.
+ */
+public final class RecommendationContext {
+
+  private static final char SEPARATOR = '\u001f';
+
+  private final List<NormalizedField> populatedFields;
+  private final boolean useMappings;
+  private final List<String> normalizedPaths;
+  private final List<String> normalizedValues;
+  private final List<String> sortedItems;
+  private final Map<String, Map<String, Integer>> classCounts; // path class -> value class -> number of fields
+
+  private RecommendationContext(List<NormalizedField> populatedFields, boolean useMappings) {
+    this.populatedFields = Collections.unmodifiableList(populatedFields);
+    this.useMappings = useMappings;
+    List<String> paths = new ArrayList<>(populatedFields.size());
+    List<String> values = new ArrayList<>(populatedFields.size());
+    List<String> items = new ArrayList<>(populatedFields.size());
+    Map<String, Map<String, Integer>> counts = new HashMap<>();
+    for (NormalizedField field : populatedFields) {
+      paths.add(field.getNormalizedPath());
+      values.add(field.getNormalizedValue());
+      items.add(field.getNormalizedPath() + SEPARATOR + field.getNormalizedValue());
+      counts.computeIfAbsent(field.getPathClass(), c -> new HashMap<>()).merge(field.getValueClass(), 1,
+          Integer::sum);
+    }
+    Collections.sort(items);
+    this.normalizedPaths = Collections.unmodifiableList(paths);
+    this.normalizedValues = Collections.unmodifiableList(values);
+    this.sortedItems = Collections.unmodifiableList(items);
+    this.classCounts = counts;
+  }
+
+  /**
+   * @param populatedFields Populated fields of the request
+   * @param useMappings     If true, the mappings classes of the fields are resolved as well
+   */
+  public static RecommendationContext of(List<Field> populatedFields, boolean useMappings) {
+    List<NormalizedField> normalizedFields = new ArrayList<>(populatedFields.size());
+    for (Field field : populatedFields) {
+      normalizedFields.add(NormalizedField.populatedField(field, useMappings));
+    }
+    return new RecommendationContext(normalizedFields, useMappings);
+  }
+
+  public List<NormalizedField> getPopulatedFields() {
+    return populatedFields;
+  }
+
+  /**
+   * @return |C|, i.e., number of populated fields
+   */
+  public int size() {
+    return populatedFields.size();
+  }
+
+  public boolean isEmpty() {
+    return populatedFields.isEmpty();
+  }
+
+  public boolean isUseMappings() {
+    return useMappings;
+  }
+
+  /**
+   * @return The normalized paths of the populated fields (same order as the populated fields)
+   */
+  public List<String> getNormalizedPaths() {
+    return normalizedPaths;
+  }
+
+  /**
+   * @return The normalized values of the populated fields (same order as the populated fields)
+   */
+  public List<String> getNormalizedValues() {
+    return normalizedValues;
+  }
+
+  /**
+   * @return The (normalized path, normalized value) items of the populated fields, sorted, so that requests that only
+   * differ in the order of the fields have the same items
+   */
+  public List<String> getSortedItems() {
+    return sortedItems;
+  }
+
+  /**
+   * @return The number of populated fields with the given path and value mappings classes
+   */
+  public int countFields(String pathClass, String valueClass) {
+    Map<String, Integer> valueClassCounts = classCounts.get(pathClass);
+    if (valueClassCounts == null) {
+      return 0;
+    }
+    Integer count = valueClassCounts.get(valueClass);
+    return count != null ? count : 0;
+  }
+
+}
@@ -2,11 +2,22 @@ package org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import java.util.Comparator;
 import java.util.Objects;
 
 public class RecommendedValue implements Comparable<RecommendedValue> {
 
   public enum RecommendationType {CONTEXT_INDEPENDENT, CONTEXT_DEPENDENT};
+
+  /**
+   * Best values first: highest recommendation score, then highest rule support (only known with the details), and
+   * then value label. It is a total order, so the ranking does not depend on the order in which the values are found.
+   */
+  public static final Comparator<RecommendedValue> RANKING =
+      Comparator.comparing(RecommendedValue::getRecommendationScore, Comparator.reverseOrder())
+          .thenComparing(RecommendedValue::getRuleSupport, Comparator.reverseOrder())
+          .thenComparing(RecommendedValue::getValueLabel, Comparator.nullsLast(Comparator.naturalOrder()));
+
   private final String valueLabel;
   private final String valueType;
   private final Double recommendationScore;
@@ -56,15 +67,21 @@ public class RecommendedValue implements Comparable<RecommendedValue> {
     return Objects.equals(getValueLabel(), value.getValueLabel());
   }
 
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getValueLabel());
+  }
+
+  /**
+   * Compares the values by {@link #RANKING}, so the best values come first
+   */
   @Override
   public int compareTo(RecommendedValue value) {
-    Double value1 = value.getRecommendationScore();
-    Double value2 = getRecommendationScore();
-    if (Math.abs(value1 - value2) >= 0.001) {
-      return Double.compare(value1, value2);
-    } else { // If the recommendation scores are close enough, return the value with higher support
-      return Double.compare(value.getDetails().ruleSupport(), getDetails().ruleSupport());
-    }
+    return RANKING.compare(this, value);
+  }
+
+  private static Double getRuleSupport(RecommendedValue value) {
+    return value.getDetails() != null ? value.getDetails().ruleSupport() : 0.0;
   }
 
 }
@@ -0,0 +1,88 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch;
+
+/**
+ * Statistics of a bulk indexing run (see {@link RulesBulkIndexer})
+ */
+public class BulkIndexingStats {
+
+  private long succeededDocs;
+  private long failedDocs;
+  private long retriedDocs;
+  private long rejectedBulks; // Bulk requests with 429 (too many requests) responses
+  private long bulkRequests;
+  private long bytes;
+  private long elapsedMs;
+
+  void addSucceeded(long bytes) {
+    this.succeededDocs++;
+    this.bytes += bytes;
+  }
+
+  void addFailed() {
+    failedDocs++;
+  }
+
+  void addRetried() {
+    retriedDocs++;
+  }
+
+  void addRejectedBulk() {
+    rejectedBulks++;
+  }
+
+  void addBulkRequest() {
+    bulkRequests++;
+  }
+
+  void setElapsedMs(long elapsedMs) {
+    this.elapsedMs = elapsedMs;
+  }
+
+  public long getSucceededDocs() {
+    return succeededDocs;
+  }
+
+  public long getFailedDocs() {
+    return failedDocs;
+  }
+
+  public long getRetriedDocs() {
+    return retriedDocs;
+  }
+
+  public long getRejectedBulks() {
+    return rejectedBulks;
+  }
+
+  public long getBulkRequests() {
+    return bulkRequests;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getElapsedMs() {
+    return elapsedMs;
+  }
+
+  public boolean hasFailures() {
+    return failedDocs > 0;
+  }
+
+  public double getDocsPerSecond() {
+    return elapsedMs > 0 ? succeededDocs * 1000.0 / elapsedMs : 0;
+  }
+
+  public double getBytesPerSecond() {
+    return elapsedMs > 0 ? bytes * 1000.0 / elapsedMs : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "Docs: " + succeededDocs + " (failed: " + failedDocs + ", retried: " + retriedDocs + "). Bulk requests: " +
+        bulkRequests + " (rejected: " + rejectedBulks + "). Bytes: " + bytes + ". Time: " + elapsedMs + " ms (" +
+        Math.round(getDocsPerSecond()) + " docs/s, " + Math.round(getBytesPerSecond() / 1024) + " KB/s)";
+  }
+
+}
@@ -1,13 +1,19 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.collect.Iterators;
 import org.apache.http.HttpHost;
 import org.metadatacenter.config.OpensearchConfig;
 import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
-import org.opensearch.action.bulk.BackoffPolicy;
-import org.opensearch.action.bulk.BulkProcessor;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleIds;
+import org.opensearch.action.DocWriteRequest;
 import org.opensearch.action.bulk.BulkRequest;
 import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.delete.DeleteRequest;
 import org.opensearch.action.index.IndexRequest;
 import org.opensearch.action.search.ClearScrollRequest;
 import org.opensearch.action.search.SearchRequest;
@@ -17,10 +23,11 @@ import org.opensearch.client.RequestOptions;
 import org.opensearch.client.RestClient;
 import org.opensearch.client.RestClientBuilder;
 import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.client.core.CountRequest;
 import org.opensearch.common.settings.Settings;
 import org.opensearch.common.unit.TimeValue;
-import org.opensearch.core.common.unit.ByteSizeUnit;
-import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.action.ActionListener;
 import org.opensearch.index.query.QueryBuilder;
 import org.opensearch.index.query.QueryBuilders;
 import org.opensearch.index.reindex.BulkByScrollResponse;
@@ -32,20 +39,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
+import java.util.function.LongConsumer;
 
 import static org.metadatacenter.constant.ElasticsearchConstants.DOCUMENT_CEDAR_ID;
 import static org.metadatacenter.constant.ElasticsearchConstants.INFO_IS_BASED_ON;
-import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.INDEX_TEMPLATE_ID;
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
 
 public class ElasticsearchQueryService {
 
+  private static final ObjectWriter RULE_WRITER = new ObjectMapper().writerFor(EsRule.class);
+  // Rules may be read from partial documents (see INDEX_RULE_RANKING_FIELDS)
+  private static final ObjectReader RULE_READER = new ObjectMapper()
+      .readerFor(EsRule.class)
+      .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
   private OpensearchConfig opensearchConfig;
   private RestHighLevelClient client = null;
+  private RulesBulkIndexer bulkIndexer;
   private TimeValue scrollTimeout;
   private int scrollLimit = 5000;
 
@@ -61,107 +77,126 @@ public class ElasticsearchQueryService {
     RestClientBuilder builder = RestClient.builder(
         new HttpHost(esc.getHost(), esc.getRestPort(), "http"));
     client = new RestHighLevelClient(builder);
+    bulkIndexer = new RulesBulkIndexer(client, BULK_INITIAL_BATCH_BYTES, BULK_MIN_BATCH_BYTES, BULK_MAX_BATCH_BYTES,
+        BULK_MAX_BATCH_ACTIONS, BULK_MAX_CONCURRENT_REQUESTS, BULK_TARGET_LATENCY_MS, BULK_MAX_RETRIES,
+        BULK_RETRY_BACKOFF_MS);
   }
 
   public RestHighLevelClient getClient() {
     return client;
   }
 
-  // It uses the scroll API to retrieve all results
-  // More info: https://www.elastic.co/guide/en/elasticsearch/reference/current/search-request-scroll.html
-  // https://www.elastic.co/guide/en/elasticsearch/client/java-api/current/java-search-scrolling.html
-  public List<String> getTemplateInstancesIdsByTemplateId(String templateId) {
-    List<String> templateInstancesIds = new ArrayList<>();
-
-    QueryBuilder templateIdQuery = QueryBuilders.termQuery(INFO_IS_BASED_ON, templateId);
+  /**
+   * Streams the ids of the instances of a template. The ids are retrieved page by page as they are consumed (see
+   * SearchIdsIterator), so the instances of the first pages can be processed before all the ids are known. The
+   * iterator must be closed if it is not fully consumed.
+   *
+   * @param templateId
+   * @return An iterator over the template instance ids
+   */
+  public SearchIdsIterator streamTemplateInstancesIds(String templateId) {
+    return streamSearchIndexIds(QueryBuilders.termQuery(INFO_IS_BASED_ON, templateId));
+  }
 
-    SearchRequest searchRequest = new SearchRequest(opensearchConfig.getIndexes().getSearchIndex().getName());
-    SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-    searchSourceBuilder.query(templateIdQuery);
-    searchSourceBuilder.size(scrollLimit);
-    searchRequest.source(searchSourceBuilder);
-    searchRequest.scroll(scrollTimeout);
+  /**
+   * Streams the ids of all the templates in the system. The iterator must be closed if it is not fully consumed.
+   */
+  public SearchIdsIterator streamTemplateIds() {
+    return streamSearchIndexIds(QueryBuilders.termQuery("info.resourceType", "template"));
+  }
 
+  /**
+   * Counts the instances of a template with a count query, without retrieving their ids
+   *
+   * @param templateId
+   * @return The number of instances of the template, or 0 if they could not be counted
+   */
+  public long countTemplateInstances(String templateId) {
+    CountRequest countRequest = new CountRequest(opensearchConfig.getIndexes().getSearchIndex().getName())
+        .query(QueryBuilders.termQuery(INFO_IS_BASED_ON, templateId));
     try {
-      SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+      return client.count(countRequest, RequestOptions.DEFAULT).getCount();
+    } catch (IOException e) {
+      logger.error("Error executing count request", e);
+      return 0;
+    }
+  }
 
-      while (searchResponse.getHits().getHits().length != 0) {
-        for (SearchHit hit : searchResponse.getHits().getHits()) {
-          templateInstancesIds.add(hit.getSourceAsMap().get(DOCUMENT_CEDAR_ID).toString());
-        }
+  public List<String> getTemplateInstancesIdsByTemplateId(String templateId) {
+    return collectIds(streamTemplateInstancesIds(templateId));
+  }
 
-        SearchScrollRequest scrollRequest = new SearchScrollRequest(searchResponse.getScrollId());
-        scrollRequest.scroll(scrollTimeout);
-        searchResponse = client.scroll(scrollRequest, RequestOptions.DEFAULT);
-      }
+  public List<String> getTemplateIds() {
+    return collectIds(streamTemplateIds());
+  }
 
-      // Clear scroll context
-      ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
-      clearScrollRequest.addScrollId(searchResponse.getScrollId());
-      client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+  private SearchIdsIterator streamSearchIndexIds(QueryBuilder query) {
+    return new SearchIdsIterator(client, opensearchConfig.getIndexes().getSearchIndex().getName(), query,
+        DOCUMENT_CEDAR_ID, scrollLimit, scrollTimeout);
+  }
 
-    } catch (IOException e) {
+  private List<String> collectIds(SearchIdsIterator ids) {
+    List<String> result = new ArrayList<>();
+    try (ids) {
+      ids.forEachRemaining(result::add);
+    } catch (UncheckedIOException e) {
       // Handle the exception as needed
-      e.printStackTrace();
+      logger.error("Error retrieving ids from the search index", e);
     }
-
-    return templateInstancesIds;
+    return result;
   }
 
-  public List<String> getTemplateIds() {
-    List<String> templateIds = new ArrayList<>();
-
-    QueryBuilder templateIdsQuery = QueryBuilders.termQuery("info.resourceType", "template");
+  /**
+   * Retrieves all the rules of a given template from the rules index. It uses the scroll API, so it should only be
+   * used for templates whose rules fit in memory.
+   *
+   * @param templateId
+   * @param generation Generation of the rules. If empty, the rules of all generations are retrieved.
+   * @return The rules of the template
+   * @throws IOException If the rules could not be retrieved. No partial results are returned.
+   */
+  public List<EsRule> getRulesByTemplateId(String templateId, Optional<Long> generation) throws IOException {
+    List<EsRule> rules = new ArrayList<>();
 
-    SearchRequest searchRequest = new SearchRequest(opensearchConfig.getIndexes().getSearchIndex().getName());
+    SearchRequest searchRequest = new SearchRequest(opensearchConfig.getIndexes().getRulesIndex().getName());
     SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-    searchSourceBuilder.query(templateIdsQuery);
+    searchSourceBuilder.query(templateRulesQuery(templateId, generation));
     searchSourceBuilder.size(scrollLimit);
     searchRequest.source(searchSourceBuilder);
     searchRequest.scroll(scrollTimeout);
 
-    try {
-      SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+    SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
 
-      while (searchResponse.getHits().getHits().length != 0) {
-        for (SearchHit hit : searchResponse.getHits().getHits()) {
-          templateIds.add(hit.getSourceAsMap().get(DOCUMENT_CEDAR_ID).toString());
-        }
-
-        SearchScrollRequest scrollRequest = new SearchScrollRequest(searchResponse.getScrollId());
-        scrollRequest.scroll(scrollTimeout);
-        searchResponse = client.scroll(scrollRequest, RequestOptions.DEFAULT);
+    while (searchResponse.getHits().getHits().length != 0) {
+      for (SearchHit hit : searchResponse.getHits().getHits()) {
+        rules.add(readRule(hit));
       }
 
-      // Clear scroll context
-      ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
-      clearScrollRequest.addScrollId(searchResponse.getScrollId());
-      client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
-
-    } catch (IOException e) {
-      // Handle the exception as needed
-      e.printStackTrace();
+      SearchScrollRequest scrollRequest = new SearchScrollRequest(searchResponse.getScrollId());
+      scrollRequest.scroll(scrollTimeout);
+      searchResponse = client.scroll(scrollRequest, RequestOptions.DEFAULT);
     }
-    return templateIds;
+
+    // Clear scroll context
+    ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+    clearScrollRequest.addScrollId(searchResponse.getScrollId());
+    client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+
+    return rules;
   }
 
   /**
    * Index all rules in a single API call. This method fails when trying to index a large number of rules (> 50,000)
-   * because it's sending all of them in a single request. For better performance use the "indexRulesBulkProcessor"
-   * method.
+   * because it's sending all of them in a single request. For better performance use the "indexRules" method.
    *
    * @param rules
    */
   public void indexRulesBulk(List<EsRule> rules) {
     if (rules.size() > 0) {
       BulkRequest bulkRequest = new BulkRequest();
-      ObjectMapper mapper = new ObjectMapper();
 
       for (EsRule rule : rules) {
-        Map<String, Object> ruleMap = mapper.convertValue(rule, Map.class);
-        IndexRequest indexRequest = new IndexRequest(opensearchConfig.getIndexes().getRulesIndex().getName())
-            .source(ruleMap);
-        bulkRequest.add(indexRequest);
+        bulkRequest.add(buildIndexRequest(rule));
       }
 
       try {
@@ -180,54 +215,70 @@ public class ElasticsearchQueryService {
   }
 
   /**
-   * Index all rules using Bulk Processor
-   * Documentation: https://www.elastic.co/guide/en/elasticsearch/client/java-api/current/java-docs-bulk-processor.html
+   * Index all rules using the adaptive bulk indexer (see RulesBulkIndexer). The rules are serialized as they are
+   * sent, so only the batches in flight are kept in memory as JSON.
    *
    * @param rules
+   * @param indexedListener Receives the number of rules indexed after each bulk response
+   * @return The statistics of the indexing. All the rules have been indexed if it has no failures.
    */
-  public void indexRulesBulkProcessor(List<EsRule> rules) {
-    ObjectMapper mapper = new ObjectMapper();
-
-    // Create bulk processor
-    BulkProcessor bulkProcessor = BulkProcessor.builder(
-            (request, bulkListener) -> client.bulkAsync(request, RequestOptions.DEFAULT, bulkListener),
-            new BulkProcessor.Listener() {
-              @Override
-              public void beforeBulk(long executionId, BulkRequest request) {
-                logger.info("Before bulk. Number of rules indexed: " + request.numberOfActions());
-              }
-
-              @Override
-              public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
-                logger.info("After bulk. Any failures? " + response.hasFailures());
-                if (response.hasFailures()) {
-                  logger.error(response.buildFailureMessage());
-                }
-              }
-
-              @Override
-              public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
-                logger.error("Bulk failed. Message: " + failure.getMessage(), failure);
-              }
-            })
-        .setBulkActions(10000)
-        .setBulkSize(new ByteSizeValue(5, ByteSizeUnit.MB))
-        .setFlushInterval(TimeValue.timeValueSeconds(5))
-        .setConcurrentRequests(1)
-        .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(500), 3))
-        .build();
-
-    for (EsRule rule : rules) {
-      Map<String, Object> ruleMap = mapper.convertValue(rule, Map.class);
-      IndexRequest indexRequest = new IndexRequest(opensearchConfig.getIndexes().getRulesIndex().getName())
-          .source(ruleMap);
-      bulkProcessor.add(indexRequest);
-    }
+  public BulkIndexingStats indexRules(List<EsRule> rules, LongConsumer indexedListener) {
+    return bulkIndexer.run(Iterators.transform(rules.iterator(), this::buildIndexRequest), indexedListener);
+  }
+
+  /**
+   * Updates some of the rules of a template using the adaptive bulk indexer. Rules are identified by their items and
+   * generation (see EsRuleIds), so the upserted rules replace the indexed rules with the same items.
+   *
+   * @param upsertedRules   Rules that are new or whose metrics have changed
+   * @param deletedRules    Rules that have to be removed
+   * @param indexedListener Receives the number of rules upserted or removed after each bulk response
+   * @return The statistics of the update. All the rules have been updated if it has no failures.
+   */
+  public BulkIndexingStats updateRules(List<EsRule> upsertedRules, List<EsRule> deletedRules,
+                                       LongConsumer indexedListener) {
+    Iterator<DocWriteRequest<?>> upserts = Iterators.transform(upsertedRules.iterator(), this::buildIndexRequest);
+    Iterator<DocWriteRequest<?>> deletes = Iterators.transform(deletedRules.iterator(),
+        rule -> new DeleteRequest(opensearchConfig.getIndexes().getRulesIndex().getName(), EsRuleIds.getRuleId(rule)));
+    return bulkIndexer.run(Iterators.concat(upserts, deletes), indexedListener);
+  }
+
+  /**
+   * Removes the rules of a template from the generations before the given one (and the rules without generation).
+   * The rules are removed in the background, as they are no longer used.
+   *
+   * @param templateId
+   * @param generation Active generation of the template rules
+   */
+  public void removeRulesBeforeGeneration(String templateId, long generation) {
+    DeleteByQueryRequest request = new DeleteByQueryRequest(opensearchConfig.getIndexes().getRulesIndex().getName());
+    // Later generations are not removed, as they may be being indexed
+    request.setQuery(QueryBuilders.boolQuery()
+        .must(QueryBuilders.termQuery(INDEX_TEMPLATE_ID, templateId))
+        .mustNot(QueryBuilders.rangeQuery(INDEX_RULE_GENERATION).gte(generation)));
+    request.setScroll(TimeValue.timeValueMinutes(2));
+    client.deleteByQueryAsync(request, RequestOptions.DEFAULT, new ActionListener<BulkByScrollResponse>() {
+      @Override
+      public void onResponse(BulkByScrollResponse response) {
+        logger.info("Rules of previous generations removed for templateId: " + templateId + ". No. rules removed: " +
+            response.getDeleted());
+      }
+
+      @Override
+      public void onFailure(Exception e) {
+        logger.error("Error removing the rules of previous generations for templateId: " + templateId, e);
+      }
+    });
+  }
 
+  private DocWriteRequest<?> buildIndexRequest(EsRule rule) {
     try {
-      bulkProcessor.awaitClose(10, TimeUnit.MINUTES);
-    } catch (InterruptedException e) {
-      logger.error("Error closing bulk processor", e);
+      // The rule is serialized directly to JSON bytes, without an intermediate map
+      return new IndexRequest(opensearchConfig.getIndexes().getRulesIndex().getName())
+          .id(EsRuleIds.getRuleId(rule))
+          .source(RULE_WRITER.writeValueAsBytes(rule), XContentType.JSON);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
     }
   }
 
@@ -253,15 +304,16 @@ public class ElasticsearchQueryService {
    * Otherwise, it counts the total number of rules in the index.
    *
    * @param templateId
+   * @param generation Generation of the template rules. If empty, the rules of all generations are counted.
    * @return
    */
-  public long getNumberOfRules(String templateId) {
+  public long getNumberOfRules(String templateId, Optional<Long> generation) {
     try {
       SearchRequest searchRequest = new SearchRequest(opensearchConfig.getIndexes().getRulesIndex().getName());
       SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
 
       if (templateId != null && !templateId.isEmpty()) {
-        searchSourceBuilder.query(QueryBuilders.termQuery(INDEX_TEMPLATE_ID, templateId));
+        searchSourceBuilder.query(templateRulesQuery(templateId, generation));
       } else {
         searchSourceBuilder.query(QueryBuilders.matchAllQuery()); // return all rules in the index
       }
@@ -280,4 +332,25 @@ public class ElasticsearchQueryService {
     }
   }
 
+  /**
+   * Reads a rule from the source of a search hit, without building an intermediate String. The source may contain only
+   * some of the rule fields.
+   */
+  public static EsRule readRule(SearchHit hit) throws IOException {
+    return RULE_READER.readValue(hit.getSourceRef().streamInput());
+  }
+
+  /**
+   * Query that matches the rules of a template. If the generation is provided, only the rules of that generation are
+   * matched.
+   */
+  public static QueryBuilder templateRulesQuery(String templateId, Optional<Long> generation) {
+    if (!generation.isPresent()) {
+      return QueryBuilders.termQuery(INDEX_TEMPLATE_ID, templateId);
+    }
+    return QueryBuilders.boolQuery()
+        .filter(QueryBuilders.termQuery(INDEX_TEMPLATE_ID, templateId))
+        .filter(QueryBuilders.termQuery(INDEX_RULE_GENERATION, generation.get()));
+  }
+
 }
@@ -0,0 +1,286 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch;
+
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.action.DocWriteRequest;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.client.RequestOptions;
+import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Sends write requests to OpenSearch in bulk requests, adapting the size of the bulk requests and the number of
+ * concurrent requests to the cluster:
+ * <ul>
+ * <li>When a bulk request is rejected (429) or takes longer than the target latency, the batch size and the
+ * concurrency are halved.</li>
+ * <li>When it is faster than half of the target latency, the batch size grows by 25% and one more concurrent request
+ * is allowed, up to the configured maximums.</li>
+ * </ul>
+ * The caller is blocked while the maximum number of requests is in flight, so the requests are created (and
+ * serialized) only as fast as they can be indexed. Items that fail with a transient error (429, 502, 503, 504) are
+ * sent again, with exponential backoff, up to a maximum number of attempts.
+ * <p>
+ * If the caller is interrupted, the items that have not been indexed yet (including the ones of the bulk requests in
+ * flight) are counted as failed. The responses received after that are ignored.
+ */
+public class RulesBulkIndexer {
+
+  private static final Logger logger = LoggerFactory.getLogger(RulesBulkIndexer.class);
+
+  private static final long REQUEST_OVERHEAD_BYTES = 100; // Estimated size of the bulk metadata line of an item
+  private static final int MAX_LOGGED_FAILURES = 10;
+
+  private final RestHighLevelClient client;
+  private final long minBatchBytes;
+  private final long maxBatchBytes;
+  private final int maxBatchActions;
+  private final int maxConcurrentRequests;
+  private final long targetLatencyMs;
+  private final int maxRetries;
+  private final long retryBackoffMs;
+
+  // Run state, guarded by this
+  private long batchBytes;
+  private int concurrentRequests;
+  private long runId; // Identifies the current run. Responses of bulk requests sent by a previous run are ignored.
+  private int inFlight;
+  private int inFlightItems;
+  private final Deque<Item> retries = new ArrayDeque<>();
+  private BulkIndexingStats stats;
+  private LongConsumer indexedListener;
+  private int loggedFailures;
+
+  /**
+   * @param client                Client used to send the bulk requests
+   * @param initialBatchBytes     Initial size of the bulk requests, in bytes
+   * @param minBatchBytes         Minimum size of the bulk requests, in bytes
+   * @param maxBatchBytes         Maximum size of the bulk requests, in bytes
+   * @param maxBatchActions       Maximum number of items of a bulk request
+   * @param maxConcurrentRequests Maximum number of bulk requests in flight
+   * @param targetLatencyMs       Bulk requests that take longer reduce the batch size and the concurrency
+   * @param maxRetries            Maximum number of times that a failed item is sent again
+   * @param retryBackoffMs        Delay before the first retry of an item. It doubles with every retry.
+   */
+  public RulesBulkIndexer(RestHighLevelClient client, long initialBatchBytes, long minBatchBytes, long maxBatchBytes,
+                          int maxBatchActions, int maxConcurrentRequests, long targetLatencyMs, int maxRetries,
+                          long retryBackoffMs) {
+    this.client = client;
+    this.minBatchBytes = minBatchBytes;
+    this.maxBatchBytes = maxBatchBytes;
+    this.maxBatchActions = maxBatchActions;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.targetLatencyMs = targetLatencyMs;
+    this.maxRetries = maxRetries;
+    this.retryBackoffMs = retryBackoffMs;
+    this.batchBytes = Math.max(minBatchBytes, Math.min(maxBatchBytes, initialBatchBytes));
+    this.concurrentRequests = 1;
+  }
+
+  /**
+   * Sends all the requests and waits until they have been processed. The batch size and concurrency reached are
+   * kept for the next run. Runs are not concurrent: a second caller waits until the current run finishes.
+   *
+   * @param requests Write requests. They are consumed as the bulk requests are sent.
+   * @return The statistics of the run
+   */
+  public BulkIndexingStats run(Iterator<DocWriteRequest<?>> requests) {
+    return run(requests, count -> {
+    });
+  }
+
+  /**
+   * Sends all the requests and waits until they have been processed, reporting the progress of the run
+   *
+   * @param requests        Write requests. They are consumed as the bulk requests are sent.
+   * @param indexedListener Receives the number of requests that have succeeded after each bulk response. It is
+   *                        called from the client threads, so it must not block.
+   * @return The statistics of the run
+   */
+  public synchronized BulkIndexingStats run(Iterator<DocWriteRequest<?>> requests, LongConsumer indexedListener) {
+    runId++;
+    stats = new BulkIndexingStats();
+    this.indexedListener = indexedListener;
+    loggedFailures = 0;
+    long startTime = System.currentTimeMillis();
+    List<Item> batch = new ArrayList<>();
+    long currentBatchBytes = 0;
+    try {
+      while (requests.hasNext() || !batch.isEmpty() || inFlight > 0 || !retries.isEmpty()) {
+        // Items to be sent again are added to the batch when their backoff expires
+        long now = System.currentTimeMillis();
+        while (!retries.isEmpty() && retries.peekFirst().notBefore <= now) {
+          Item item = retries.pollFirst();
+          batch.add(item);
+          currentBatchBytes += item.bytes;
+        }
+        if (requests.hasNext() && currentBatchBytes < batchBytes && batch.size() < maxBatchActions) {
+          Item item = new Item(requests.next());
+          batch.add(item);
+          currentBatchBytes += item.bytes;
+          continue;
+        }
+        if (!batch.isEmpty()) {
+          // Back-pressure: wait for a free slot before sending the batch
+          while (inFlight >= concurrentRequests) {
+            wait();
+          }
+          send(batch);
+          batch = new ArrayList<>();
+          currentBatchBytes = 0;
+        } else if (inFlight > 0 || !retries.isEmpty()) {
+          // Wait for a response or for the next retry
+          long delay = retries.isEmpty() ? 0 : Math.max(1, retries.peekFirst().notBefore - now);
+          wait(delay);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("Bulk indexing interrupted. The remaining requests have not been sent");
+      while (requests.hasNext()) {
+        requests.next();
+        stats.addFailed();
+      }
+      // The bulk requests in flight may or may not be indexed, so their items are counted as failed as well
+      for (int i = 0; i < batch.size() + retries.size() + inFlightItems; i++) {
+        stats.addFailed();
+      }
+      retries.clear();
+      inFlight = 0;
+      inFlightItems = 0;
+      runId++;
+    }
+    stats.setElapsedMs(System.currentTimeMillis() - startTime);
+    return stats;
+  }
+
+  /**
+   * Sends a bulk request asynchronously. It must be called holding the lock.
+   */
+  private void send(List<Item> batch) {
+    BulkRequest bulkRequest = new BulkRequest();
+    for (Item item : batch) {
+      bulkRequest.add(item.request);
+    }
+    inFlight++;
+    inFlightItems += batch.size();
+    stats.addBulkRequest();
+    long batchRunId = runId;
+    long startTime = System.currentTimeMillis();
+    client.bulkAsync(bulkRequest, RequestOptions.DEFAULT, new ActionListener<BulkResponse>() {
+      @Override
+      public void onResponse(BulkResponse response) {
+        onBulkResponse(batchRunId, batch, response, System.currentTimeMillis() - startTime);
+      }
+
+      @Override
+      public void onFailure(Exception e) {
+        onBulkFailure(batchRunId, batch, e, System.currentTimeMillis() - startTime);
+      }
+    });
+  }
+
+  private synchronized void onBulkResponse(long batchRunId, List<Item> batch, BulkResponse response,
+                                           long latencyMs) {
+    if (batchRunId != runId) { // The run was interrupted and its items were counted as failed
+      return;
+    }
+    boolean rejected = false;
+    long succeeded = 0;
+    BulkItemResponse[] itemResponses = response.getItems();
+    for (int i = 0; i < batch.size(); i++) {
+      Item item = batch.get(i);
+      BulkItemResponse itemResponse = itemResponses[i];
+      if (!itemResponse.isFailed()) {
+        stats.addSucceeded(item.bytes);
+        succeeded++;
+      } else {
+        RestStatus status = itemResponse.getFailure().getStatus();
+        rejected |= status == RestStatus.TOO_MANY_REQUESTS;
+        retryOrFail(item, status, itemResponse.getFailureMessage());
+      }
+    }
+    indexedListener.accept(succeeded);
+    completeBulk(batch, latencyMs, rejected);
+  }
+
+  private synchronized void onBulkFailure(long batchRunId, List<Item> batch, Exception e, long latencyMs) {
+    if (batchRunId != runId) {
+      return;
+    }
+    // Errors without status (e.g., connection errors) are retried as well
+    RestStatus status = e instanceof OpenSearchStatusException ? ((OpenSearchStatusException) e).status() :
+        RestStatus.SERVICE_UNAVAILABLE;
+    for (Item item : batch) {
+      retryOrFail(item, status, e.getMessage());
+    }
+    completeBulk(batch, latencyMs, true);
+  }
+
+  /**
+   * Must be called holding the lock
+   */
+  private void retryOrFail(Item item, RestStatus status, String message) {
+    boolean transientError = status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.BAD_GATEWAY ||
+        status == RestStatus.SERVICE_UNAVAILABLE || status == RestStatus.GATEWAY_TIMEOUT;
+    if (transientError && item.attempts <= maxRetries) {
+      item.notBefore = System.currentTimeMillis() + (retryBackoffMs << (item.attempts - 1));
+      item.attempts++;
+      retries.addLast(item);
+      stats.addRetried();
+    } else {
+      stats.addFailed();
+      if (loggedFailures++ < MAX_LOGGED_FAILURES) {
+        logger.error("Bulk item failed. Status: " + status + ". Message: " + message);
+      }
+    }
+  }
+
+  /**
+   * Adapts the batch size and the concurrency to the latency of a bulk request. Must be called holding the lock.
+   */
+  private void completeBulk(List<Item> batch, long latencyMs, boolean rejected) {
+    inFlight--;
+    inFlightItems -= batch.size();
+    if (rejected || latencyMs > targetLatencyMs) {
+      if (rejected) {
+        stats.addRejectedBulk();
+      }
+      batchBytes = Math.max(minBatchBytes, batchBytes / 2);
+      concurrentRequests = Math.max(1, concurrentRequests / 2);
+      logger.info("Bulk indexing slowed down (latency: " + latencyMs + " ms, rejected: " + rejected +
+          "). Batch size: " + batchBytes + " bytes. Concurrent requests: " + concurrentRequests);
+    } else if (latencyMs < targetLatencyMs / 2) {
+      batchBytes = Math.min(maxBatchBytes, batchBytes + batchBytes / 4);
+      concurrentRequests = Math.min(maxConcurrentRequests, concurrentRequests + 1);
+    }
+    // Retries are kept in order of arrival, so the first one is the next one to be sent
+    notifyAll();
+  }
+
+  private static final class Item {
+    private final DocWriteRequest<?> request;
+    private final long bytes;
+    private int attempts = 1;
+    private long notBefore;
+
+    private Item(DocWriteRequest<?> request) {
+      this.request = request;
+      this.bytes = REQUEST_OVERHEAD_BYTES +
+          (request instanceof IndexRequest ? ((IndexRequest) request).source().length() : 0);
+    }
+  }
+
+}
@@ -0,0 +1,139 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch;
+
+import org.opensearch.action.search.CreatePitRequest;
+import org.opensearch.action.search.DeletePitRequest;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.client.RequestOptions;
+import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.builder.PointInTimeBuilder;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the value of an id field of the documents that match a query. The pages are retrieved on demand using a
+ * point in time and search_after, and only the id field is fetched, so the caller can start processing the ids of
+ * the first page while the rest are still in the index. The point in time is deleted when the last page has been read
+ * or when the iterator is closed. Search errors are thrown as UncheckedIOException.
+ */
+public class SearchIdsIterator implements Iterator<String>, Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(SearchIdsIterator.class);
+
+  private final RestHighLevelClient client;
+  private final String indexName;
+  private final QueryBuilder query;
+  private final String idField;
+  private final int pageSize;
+  private final TimeValue keepAlive;
+
+  private final Deque<String> pageIds = new ArrayDeque<>();
+  private String pitId;
+  private Object[] searchAfter;
+  private boolean exhausted = false;
+
+  /**
+   * @param client    OpenSearch client
+   * @param indexName Index searched
+   * @param query     Query that matches the documents
+   * @param idField   Field that contains the id. It must be unique, as it is also used to sort the documents.
+   * @param pageSize  Number of ids retrieved by each search
+   * @param keepAlive Time that the point in time is kept between two pages
+   */
+  public SearchIdsIterator(RestHighLevelClient client, String indexName, QueryBuilder query, String idField,
+                           int pageSize, TimeValue keepAlive) {
+    this.client = client;
+    this.indexName = indexName;
+    this.query = query;
+    this.idField = idField;
+    this.pageSize = pageSize;
+    this.keepAlive = keepAlive;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (pageIds.isEmpty() && !exhausted) {
+      try {
+        fetchPage();
+      } catch (IOException e) {
+        close();
+        throw new UncheckedIOException(e);
+      }
+    }
+    return !pageIds.isEmpty();
+  }
+
+  @Override
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return pageIds.poll();
+  }
+
+  private void fetchPage() throws IOException {
+    if (pitId == null) {
+      pitId = client.createPit(new CreatePitRequest(keepAlive, false, indexName), RequestOptions.DEFAULT).getId();
+    }
+    SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+        .query(query)
+        .fetchSource(idField, null)
+        .size(pageSize)
+        .sort(idField, SortOrder.ASC) // The ids are unique, so they define the position of each page
+        .pointInTimeBuilder(new PointInTimeBuilder(pitId).setKeepAlive(keepAlive));
+    if (searchAfter != null) {
+      searchSourceBuilder.searchAfter(searchAfter);
+    }
+    // Searches with a point in time are not bound to an index
+    SearchResponse searchResponse = client.search(new SearchRequest().source(searchSourceBuilder),
+        RequestOptions.DEFAULT);
+    SearchHit[] hits = searchResponse.getHits().getHits();
+    for (SearchHit hit : hits) {
+      Object id = hit.getSourceAsMap().get(idField);
+      if (id != null) {
+        pageIds.add(id.toString());
+      }
+    }
+    if (hits.length < pageSize) {
+      deletePit();
+    } else {
+      searchAfter = hits[hits.length - 1].getSortValues();
+    }
+  }
+
+  /**
+   * Deletes the point in time. No more ids are returned after closing the iterator.
+   */
+  @Override
+  public void close() {
+    pageIds.clear();
+    deletePit();
+  }
+
+  private void deletePit() {
+    exhausted = true;
+    if (pitId != null) {
+      try {
+        client.deletePit(new DeletePitRequest(pitId), RequestOptions.DEFAULT);
+      } catch (IOException e) {
+        // The point in time expires after the keep alive time anyway
+        logger.warn("Error deleting point in time: " + e.getMessage());
+      }
+      pitId = null;
+    }
+  }
+
+}
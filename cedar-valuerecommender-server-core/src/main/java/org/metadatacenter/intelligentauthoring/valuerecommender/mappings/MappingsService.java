@@ -1,52 +1,89 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender.mappings;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.metadatacenter.util.json.JsonMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.MAPPINGS_FILE_PATH;
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.MAPPINGS_STORE_FILE_PATH;
 
 
 public class MappingsService {
 
   private final static Logger logger = LoggerFactory.getLogger(MappingsService.class);
 
-  private static Map<String, List<String>> mappings;
+  private static MappingsStore mappings;
 
   static {
     try {
-      JsonNode mappingsJson = JsonMapper.MAPPER.readTree(MappingsService.class.getClassLoader().getResourceAsStream
-          (MAPPINGS_FILE_PATH));
-      if (mappingsJson != null) {
-        mappings = new ObjectMapper().convertValue(mappingsJson, Map.class);
-      } else {
-        throw new IOException("Couldn't open the mappings file");
-
-      }
+      long startTime = System.currentTimeMillis();
+      mappings = loadMappings();
+      logger.info("Mappings loaded for " + mappings.size() + " URIs (" + (System.currentTimeMillis() - startTime) +
+          " ms)");
     } catch (IOException e) {
       logger.error(e.getMessage());
       e.printStackTrace();
     }
   }
 
-  public static List<String> getMappings(String uri, boolean includeCurrentUri) {
-    List<String> result = new ArrayList<>();
-    if (includeCurrentUri) {
-      result.add(uri);
+  /**
+   * Loads the binary mappings store generated at build time. It is memory-mapped when it is a file, and read into
+   * memory when it is packaged in a jar. If it is not available, the store is built from the JSON mappings file.
+   */
+  private static MappingsStore loadMappings() throws IOException {
+    ClassLoader classLoader = MappingsService.class.getClassLoader();
+    URL binaryStore = classLoader.getResource(MAPPINGS_STORE_FILE_PATH);
+    if (binaryStore != null) {
+      if ("file".equals(binaryStore.getProtocol())) {
+        try {
+          return MappingsStore.map(Paths.get(binaryStore.toURI()));
+        } catch (URISyntaxException e) {
+          throw new IOException(e);
+        }
+      }
+      try (InputStream in = binaryStore.openStream()) {
+        return MappingsStore.read(in);
+      }
+    }
+    InputStream jsonMappings = classLoader.getResourceAsStream(MAPPINGS_FILE_PATH);
+    if (jsonMappings == null) {
+      throw new IOException("Couldn't open the mappings file");
     }
-    if (mappings.containsKey(uri)) {
-      result.addAll(mappings.get(uri));
+    try (jsonMappings) {
+      return MappingsStore.fromJson(jsonMappings);
     }
+  }
+
+  /**
+   * @return The URIs mapped to the given URI. Unless the URI is included, the list is a read-only view of the
+   * mappings store.
+   */
+  public static List<String> getMappings(String uri, boolean includeCurrentUri) {
+    List<String> uriMappings = mappings.getMappings(uri);
+    if (!includeCurrentUri) {
+      return uriMappings;
+    }
+    List<String> result = new ArrayList<>(uriMappings.size() + 1);
+    result.add(uri);
+    result.addAll(uriMappings);
     return result;
   }
 
+  /**
+   * @return The canonical URI of the mapping equivalence class of the URI (see {@link MappingsStore}). Values that are
+   * not URIs, or URIs without mappings, are returned as they are.
+   */
+  public static String getCanonicalUri(String uri) {
+    return mappings.getCanonicalUri(uri);
+  }
+
   public static boolean isSameConcept(String uri1, String uri2) {
     if (uri1.equalsIgnoreCase(uri2)) {
       return true;
@@ -56,6 +93,3 @@ public class MappingsService {
   }
 
 }
-
-
-
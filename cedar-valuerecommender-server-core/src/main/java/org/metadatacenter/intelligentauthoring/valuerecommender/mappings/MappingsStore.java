@@ -0,0 +1,326 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.mappings;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Compact, read-only store of the mappings between URIs. Every distinct URI is stored once in a sorted dictionary and
+ * identified by its position (an int id). The mappings are kept as an adjacency list in CSR format: the mappings of
+ * the URI with id i are the ids stored in targets[offsets[i]..offsets[i+1]).
+ * <p>
+ * The mappings are also grouped into equivalence classes (the connected components of the mappings graph, computed
+ * with union-find), so that URIs that are mapped directly or transitively share the same canonical URI: the smallest
+ * URI of the class.
+ * <p>
+ * The store is a single buffer in the binary format written by {@link #write}, so it can be memory-mapped from a file
+ * generated at build time (see {@link #main}) instead of parsing the JSON mappings file at startup. URIs are decoded
+ * the first time they are used, and the lists returned are views over the buffer.
+ * <p>
+ * Binary format (big-endian): magic, number of URIs (n), number of mappings (m), URI offsets (n + 1 ints, in the URI
+ * bytes), mapping offsets (n + 1 ints), mapping targets (m ints), canonical URI ids (n ints), URI bytes (UTF-8).
+ */
+public class MappingsStore {
+
+  private static final int MAGIC = 0x4d415032; // "MAP2"
+  private static final int HEADER_INTS = 3;
+
+  private final int uriCount;
+  private final IntBuffer uriOffsets;
+  private final IntBuffer mappingOffsets;
+  private final IntBuffer mappingTargets;
+  private final IntBuffer canonicalIds;
+  private final ByteBuffer uriBytes;
+  private final String[] uris; // URIs decoded so far
+
+  private MappingsStore(ByteBuffer buffer) throws IOException {
+    IntBuffer ints = buffer.duplicate().asIntBuffer();
+    if (ints.remaining() < HEADER_INTS || ints.get(0) != MAGIC) {
+      throw new IOException("Invalid mappings store");
+    }
+    this.uriCount = ints.get(1);
+    int mappingCount = ints.get(2);
+    this.uriOffsets = slice(ints, HEADER_INTS, uriCount + 1);
+    this.mappingOffsets = slice(ints, HEADER_INTS + uriCount + 1, uriCount + 1);
+    this.mappingTargets = slice(ints, HEADER_INTS + 2 * (uriCount + 1), mappingCount);
+    this.canonicalIds = slice(ints, HEADER_INTS + 2 * (uriCount + 1) + mappingCount, uriCount);
+    ByteBuffer bytes = buffer.duplicate();
+    bytes.position((HEADER_INTS + 3 * uriCount + 2 + mappingCount) * Integer.BYTES);
+    this.uriBytes = bytes.slice();
+    this.uris = new String[uriCount];
+  }
+
+  private static IntBuffer slice(IntBuffer ints, int position, int length) {
+    IntBuffer slice = ints.duplicate();
+    slice.position(position).limit(position + length);
+    return slice.slice();
+  }
+
+  /**
+   * Memory-maps a binary mappings store
+   */
+  public static MappingsStore map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new MappingsStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads a binary mappings store into memory (e.g., when it is packaged in a jar and cannot be mapped)
+   */
+  public static MappingsStore read(InputStream binaryStore) throws IOException {
+    return new MappingsStore(ByteBuffer.wrap(binaryStore.readAllBytes()));
+  }
+
+  /**
+   * Builds the store from a JSON mappings file, which contains an object whose keys are URIs and whose values are
+   * arrays with the URIs mapped to them. The file is parsed as a stream, without building a tree.
+   */
+  public static MappingsStore fromJson(InputStream jsonMappings) throws IOException {
+    return new MappingsStore(ByteBuffer.wrap(toBinary(parseJson(jsonMappings))));
+  }
+
+  /**
+   * @return The number of URIs with mappings
+   */
+  public int size() {
+    return uriCount;
+  }
+
+  /**
+   * @return The URIs mapped to the given URI, as a read-only view of the store. The list is empty if there are no
+   * mappings for the URI.
+   */
+  public List<String> getMappings(String uri) {
+    int id = getId(uri);
+    if (id == -1) {
+      return Collections.emptyList();
+    }
+    int from = mappingOffsets.get(id);
+    int to = mappingOffsets.get(id + 1);
+    return from == to ? Collections.emptyList() : new MappingsView(from, to);
+  }
+
+  /**
+   * @return The canonical URI of the equivalence class of the given URI. A URI without mappings is its own canonical
+   * URI.
+   */
+  public String getCanonicalUri(String uri) {
+    int id = getId(uri);
+    return id == -1 ? uri : getUri(canonicalIds.get(id));
+  }
+
+  /**
+   * @return The id of a URI, or -1 if it is not in the dictionary
+   */
+  private int getId(String uri) {
+    int low = 0;
+    int high = uriCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = getUri(middle).compareTo(uri);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  private String getUri(int id) {
+    // Concurrent decodings of the same URI produce equal strings, so no synchronization is needed
+    String uri = uris[id];
+    if (uri == null) {
+      int from = uriOffsets.get(id);
+      byte[] bytes = new byte[uriOffsets.get(id + 1) - from];
+      uriBytes.duplicate().position(from).get(bytes);
+      uri = new String(bytes, StandardCharsets.UTF_8);
+      uris[id] = uri;
+    }
+    return uri;
+  }
+
+  private final class MappingsView extends AbstractList<String> implements RandomAccess {
+    private final int from;
+    private final int to;
+
+    private MappingsView(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public String get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+      }
+      return getUri(mappingTargets.get(from + index));
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+  }
+
+  /** Binary store generation **/
+
+  private static Map<String, List<String>> parseJson(InputStream jsonMappings) throws IOException {
+    Map<String, List<String>> mappings = new HashMap<>();
+    try (JsonParser parser = new JsonFactory().createParser(jsonMappings)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("The mappings file must contain a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String uri = parser.getCurrentName();
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+          throw new IOException("The mappings of " + uri + " must be an array");
+        }
+        List<String> uriMappings = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          uriMappings.add(parser.getText());
+        }
+        mappings.put(uri, uriMappings);
+      }
+    }
+    return mappings;
+  }
+
+  private static byte[] toBinary(Map<String, List<String>> mappings) {
+    // Dictionary with the URIs that have mappings and the URIs they are mapped to, sorted for the binary search
+    SortedSet<String> dictionary = new TreeSet<>(mappings.keySet());
+    for (List<String> uriMappings : mappings.values()) {
+      dictionary.addAll(uriMappings);
+    }
+    Map<String, Integer> ids = new HashMap<>();
+    for (String uri : dictionary) {
+      ids.put(uri, ids.size());
+    }
+    int uriCount = dictionary.size();
+    int mappingCount = 0;
+    for (List<String> uriMappings : mappings.values()) {
+      mappingCount += uriMappings.size();
+    }
+
+    byte[][] encodedUris = new byte[uriCount][];
+    int uriBytesLength = 0;
+    int id = 0;
+    for (String uri : dictionary) {
+      encodedUris[id] = uri.getBytes(StandardCharsets.UTF_8);
+      uriBytesLength += encodedUris[id].length;
+      id++;
+    }
+
+    // Equivalence classes. The root of each class is its smallest id (i.e., the smallest URI)
+    int[] parents = new int[uriCount];
+    for (int i = 0; i < uriCount; i++) {
+      parents[i] = i;
+    }
+    for (Map.Entry<String, List<String>> uriMappings : mappings.entrySet()) {
+      int uriId = ids.get(uriMappings.getKey());
+      for (String mappedUri : uriMappings.getValue()) {
+        union(parents, uriId, ids.get(mappedUri));
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((HEADER_INTS + 3 * uriCount + 2 + mappingCount) * Integer.BYTES +
+        uriBytesLength);
+    buffer.putInt(MAGIC).putInt(uriCount).putInt(mappingCount);
+    // URI offsets
+    int offset = 0;
+    for (byte[] encodedUri : encodedUris) {
+      buffer.putInt(offset);
+      offset += encodedUri.length;
+    }
+    buffer.putInt(offset);
+    // Mapping offsets
+    offset = 0;
+    for (String uri : dictionary) {
+      buffer.putInt(offset);
+      offset += mappings.getOrDefault(uri, Collections.emptyList()).size();
+    }
+    buffer.putInt(offset);
+    // Mapping targets
+    for (String uri : dictionary) {
+      for (String mappedUri : mappings.getOrDefault(uri, Collections.emptyList())) {
+        buffer.putInt(ids.get(mappedUri));
+      }
+    }
+    // Canonical ids
+    for (int i = 0; i < uriCount; i++) {
+      buffer.putInt(find(parents, i));
+    }
+    // URI bytes
+    for (byte[] encodedUri : encodedUris) {
+      buffer.put(encodedUri);
+    }
+    return buffer.array();
+  }
+
+  private static int find(int[] parents, int id) {
+    int root = id;
+    while (parents[root] != root) {
+      root = parents[root];
+    }
+    // Path compression
+    while (parents[id] != root) {
+      int parent = parents[id];
+      parents[id] = root;
+      id = parent;
+    }
+    return root;
+  }
+
+  private static void union(int[] parents, int id1, int id2) {
+    int root1 = find(parents, id1);
+    int root2 = find(parents, id2);
+    if (root1 < root2) {
+      parents[root2] = root1;
+    } else if (root2 < root1) {
+      parents[root1] = root2;
+    }
+  }
+
+  /**
+   * Converts a JSON mappings file to the binary format
+   */
+  public static void write(InputStream jsonMappings, OutputStream binaryStore) throws IOException {
+    binaryStore.write(toBinary(parseJson(jsonMappings)));
+  }
+
+  /**
+   * Generates the binary mappings store at build time
+   *
+   * @param args JSON mappings file and binary store file
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: MappingsStore <json mappings file> <binary store file>");
+    }
+    Path binaryStorePath = Paths.get(args[1]);
+    if (binaryStorePath.getParent() != null) {
+      Files.createDirectories(binaryStorePath.getParent());
+    }
+    try (InputStream in = Files.newInputStream(Paths.get(args[0]));
+         OutputStream out = Files.newOutputStream(binaryStorePath)) {
+      write(in, out);
+    }
+  }
+
+}
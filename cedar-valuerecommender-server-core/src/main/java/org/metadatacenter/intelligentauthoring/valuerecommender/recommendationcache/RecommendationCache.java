@@ -0,0 +1,187 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.recommendationcache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.NormalizedField;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendationContext;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendedValue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches the values recommended for a request, so that the requests repeated while a form is being filled do not
+ * match and rank the rules again. Requests are identified by their normalized fields (the populated fields are
+ * sorted), so requests that only differ in the order or in the normalization of the fields share the same entry.
+ * <p>
+ * The entries of a template are invalidated when its rules change. Every template has a version that is part of the
+ * keys, so the entries computed with the previous rules while the rules were being replaced are never returned.
+ * Cross-template recommendations (without template id) are invalidated when the rules of any template change.
+ */
+public class RecommendationCache {
+
+  private static final String CROSS_TEMPLATE_KEY = "";
+
+  private final Cache<Key, List<RecommendedValue>> cache;
+  private final Map<String, AtomicLong> versions;
+
+  /**
+   * @param maxSize    Maximum number of requests cached
+   * @param ttlMinutes Time after which an entry is evicted, even if the rules have not changed
+   */
+  public RecommendationCache(long maxSize, long ttlMinutes) {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+        .recordStats()
+        .build();
+    this.versions = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the values recommended for a request, computing them if they are not cached. Concurrent identical
+   * requests wait for a single computation.
+   *
+   * @param templateId Template id, or null for cross-template recommendations
+   * @param loader     Computes the recommended values
+   * @return The recommended values. They are shared with other requests, so they must not be modified.
+   */
+  public List<RecommendedValue> get(String templateId, RecommendationContext context, NormalizedField targetField,
+                                    boolean strictMatch, boolean filterByRecommendationScore,
+                                    boolean filterByConfidence, boolean filterBySupport, boolean includeDetails,
+                                    Supplier<List<RecommendedValue>> loader) {
+    int flags = getFlags(strictMatch, filterByRecommendationScore, filterByConfidence, filterBySupport,
+        context.isUseMappings(), includeDetails);
+    Key key = new Key(templateId, getVersion(templateId), context, targetField, flags);
+    try {
+      return cache.get(key, loader::get);
+    } catch (UncheckedExecutionException e) {
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+    } catch (ExecutionError e) {
+      throw (Error) e.getCause();
+    } catch (ExecutionException e) {
+      // The loader does not throw checked exceptions
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the values recommended for several target fields with the same populated fields. The target fields that
+   * are not cached are computed together by a single call to the loader.
+   *
+   * @param templateId Template id, or null for cross-template recommendations
+   * @param loader     Computes the recommended values of the target fields that are not cached, in the same order
+   * @return The recommended values of each target field, in the same order as the target fields. They are shared with
+   * other requests, so they must not be modified.
+   */
+  public List<List<RecommendedValue>> getAll(String templateId, RecommendationContext context,
+                                             List<NormalizedField> targetFields, boolean strictMatch,
+                                             boolean filterByRecommendationScore, boolean filterByConfidence,
+                                             boolean filterBySupport, boolean includeDetails,
+                                             Function<List<NormalizedField>, List<List<RecommendedValue>>> loader) {
+    int flags = getFlags(strictMatch, filterByRecommendationScore, filterByConfidence, filterBySupport,
+        context.isUseMappings(), includeDetails);
+    // The version is read before computing the missing values, so the values computed with rules that are replaced in
+    // the meantime are stored with the previous version and never returned
+    long version = getVersion(templateId);
+    List<List<RecommendedValue>> results = new ArrayList<>(targetFields.size());
+    List<Key> missingKeys = new ArrayList<>();
+    List<NormalizedField> missingTargetFields = new ArrayList<>();
+    List<Integer> missingPositions = new ArrayList<>();
+    for (NormalizedField targetField : targetFields) {
+      Key key = new Key(templateId, version, context, targetField, flags);
+      List<RecommendedValue> recommendedValues = cache.getIfPresent(key);
+      if (recommendedValues == null) {
+        missingKeys.add(key);
+        missingTargetFields.add(targetField);
+        missingPositions.add(results.size());
+      }
+      results.add(recommendedValues);
+    }
+    if (!missingTargetFields.isEmpty()) {
+      List<List<RecommendedValue>> loaded = loader.apply(missingTargetFields);
+      for (int i = 0; i < missingKeys.size(); i++) {
+        cache.put(missingKeys.get(i), loaded.get(i));
+        results.set(missingPositions.get(i), loaded.get(i));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Invalidates the entries of a template and the cross-template entries. It must be called after the rules of the
+   * template have been replaced.
+   */
+  public void invalidate(String templateId) {
+    versions.computeIfAbsent(templateId, id -> new AtomicLong()).incrementAndGet();
+    versions.computeIfAbsent(CROSS_TEMPLATE_KEY, id -> new AtomicLong()).incrementAndGet();
+    cache.asMap().keySet().removeIf(key -> key.templateId.equals(templateId) ||
+        key.templateId.equals(CROSS_TEMPLATE_KEY));
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  private static int getFlags(boolean strictMatch, boolean filterByRecommendationScore, boolean filterByConfidence,
+                              boolean filterBySupport, boolean useMappings, boolean includeDetails) {
+    return (strictMatch ? 1 : 0) | (filterByRecommendationScore ? 2 : 0) | (filterByConfidence ? 4 : 0) |
+        (filterBySupport ? 8 : 0) | (useMappings ? 16 : 0) | (includeDetails ? 32 : 0);
+  }
+
+  private long getVersion(String templateId) {
+    AtomicLong version = versions.get(templateId == null ? CROSS_TEMPLATE_KEY : templateId);
+    return version == null ? 0 : version.get();
+  }
+
+  private static final class Key {
+    private final String templateId;
+    private final long version;
+    private final String targetPath;
+    private final List<String> populatedItems;
+    private final int flags; // Options of the request, as a bit set
+    private final int hashCode;
+
+    private Key(String templateId, long version, RecommendationContext context, NormalizedField targetField,
+                int flags) {
+      this.templateId = templateId == null ? CROSS_TEMPLATE_KEY : templateId;
+      this.version = version;
+      this.targetPath = targetField.getNormalizedPath();
+      // Shared by the keys of all the target fields of the request
+      this.populatedItems = context.getSortedItems();
+      this.flags = flags;
+      this.hashCode = Objects.hash(this.templateId, version, targetPath, populatedItems, flags);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return version == key.version && flags == key.flags && templateId.equals(key.templateId) &&
+          targetPath.equals(key.targetPath) && populatedItems.equals(key.populatedItems);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+}
@@ -0,0 +1,248 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.NormalizedField;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendationContext;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.*;
+
+/**
+ * In-memory copy of the association rules of a template. It is used to find the rules that are relevant to a
+ * recommendation request without querying the rules index in OpenSearch. The rules are indexed by the normalized
+ * path and the mappings class of their consequence, and by the (normalized path, normalized value) pairs of their
+ * premise items (see {@link RulePremiseMatcher}).
+ * <p>
+ * {@link #findRules} applies the same matching and filters as the OpenSearch query built by
+ * ValueRecommenderService.esQueryRules, but returns all the matching rules instead of the first MAX_ES_RESULTS hits.
+ * The hits are ranked by their BM25 score, which cannot be reproduced here, and the recommendations only keep the
+ * best rule of each value, so all the rules are scored, as the server-side scoring of the recommendations does.
+ */
+public class InMemoryRulesIndex {
+
+  private static final int[] NO_RULES = new int[0];
+
+  private final String templateId;
+  private final List<EsRule> rules;
+  private final Map<String, int[]> rulesByConsequencePath;
+  private final Map<String, int[]> rulesByConsequenceTypeClass;
+  private final Map<String, int[]> unclassifiedRulesByConsequencePath; // Rules without mappings classes
+  private final RulePremiseMatcher premiseMatcher;
+
+  /**
+   * @param templateId Template identifier
+   * @param rules      Rules of the template. Rules with more than one consequence are ignored because they are never
+   *                   used to generate recommendations.
+   */
+  public InMemoryRulesIndex(String templateId, List<EsRule> rules) {
+    this.templateId = templateId;
+    this.rules = new ArrayList<>();
+    Map<String, List<Integer>> consequencePaths = new HashMap<>();
+    Map<String, List<Integer>> consequenceTypeClasses = new HashMap<>();
+    Map<String, List<Integer>> unclassifiedConsequencePaths = new HashMap<>();
+
+    for (EsRule rule : rules) {
+      if (rule.getConsequenceSize() != CONSEQUENCE_SIZE) {
+        continue;
+      }
+      int ruleId = this.rules.size();
+      this.rules.add(rule);
+
+      EsRuleItem consequenceItem = rule.getConsequence().get(0);
+      addToIndex(consequencePaths, consequenceItem.getFieldNormalizedPath(), ruleId);
+      if (consequenceItem.getFieldTypeClass() != null) {
+        addToIndex(consequenceTypeClasses, consequenceItem.getFieldTypeClass(), ruleId);
+      } else {
+        addToIndex(unclassifiedConsequencePaths, consequenceItem.getFieldNormalizedPath(), ruleId);
+      }
+    }
+    this.rulesByConsequencePath = toPostingLists(consequencePaths);
+    this.rulesByConsequenceTypeClass = toPostingLists(consequenceTypeClasses);
+    this.unclassifiedRulesByConsequencePath = toPostingLists(unclassifiedConsequencePaths);
+    this.premiseMatcher = new RulePremiseMatcher(this.rules);
+  }
+
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  /**
+   * @return Number of rules in the index
+   */
+  public int size() {
+    return rules.size();
+  }
+
+  /**
+   * Finds the rules that contain the populated fields as premises and the target field as consequence. The
+   * parameters have the same meaning as in ValueRecommenderService.esQueryRules.
+   *
+   * @return All the relevant rules (sorted by rule id), together with the number of populated fields contained in
+   * the premise of each rule.
+   */
+  public MatchedRules findRules(RecommendationContext context, NormalizedField targetField, boolean strictMatch,
+                                boolean filterByConfidence, boolean filterBySupport) {
+    return findRules(context, Collections.singletonList(targetField), strictMatch, filterByConfidence,
+        filterBySupport).get(0);
+  }
+
+  /**
+   * Finds the relevant rules for several target fields with the same populated fields. The populated fields are
+   * matched against the rule premises only once for all the target fields.
+   *
+   * @return The relevant rules of each target field, in the same order as the target fields
+   */
+  public List<MatchedRules> findRules(RecommendationContext context, List<NormalizedField> targetFields,
+                                      boolean strictMatch, boolean filterByConfidence, boolean filterBySupport) {
+
+    // Number of populated items contained in the premise of each rule, in a single pass over the posting lists
+    RulePremiseMatcher.PremiseMatches matches =
+        premiseMatcher.match(context.getNormalizedPaths(), context.getNormalizedValues());
+
+    List<MatchedRules> results = new ArrayList<>(targetFields.size());
+    for (NormalizedField targetField : targetFields) {
+      results.add(findRules(context, matches, targetField, strictMatch, filterByConfidence, filterBySupport));
+    }
+    return results;
+  }
+
+  private MatchedRules findRules(RecommendationContext context, RulePremiseMatcher.PremiseMatches matches,
+                                 NormalizedField targetField, boolean strictMatch, boolean filterByConfidence,
+                                 boolean filterBySupport) {
+    int numberOfPopulatedFields = context.size();
+    boolean useMappings = context.isUseMappings();
+
+    // Rules whose consequence matches the target field, or its mappings class (sorted by rule id)
+    int[] candidateRuleIds = useMappings ? getRulesByConsequenceClass(targetField) :
+        rulesByConsequencePath.getOrDefault(targetField.getNormalizedPath(), NO_RULES);
+
+    List<EsRule> results = new ArrayList<>();
+    int[] intersectionCounts = new int[candidateRuleIds.length];
+    int matchesPosition = 0;
+    for (int ruleId : candidateRuleIds) {
+      // Both lists are sorted by rule id, so they are merged
+      while (matchesPosition < matches.size() && matches.getRuleId(matchesPosition) < ruleId) {
+        matchesPosition++;
+      }
+      int intersectionCount = 0;
+      if (matchesPosition < matches.size() && matches.getRuleId(matchesPosition) == ruleId) {
+        intersectionCount = matches.getCount(matchesPosition);
+      }
+      // In strict mode without mappings, the rule has to contain all the populated items
+      if (strictMatch && !useMappings && intersectionCount < numberOfPopulatedFields) {
+        continue;
+      }
+
+      EsRule rule = rules.get(ruleId);
+      if (filterByConfidence && rule.getConfidence() < MIN_CONFIDENCE_QUERY) {
+        continue;
+      }
+      if (filterBySupport && rule.getSupport() < MIN_SUPPORT_QUERY) {
+        continue;
+      }
+
+      int matchedFieldsCount = useMappings ? countClassMatches(context, rule) : intersectionCount;
+      boolean premiseSizeMatches = numberOfPopulatedFields > 0 && rule.getPremiseSize() == numberOfPopulatedFields;
+
+      if (strictMatch && (matchedFieldsCount < numberOfPopulatedFields ||
+          (numberOfPopulatedFields > 0 && !premiseSizeMatches))) {
+        continue;
+      }
+      intersectionCounts[results.size()] = intersectionCount;
+      results.add(rule);
+    }
+    return new MatchedRules(results, Arrays.copyOf(intersectionCounts, results.size()));
+  }
+
+  /**
+   * @return The rules whose consequence has the mappings class of the target field, together with the rules without
+   * mappings classes whose consequence has its normalized path (sorted by rule id)
+   */
+  private int[] getRulesByConsequenceClass(NormalizedField targetField) {
+    int[] ruleIds = rulesByConsequenceTypeClass.getOrDefault(targetField.getPathClass(), NO_RULES);
+    int[] unclassifiedRuleIds =
+        unclassifiedRulesByConsequencePath.getOrDefault(targetField.getNormalizedPath(), NO_RULES);
+    if (unclassifiedRuleIds.length == 0) {
+      return ruleIds;
+    }
+    return IntStream.concat(Arrays.stream(ruleIds), Arrays.stream(unclassifiedRuleIds)).sorted().toArray();
+  }
+
+  /**
+   * Counts the populated fields that match an item of the rule premise by their mappings classes. The items of the
+   * rules indexed before the mappings classes were stored match by their normalized path and value instead. It is the
+   * equivalent to the nested premise queries in ValueRecommenderService.esQueryRules.
+   */
+  private int countClassMatches(RecommendationContext context, EsRule rule) {
+    List<EsRuleItem> premise = rule.getPremise();
+    int count = 0;
+    for (int i = 0; i < premise.size(); i++) {
+      EsRuleItem premiseItem = premise.get(i);
+      if (containsClasses(premise, i, premiseItem)) {
+        continue;
+      }
+      if (hasClasses(premiseItem)) {
+        count += context.countFields(premiseItem.getFieldTypeClass(), premiseItem.getFieldValueClass());
+      } else {
+        count += countNormalizedMatches(context, premiseItem);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return True if one of the first premise items has the same mappings classes (or, without classes, the same
+   * normalized path and value) as the given item, so that the populated fields that match them are counted only once
+   */
+  private static boolean containsClasses(List<EsRuleItem> premise, int end, EsRuleItem item) {
+    for (int i = 0; i < end; i++) {
+      EsRuleItem previousItem = premise.get(i);
+      boolean sameItem = hasClasses(item) ?
+          item.getFieldTypeClass().equals(previousItem.getFieldTypeClass()) &&
+              item.getFieldValueClass().equals(previousItem.getFieldValueClass()) :
+          !hasClasses(previousItem) &&
+              Objects.equals(item.getFieldNormalizedPath(), previousItem.getFieldNormalizedPath()) &&
+              Objects.equals(item.getFieldNormalizedValue(), previousItem.getFieldNormalizedValue());
+      if (sameItem) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasClasses(EsRuleItem item) {
+    return item.getFieldTypeClass() != null && item.getFieldValueClass() != null;
+  }
+
+  private static int countNormalizedMatches(RecommendationContext context, EsRuleItem item) {
+    int count = 0;
+    for (int i = 0; i < context.size(); i++) {
+      if (context.getNormalizedPaths().get(i).equals(item.getFieldNormalizedPath()) &&
+          context.getNormalizedValues().get(i).equals(item.getFieldNormalizedValue())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void addToIndex(Map<String, List<Integer>> index, String key, int ruleId) {
+    if (key != null) {
+      List<Integer> ruleIds = index.computeIfAbsent(key, k -> new ArrayList<>());
+      if (ruleIds.isEmpty() || ruleIds.get(ruleIds.size() - 1) != ruleId) {
+        ruleIds.add(ruleId);
+      }
+    }
+  }
+
+  private static Map<String, int[]> toPostingLists(Map<String, List<Integer>> index) {
+    Map<String, int[]> postingLists = new HashMap<>();
+    for (Map.Entry<String, List<Integer>> entry : index.entrySet()) {
+      postingLists.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+    }
+    return postingLists;
+  }
+
+}
@@ -0,0 +1,129 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.elasticsearch.ElasticsearchQueryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.IN_MEMORY_RULES_INDEX_MAX_RULES;
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.IN_MEMORY_RULES_INDEX_MAX_TOTAL_RULES;
+
+/**
+ * Keeps the in-memory rules indexes of the templates. The index of a template is built when its rules are generated
+ * or, otherwise, it is loaded from OpenSearch the first time it is needed. Templates with more than
+ * IN_MEMORY_RULES_INDEX_MAX_RULES rules are not kept in memory, and the least recently used indexes are evicted when
+ * the total number of rules in memory exceeds IN_MEMORY_RULES_INDEX_MAX_TOTAL_RULES.
+ */
+public class InMemoryRulesIndexManager {
+
+  private static final Logger logger = LoggerFactory.getLogger(InMemoryRulesIndexManager.class);
+
+  private final ElasticsearchQueryService esQueryService;
+  private final RulesGenerationsManager rulesGenerationsManager;
+  private final Cache<String, InMemoryRulesIndex> indexes;
+  private final Set<String> oversizedTemplates;
+
+  public InMemoryRulesIndexManager(ElasticsearchQueryService esQueryService,
+                                   RulesGenerationsManager rulesGenerationsManager) {
+    this.esQueryService = esQueryService;
+    this.rulesGenerationsManager = rulesGenerationsManager;
+    this.indexes = CacheBuilder.newBuilder()
+        .maximumWeight(IN_MEMORY_RULES_INDEX_MAX_TOTAL_RULES)
+        .weigher((String templateId, InMemoryRulesIndex index) -> Math.max(1, index.size()))
+        .build();
+    this.oversizedTemplates = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Returns the rules index of a template, loading it from OpenSearch if needed.
+   *
+   * @param templateId
+   * @return The rules index, or an empty optional if the template rules cannot be kept in memory
+   */
+  public Optional<InMemoryRulesIndex> getIndex(String templateId) {
+    if (templateId == null || oversizedTemplates.contains(templateId)) {
+      return Optional.empty();
+    }
+    try {
+      // Concurrent requests for a template wait for a single load, without blocking the requests for other templates
+      return Optional.of(indexes.get(templateId, () -> loadIndex(templateId)));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (!(e.getCause() instanceof TooManyRulesException)) {
+        logger.error("Error loading the rules of template " + templateId, e.getCause());
+      }
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Returns the rules index of a template only if it has already been loaded
+   *
+   * @param templateId
+   * @return
+   */
+  public Optional<InMemoryRulesIndex> getLoadedIndex(String templateId) {
+    if (templateId == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(indexes.getIfPresent(templateId));
+  }
+
+  /**
+   * Replaces the rules index of a template with the rules that have just been generated for it
+   *
+   * @param templateId
+   * @param rules
+   */
+  public void setRules(String templateId, List<EsRule> rules) {
+    if (rules.size() > IN_MEMORY_RULES_INDEX_MAX_RULES) {
+      logger.info("Too many rules to keep them in memory (" + rules.size() + "). Template id: " + templateId);
+      indexes.invalidate(templateId);
+      oversizedTemplates.add(templateId);
+    } else {
+      // If the index is being loaded, the cache discards the loaded one
+      indexes.put(templateId, new InMemoryRulesIndex(templateId, rules));
+      oversizedTemplates.remove(templateId);
+    }
+  }
+
+  /**
+   * Loads the rules of the active generation of a template from OpenSearch. If the active generation changes while
+   * they are being loaded, the rules of the new generation are loaded instead, so that the rules of a previous
+   * generation are never cached.
+   */
+  private InMemoryRulesIndex loadIndex(String templateId) throws IOException, TooManyRulesException {
+    long startTime = System.currentTimeMillis();
+    while (true) {
+      Optional<Long> generation = rulesGenerationsManager.getActiveGeneration(templateId);
+      long numberOfRules = esQueryService.getNumberOfRules(templateId, generation);
+      if (numberOfRules > IN_MEMORY_RULES_INDEX_MAX_RULES) {
+        logger.info("Too many rules to keep them in memory (" + numberOfRules + "). Template id: " + templateId);
+        oversizedTemplates.add(templateId);
+        throw new TooManyRulesException();
+      }
+      InMemoryRulesIndex index =
+          new InMemoryRulesIndex(templateId, esQueryService.getRulesByTemplateId(templateId, generation));
+      if (generation.equals(rulesGenerationsManager.getActiveGeneration(templateId))) {
+        logger.info("Rules index loaded in memory. Template id: " + templateId + ". Number of rules: " + index.size() +
+            ". Execution time: " + (System.currentTimeMillis() - startTime) + " ms");
+        return index;
+      }
+      logger.info("The active generation changed while the rules were loaded. Loading them again. Template id: " +
+          templateId);
+    }
+  }
+
+  private static class TooManyRulesException extends Exception {
+  }
+
+}
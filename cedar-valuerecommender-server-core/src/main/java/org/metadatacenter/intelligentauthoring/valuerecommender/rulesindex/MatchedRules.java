@@ -0,0 +1,29 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+
+import java.util.List;
+
+/**
+ * Rules relevant to a recommendation request, together with the number of populated fields contained in the premise
+ * of each rule (i.e., |antecedent(r) ∩ C|). Both lists are aligned by position.
+ */
+public class MatchedRules {
+
+  private final List<EsRule> rules;
+  private final int[] intersectionCounts;
+
+  public MatchedRules(List<EsRule> rules, int[] intersectionCounts) {
+    this.rules = rules;
+    this.intersectionCounts = intersectionCounts;
+  }
+
+  public List<EsRule> getRules() {
+    return rules;
+  }
+
+  public int[] getIntersectionCounts() {
+    return intersectionCounts;
+  }
+
+}
@@ -0,0 +1,175 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches the premises of a list of rules against the populated fields of a recommendation request. Every distinct
+ * (normalized path, normalized value) premise item is encoded as an int item id, and every item id points to the
+ * sorted list of ids of the rules whose premise contains it (the rule id is the position of the rule in the list).
+ * Merging the posting lists of the populated items gives |antecedent(r) ∩ C| for all the rules in a single pass.
+ */
+public class RulePremiseMatcher {
+
+  private final int numberOfRules;
+  private final Map<String, Map<String, Integer>> itemIds; // normalized path -> normalized value -> item id
+  private final int[][] postingLists; // item id -> sorted rule ids
+
+  public RulePremiseMatcher(List<EsRule> rules) {
+    this.numberOfRules = rules.size();
+    this.itemIds = new HashMap<>();
+    List<IntList> postings = new ArrayList<>();
+
+    for (int ruleId = 0; ruleId < rules.size(); ruleId++) {
+      for (EsRuleItem item : rules.get(ruleId).getPremise()) {
+        Map<String, Integer> valueIds = itemIds.computeIfAbsent(item.getFieldNormalizedPath(), p -> new HashMap<>());
+        Integer itemId = valueIds.get(item.getFieldNormalizedValue());
+        if (itemId == null) {
+          itemId = postings.size();
+          valueIds.put(item.getFieldNormalizedValue(), itemId);
+          postings.add(new IntList());
+        }
+        // Rule ids are added in increasing order. A rule id appears twice in a posting list only if the rule has two
+        // fields with the same normalized path (e.g., annotated with the same term) and the same value
+        postings.get(itemId).add(ruleId);
+      }
+    }
+    this.postingLists = new int[postings.size()][];
+    for (int i = 0; i < postings.size(); i++) {
+      postingLists[i] = postings.get(i).toArray();
+    }
+  }
+
+  /**
+   * @return The id of the (normalizedPath, normalizedValue) item, or -1 if no rule premise contains it
+   */
+  public int getItemId(String normalizedPath, String normalizedValue) {
+    Map<String, Integer> valueIds = itemIds.get(normalizedPath);
+    if (valueIds == null) {
+      return -1;
+    }
+    Integer itemId = valueIds.get(normalizedValue);
+    return itemId != null ? itemId : -1;
+  }
+
+  /**
+   * Counts, for every rule, the number of populated items contained in its premise. Duplicated populated items are
+   * counted as many times as they appear, like in a pairwise comparison of premise items and populated fields.
+   *
+   * @param normalizedPaths  Normalized paths of the populated fields
+   * @param normalizedValues Normalized values of the populated fields (same order as normalizedPaths)
+   * @return The matches, sorted by rule id. Rules that do not match any populated item are not included.
+   */
+  public PremiseMatches match(List<String> normalizedPaths, List<String> normalizedValues) {
+    List<int[]> lists = new ArrayList<>();
+    int maxSize = 0;
+    for (int i = 0; i < normalizedPaths.size(); i++) {
+      int itemId = getItemId(normalizedPaths.get(i), normalizedValues.get(i));
+      if (itemId != -1) {
+        lists.add(postingLists[itemId]);
+        maxSize += postingLists[itemId].length;
+      }
+    }
+
+    // k-way merge of the posting lists. The number of populated fields is small, so the heads are scanned linearly
+    int[] ruleIds = new int[maxSize];
+    int[] counts = new int[maxSize];
+    int size = 0;
+    int[] positions = new int[lists.size()];
+    while (true) {
+      int minRuleId = Integer.MAX_VALUE;
+      for (int i = 0; i < lists.size(); i++) {
+        if (positions[i] < lists.get(i).length && lists.get(i)[positions[i]] < minRuleId) {
+          minRuleId = lists.get(i)[positions[i]];
+        }
+      }
+      if (minRuleId == Integer.MAX_VALUE) {
+        break;
+      }
+      int count = 0;
+      for (int i = 0; i < lists.size(); i++) {
+        while (positions[i] < lists.get(i).length && lists.get(i)[positions[i]] == minRuleId) {
+          count++;
+          positions[i]++;
+        }
+      }
+      ruleIds[size] = minRuleId;
+      counts[size] = count;
+      size++;
+    }
+    return new PremiseMatches(ruleIds, counts, size);
+  }
+
+  /**
+   * Same as {@link #match}, but returns a count for every rule (indexed by rule id)
+   */
+  public int[] countMatches(List<String> normalizedPaths, List<String> normalizedValues) {
+    int[] intersectionCounts = new int[numberOfRules];
+    PremiseMatches matches = match(normalizedPaths, normalizedValues);
+    for (int i = 0; i < matches.size(); i++) {
+      intersectionCounts[matches.getRuleId(i)] = matches.getCount(i);
+    }
+    return intersectionCounts;
+  }
+
+  /**
+   * Rules that match at least one populated item, sorted by rule id, and the number of items matched by each rule
+   */
+  public static class PremiseMatches {
+    private final int[] ruleIds;
+    private final int[] counts;
+    private final int size;
+
+    private PremiseMatches(int[] ruleIds, int[] counts, int size) {
+      this.ruleIds = ruleIds;
+      this.counts = counts;
+      this.size = size;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public int getRuleId(int position) {
+      return ruleIds[position];
+    }
+
+    public int getCount(int position) {
+      return counts[position];
+    }
+
+    /**
+     * @return The number of populated items matched by the rule (0 if the rule does not match any of them)
+     */
+    public int getCountForRule(int ruleId) {
+      int position = Arrays.binarySearch(ruleIds, 0, size, ruleId);
+      return position >= 0 ? counts[position] : 0;
+    }
+  }
+
+  /**
+   * Growable list of primitive ints
+   */
+  private static class IntList {
+    private int[] values = new int[4];
+    private int size = 0;
+
+    private void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    private int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.metadatacenter.intelligentauthoring.valuerecommender.ConfigManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.RULES_GENERATIONS_FILE_NAME;
+
+/**
+ * Keeps the active generation of the rules of each template. The rules generated for a template are indexed with a
+ * new generation, while the queries keep reading the active one. When all the rules have been indexed, the new
+ * generation becomes the active one and the rules of the previous generations are removed.
+ * <p>
+ * The active generations are saved to a JSON file in the data directory, so that they are still available after the server restarts. The
+ * rules of templates without an active generation (e.g., indexed before generations were used) are read without
+ * filtering by generation.
+ */
+public class RulesGenerationsManager {
+
+  private static final Logger logger = LoggerFactory.getLogger(RulesGenerationsManager.class);
+
+  private final ObjectMapper mapper;
+  private final Map<String, Long> activeGenerations;
+
+  public RulesGenerationsManager() {
+    this.mapper = new ObjectMapper();
+    this.activeGenerations = new ConcurrentHashMap<>();
+    File file = getFile();
+    if (file.exists()) {
+      try {
+        activeGenerations.putAll(mapper.readValue(file, new TypeReference<Map<String, Long>>() {}));
+      } catch (IOException e) {
+        logger.error("Error reading the rules generations from " + file.getAbsolutePath(), e);
+      }
+    }
+  }
+
+  /**
+   * @param templateId
+   * @return The generation of the rules that are used for the template, or an empty optional if it is not known
+   */
+  public Optional<Long> getActiveGeneration(String templateId) {
+    return templateId == null ? Optional.empty() : Optional.ofNullable(activeGenerations.get(templateId));
+  }
+
+  /**
+   * @param templateId
+   * @return A generation for new rules of the template, greater than the active one
+   */
+  public long newGeneration(String templateId) {
+    long activeGeneration = activeGenerations.getOrDefault(templateId, 0L);
+    return Math.max(System.currentTimeMillis(), activeGeneration + 1);
+  }
+
+  /**
+   * Switches the queries of a template to a generation whose rules have been completely indexed
+   */
+  public void setActiveGeneration(String templateId, long generation) {
+    activeGenerations.put(templateId, generation);
+    save();
+  }
+
+  private synchronized void save() {
+    File file = getFile();
+    try {
+      file.getParentFile().mkdirs();
+      mapper.writeValue(file, new HashMap<>(activeGenerations));
+    } catch (IOException e) {
+      logger.error("Error saving the rules generations to " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private File getFile() {
+    return new File(ConfigManager.getDataDirectory(), RULES_GENERATIONS_FILE_NAME);
+  }
+
+}
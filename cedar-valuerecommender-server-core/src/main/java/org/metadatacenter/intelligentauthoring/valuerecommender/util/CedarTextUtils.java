@@ -1,30 +1,74 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import java.text.Normalizer;
 
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.NORMALIZED_VALUES_CACHE_SIZE;
+
 public class CedarTextUtils {
 
+  // Normalized form of the non-ASCII values, which are the expensive ones to normalize
+  private static final Cache<String, String> normalizedValues = NORMALIZED_VALUES_CACHE_SIZE > 0 ?
+      CacheBuilder.newBuilder().maximumSize(NORMALIZED_VALUES_CACHE_SIZE).build() : null;
+
   /**
-   * Normalizes a field value (e.g., colorectal_cancer)
+   * Normalizes a field value (e.g., colorectal_cancer): it is decomposed (NFD), all the (Unicode) characters that are
+   * neither letters nor (decimal) digits are removed, and it is uppercased. ASCII values, which are not changed by
+   * the decomposition, are filtered in a single pass.
    * @param value
    * @return
    */
   public static String normalizeValue(String value) {
-    value = value.trim();
-    value = Normalizer.normalize(value, Normalizer.Form.NFD);
-    // Removes all (Unicode) characters that are neither letters nor (decimal) digits
-    value = value.replaceAll("[^\\p{L}\\p{Nd}]+", "");
-
-    // Drop all non-ASCII characters
-    //value = value.replaceAll("[^\\p{ASCII}]", "");
-    // Replace whitespace with underscore
-    //value = value.replaceAll("(\\s|-)", "_");
-    // Remove unsupported characters
-    //value = value.replaceAll("[^A-Z0-9_]", "");
-    // Uppercase
-    value = value.toUpperCase();
-
-    return value;
+    int length = value.length();
+    char[] chars = null;
+    int count = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        return normalizeNonAsciiValue(value);
+      }
+      boolean keep = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+      if (keep && chars != null) {
+        chars[count++] = c;
+      } else if (!keep && chars == null) {
+        // First removed character. The characters before it are kept
+        chars = new char[length - 1];
+        value.getChars(0, i, chars, 0);
+        count = i;
+      }
+    }
+    String filtered = chars == null ? value : new String(chars, 0, count);
+    // The default locale is used, as in String.toUpperCase()
+    return filtered.toUpperCase();
+  }
+
+  private static String normalizeNonAsciiValue(String value) {
+    if (normalizedValues == null) {
+      return normalizeUnicodeValue(value);
+    }
+    String normalizedValue = normalizedValues.getIfPresent(value);
+    if (normalizedValue == null) {
+      normalizedValue = normalizeUnicodeValue(value);
+      normalizedValues.put(value, normalizedValue);
+    }
+    return normalizedValue;
+  }
+
+  private static String normalizeUnicodeValue(String value) {
+    // Trimming is not needed: the characters removed by trim() are neither letters nor digits
+    String decomposedValue = Normalizer.normalize(value, Normalizer.Form.NFD);
+    StringBuilder filtered = new StringBuilder(decomposedValue.length());
+    for (int i = 0; i < decomposedValue.length(); ) {
+      int codePoint = decomposedValue.codePointAt(i);
+      // Same categories as the regex [\p{L}\p{Nd}]
+      if (Character.isLetter(codePoint) || Character.getType(codePoint) == Character.DECIMAL_DIGIT_NUMBER) {
+        filtered.appendCodePoint(codePoint);
+      }
+      i += Character.charCount(codePoint);
+    }
+    return filtered.toString().toUpperCase();
   }
 
   /**
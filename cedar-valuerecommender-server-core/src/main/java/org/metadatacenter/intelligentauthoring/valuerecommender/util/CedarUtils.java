@@ -115,6 +115,29 @@ public class CedarUtils {
     }
   }
 
+  /**
+   * Returns the value of a given field. Same as {@link #getValueOfField(Map)}, for a Jackson node.
+   *
+   * @param node
+   * @return The value of the field
+   */
+  public static Optional<ArffAttributeValue> getValueOfField(JsonNode node) throws IOException {
+    if (containsValidValue(node, VALUE_FIELD_NAME)) {
+      return Optional.of(new ArffAttributeValue(toText(node.get(VALUE_FIELD_NAME))));
+    } else if (containsValidValue(node, ID_FIELD_NAME)) {
+      if (containsValidValue(node, LABEL_FIELD_NAME)) {
+        ArffAttributeValue value = new ArffAttributeValue(toText(node.get(ID_FIELD_NAME)),
+            toText(node.get(LABEL_FIELD_NAME)));
+        return Optional.of(value);
+      }
+      else {
+        throw new IOException("There is no label for ontology term: " + toText(node.get(ID_FIELD_NAME)));
+      }
+    } else {
+      return Optional.empty();
+    }
+  }
+
   /**
    * Checks if a Json resource corresponds to a CEDAR template field
    *
@@ -159,6 +182,18 @@ public class CedarUtils {
     }
   }
 
+  public static boolean containsValidValue(JsonNode node, String key) {
+    JsonNode value = node.get(key);
+    return value != null && !value.isNull() && toText(value).trim().length() > 0;
+  }
+
+  /**
+   * Text of a node. Scalar values are returned without quotes, as in a Java map parsed from Json.
+   */
+  private static String toText(JsonNode node) {
+    return node.isValueNode() ? node.asText() : node.toString();
+  }
+
   /**
    * Returns the instance type of a field resource
    * @param fieldNode
@@ -1,5 +1,7 @@
 package org.metadatacenter.intelligentauthoring.valuerecommender.util;
 
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.RulesMinerType;
+
 /**
  * Constants of general utility.
  * All member of this class are immutable.
@@ -13,6 +15,7 @@ public class Constants {
   public static final String CEDAR_INSTANCES_PATH = CEDAR_INSTANCES_BASE_PATH +
       "cedar_instances_annotated/ncbi_cedar_instances/training";
   public static final String MAPPINGS_FILE_PATH = "mappings/mappings_merged.json";
+  public static final String MAPPINGS_STORE_FILE_PATH = "mappings/mappings_merged.bin"; // Binary mappings store generated at build time from MAPPINGS_FILE_PATH
   public static boolean USE_MAPPINGS = false; // For ontology terms, match using mappings
   public static boolean FILTER_BY_RECOMMENDATION_SCORE = true;
   public static final double MIN_RECOMMENDATION_SCORE = 0.02; // Recommendation score threshold
@@ -25,17 +28,82 @@ public class Constants {
   public static final int MAX_RECOMMENDATIONS_CD = 5; // Maximum number of recommendations returned to the user when generating context-DEPENDENT recommendations
   public static final int MAX_ES_RESULTS = 300; // Maximum number of results returned by Elasticsearch
 
+  /** Data directory **/
+  public static final String DATA_DIRECTORY_ENV_VAR = "CEDAR_VALUERECOMMENDER_DATA_DIR"; // Folder where the rules generations, value distributions, incremental states and rules generation history are kept across restarts
+  public static final String CEDAR_HOME_ENV_VAR = "CEDAR_HOME";
+  public static final String DEFAULT_DATA_DIRECTORY = "data/cedar-valuerecommender-server"; // Used if DATA_DIRECTORY_ENV_VAR is not set. Relative to CEDAR_HOME, or to the user home if it is not set either
+
+  /** In-memory rules index **/
+  public static final boolean USE_IN_MEMORY_RULES_INDEX = true; // Find the relevant rules in memory instead of querying OpenSearch
+  public static final int IN_MEMORY_RULES_INDEX_MAX_RULES = 500000; // Templates with more rules are always queried in OpenSearch
+  public static final long IN_MEMORY_RULES_INDEX_MAX_TOTAL_RULES = 5000000; // Maximum number of rules kept in memory for all templates
+
+  /** Rules generations **/
+  public static final String RULES_GENERATIONS_FILE_NAME = "rules-generations.json"; // Active generation of the rules of each template
+
+  /** Value normalization **/
+  public static final long NORMALIZED_VALUES_CACHE_SIZE = 10000; // Non-ASCII values whose normalized form is cached (0 disables the cache). ASCII values are always normalized directly
+
+  /** Server-side scoring **/
+  public static final boolean USE_SERVER_SIDE_SCORING = false; // Score, deduplicate and rank the recommended values in OpenSearch when the rules are not in memory. Requests with details are always scored in Java
+
+  /** Recommendation cache **/
+  public static final boolean USE_RECOMMENDATION_CACHE = true; // Cache the values recommended for each request. The entries of a template are invalidated when its rules change
+  public static final long RECOMMENDATION_CACHE_SIZE = 10000; // Maximum number of requests cached
+  public static final long RECOMMENDATION_CACHE_TTL_MINUTES = 10;
+
+  /** Value distributions (context-independent recommendations) **/
+  public static final boolean USE_VALUE_DISTRIBUTIONS = true; // Generate context-independent recommendations from the value distributions computed at rule generation time
+  public static final int VALUE_DISTRIBUTION_MAX_VALUES = 50; // Number of values stored for each field
+  public static final String VALUE_DISTRIBUTIONS_FOLDER_NAME = "value-distributions";
+
   /** Input parameters **/
   public static final String INPUT_TEMPLATE_ID = "templateId";
   public static final String INPUT_POPULATED_FIELDS = "populatedFields";
   public static final String INPUT_TARGET_FIELD = "targetField";
+  public static final String INPUT_TARGET_FIELDS = "targetFields";
   public static final String INPUT_STRICT_MATCH= "strictMatch";
   public static final String INPUT_INCLUDE_DETAILS = "includeDetails";
+  public static final String INPUT_RULES_MINER = "miner";
+  public static final String INPUT_UPDATED_INSTANCE_IDS = "updatedInstanceIds";
+  public static final String INPUT_DELETED_INSTANCE_IDS = "deletedInstanceIds";
+  public static final String INPUT_OUTCOME = "outcome";
+  public static final String INPUT_OFFSET = "offset";
+  public static final String INPUT_LIMIT = "limit";
 
-  /** ARFF generation **/
-  public static final String ARFF_FOLDER_NAME = "cedar-valuerecommender-server/arff-files";
-  public static final String ARFF_MISSING_VALUE = "?";
+  /** Instances generation **/
   public static final int MAX_INSTANCES_FOR_ARM = -1; // -1 means that there is no limit
+  public static final boolean USE_BATCHED_INSTANCES_FETCH = true; // Read the instances from MongoDB in batches instead of one by one
+  public static final int INSTANCES_FETCH_BATCH_SIZE = 500; // Number of instances retrieved by each MongoDB query
+  public static final int INSTANCES_FETCH_MAX_CONCURRENT_BATCHES = 4; // Maximum number of batches fetched or transformed at the same time
+  public static final int INSTANCES_TRANSFORM_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), INSTANCES_FETCH_MAX_CONCURRENT_BATCHES);
+
+  /** Rules generation scheduling **/
+  public static final long RULES_GENERATION_HEAP_PER_THREAD = 2L * 1024 * 1024 * 1024; // Heap (bytes) reserved for each template whose rules are generated at the same time
+  public static final int RULES_GENERATION_THREADS = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() / 2,
+      Runtime.getRuntime().maxMemory() / RULES_GENERATION_HEAP_PER_THREAD)); // Each generation also uses INSTANCES_TRANSFORM_THREADS
+
+  /** Rules generation status **/
+  public static final String RULES_GENERATION_HISTORY_FILE_NAME = "rules-generation-history.json"; // Last rules generation runs of each template
+  public static final int RULES_GENERATION_HISTORY_SIZE = 10; // Number of runs kept for each template
+
+  /** Incremental rules maintenance **/
+  public static final boolean USE_INCREMENTAL_RULES = true; // Keep the itemset counts of the templates mined with FP-Growth, so that instance changes only update the affected rules
+  public static final double INCREMENTAL_MAX_CHANGED_RATIO = 0.05; // If a larger fraction of the transactions changes, the itemsets are mined again from the stored transactions
+  public static final int INCREMENTAL_MAX_NUM_TRANSACTIONS = 500000; // Templates with more transactions are not kept in incremental mode
+  public static final int INCREMENTAL_MAX_NUM_ITEMSETS = 1000000; // Templates with more frequent itemsets are not kept in incremental mode
+  public static final int INCREMENTAL_STATES_CACHE_SIZE = 20; // Number of template states kept in memory (the rest are read from disk when needed)
+  public static final String INCREMENTAL_STATES_FOLDER_NAME = "incremental-states";
+
+  /** Bulk indexing **/
+  public static final long BULK_INITIAL_BATCH_BYTES = 5L * 1024 * 1024; // Initial size of the bulk requests. It is adapted to the latency and rejections of the cluster
+  public static final long BULK_MIN_BATCH_BYTES = 512L * 1024;
+  public static final long BULK_MAX_BATCH_BYTES = 20L * 1024 * 1024;
+  public static final int BULK_MAX_BATCH_ACTIONS = 10000; // Maximum number of rules sent in a bulk request
+  public static final int BULK_MAX_CONCURRENT_REQUESTS = 4; // Maximum number of bulk requests in flight
+  public static final long BULK_TARGET_LATENCY_MS = 2000; // Slower bulk requests reduce the batch size and the concurrency
+  public static final int BULK_MAX_RETRIES = 5; // Maximum number of retries of a rule rejected with a transient error (429, 502, 503, 504)
+  public static final long BULK_RETRY_BACKOFF_MS = 500; // Delay before the first retry. It doubles with every retry
 
   /** CEDAR fields **/
   public static final String VALUE_FIELD_NAME = "@value";
@@ -49,8 +117,13 @@ public class Constants {
   public static final String ENUM_FIELD_NAME = "enum";
   public static final String RECOMMENDATION_ENABLED_FIELD_NAME = "valueRecommendationEnabled";
 
-  /** Apriori settings **/
+  /** Rules mining settings **/
   public static final int APRIORI_MAX_NUM_RULES = 5000000;
+  public static final int FP_GROWTH_MAX_NUM_RULES = 5000000;
+  public static final int FP_GROWTH_MAX_NUM_ITEMSETS = 5000000; // When exceeded, the support is increased by APRIORI_DELTA and FP-Growth is run again
+  public static final double APRIORI_UPPER_BOUND_MIN_SUPPORT = 1.0; // Apriori starts at this support and decreases it by APRIORI_DELTA
+  public static final double APRIORI_DELTA = 0.05;
+  public static final RulesMinerType DEFAULT_RULES_MINER = RulesMinerType.APRIORI; // Used when the miner is not specified
   public static final int METRIC_TYPE_ID = 0; // 0 = Confidence | 1 = Lift | 2 = Leverage | 3 = Conviction
   public static final double MIN_CONFIDENCE = 0.1;
   public static final double MIN_LIFT = 1.2;
@@ -65,23 +138,50 @@ public class Constants {
 
   /** rules-index field names **/
   public static final String INDEX_TEMPLATE_ID = "templateId";
+  public static final String INDEX_RULE_GENERATION = "generation";
   public static final String INDEX_RULE_CONFIDENCE = "confidence";
   public static final String INDEX_RULE_SUPPORT = "support";
   public static final String INDEX_PREMISE_SIZE = "premiseSize";
   public static final String INDEX_CONSEQUENCE_SIZE = "consequenceSize";
   public static final String INDEX_RULE_PREMISE = "premise";
   public static final String INDEX_RULE_CONSEQUENCE = "consequence";
+  public static final String INDEX_FIELD_PATH = "fieldPath";
+  public static final String INDEX_FIELD_TYPE = "fieldType";
   public static final String INDEX_FIELD_NORMALIZED_PATH = "fieldNormalizedPath";
-  public static final String INDEX_FIELD_TYPE_MAPPINGS = "fieldTypeMappings";
+  public static final String INDEX_FIELD_TYPE_CLASS = "fieldTypeClass"; // Mappings classes (keyword). Older rules do not have them, so the normalized path and value are matched too
   public static final String INDEX_FIELD_NORMALIZED_VALUE = "fieldNormalizedValue";
-  public static final String INDEX_FIELD_VALUE_MAPPINGS = "fieldValueMappings";
+  public static final String INDEX_FIELD_VALUE_CLASS = "fieldValueClass";
+  public static final String INDEX_FIELD_VALUE_TYPE = "fieldValueType";
+  public static final String INDEX_FIELD_VALUE_LABEL = "fieldValueLabel";
   public static final String INDEX_FIELD_VALUE_RESULT = "fieldValueResult";
   public static final String INDEX_PREMISE_FIELD_NORMALIZED_PATH = INDEX_RULE_PREMISE + "." + INDEX_FIELD_NORMALIZED_PATH;
-  public static final String INDEX_PREMISE_FIELD_TYPE_MAPPINGS = INDEX_RULE_PREMISE + "." + INDEX_FIELD_TYPE_MAPPINGS;
+  public static final String INDEX_PREMISE_FIELD_TYPE_CLASS = INDEX_RULE_PREMISE + "." + INDEX_FIELD_TYPE_CLASS;
   public static final String INDEX_PREMISE_FIELD_NORMALIZED_VALUE = INDEX_RULE_PREMISE + "." + INDEX_FIELD_NORMALIZED_VALUE;
-  public static final String INDEX_PREMISE_FIELD_VALUE_MAPPINGS = INDEX_RULE_PREMISE + "." + INDEX_FIELD_VALUE_MAPPINGS;
+  public static final String INDEX_PREMISE_FIELD_VALUE_CLASS = INDEX_RULE_PREMISE + "." + INDEX_FIELD_VALUE_CLASS;
   public static final String INDEX_CONSEQUENCE_FIELD_NORMALIZED_PATH = INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_NORMALIZED_PATH;
-  public static final String INDEX_CONSEQUENCE_FIELD_TYPE_MAPPINGS = INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_TYPE_MAPPINGS;
+  public static final String INDEX_CONSEQUENCE_FIELD_TYPE_CLASS = INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_TYPE_CLASS;
+  public static final String INDEX_CONSEQUENCE_FIELD_VALUE_RESULT = INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_VALUE_RESULT;
+  // Fields fetched by the recommendation queries. The mapping classes are only used to match the rules, and the lift,
+  // leverage and conviction are not used to rank the recommendations, so they are not returned by OpenSearch. The
+  // scalar fields of the rule are cheap, so the rules read from the hits keep them
+  public static final String[] INDEX_RULE_RANKING_FIELDS = {
+      INDEX_TEMPLATE_ID,
+      INDEX_RULE_GENERATION,
+      INDEX_RULE_CONFIDENCE,
+      INDEX_RULE_SUPPORT,
+      INDEX_PREMISE_SIZE,
+      INDEX_CONSEQUENCE_SIZE,
+      INDEX_RULE_PREMISE + "." + INDEX_FIELD_PATH,
+      INDEX_RULE_PREMISE + "." + INDEX_FIELD_TYPE,
+      INDEX_PREMISE_FIELD_NORMALIZED_PATH,
+      INDEX_PREMISE_FIELD_NORMALIZED_VALUE,
+      INDEX_RULE_PREMISE + "." + INDEX_FIELD_VALUE_TYPE,
+      INDEX_RULE_PREMISE + "." + INDEX_FIELD_VALUE_LABEL,
+      INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_PATH,
+      INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_TYPE,
+      INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_VALUE_TYPE,
+      INDEX_RULE_CONSEQUENCE + "." + INDEX_FIELD_VALUE_LABEL
+  };
 
   /** BioPortal **/
   public static final String BIOPORTAL_API_BASE = "http://data.bioontology.org/";
@@ -94,17 +194,15 @@ public class Constants {
       "https://repo.metadatacenter.orgx/templates/4006096d-e4d8-4e53-9363-f91d63ae5383" // test (local)
   };
 
-  // Elasticsearch aggregation names and attributes used
-//  public static final String AGG_BY_NESTED_OBJECT = "by_nested_object";
-//  public static final String AGG_BY_TARGET_FIELD_VALUE_RESULT = "by_target_field_value_result";
-//  public static final String AGG_METRICS_INFO = "metrics_info";
-//  public static final String AGG_SEPARATOR = ">";
-//  public static final String METRIC_MAX_SCORE = "max_score";
-//  public static final String METRIC_SUPPORT = "max_support";
-//  public static final String METRIC_MAX_CONFIDENCE = "max_confidence";
-//  public static final String METRIC_MAX_SCORE_PATH = AGG_METRICS_INFO + AGG_SEPARATOR + METRIC_MAX_SCORE;
-//  public static final String METRIC_MAX_CONFIDENCE_PATH = AGG_METRICS_INFO + AGG_SEPARATOR + METRIC_MAX_CONFIDENCE;
-//  public static final String METRIC_SUPPORT_PATH = AGG_METRICS_INFO + AGG_SEPARATOR + METRIC_SUPPORT;
+  // Elasticsearch aggregation names and attributes used (server-side scoring)
+  public static final String AGG_BY_NESTED_OBJECT = "by_nested_object";
+  public static final String AGG_BY_TARGET_FIELD_VALUE_RESULT = "by_target_field_value_result";
+  public static final String AGG_METRICS_INFO = "metrics_info";
+  public static final String AGG_SEPARATOR = ">";
+  public static final String METRIC_MAX_SCORE = "max_score";
+  public static final String METRIC_SUPPORT = "support";
+  public static final String METRIC_TOTAL_SUPPORT = "total_support";
+  public static final String METRIC_SUPPORT_PATH = AGG_METRICS_INFO + AGG_SEPARATOR + METRIC_SUPPORT;
 
   // PRIVATE //
 
@@ -14,4 +14,21 @@ public class FieldValueResultUtils {
     }
     return valueString.replace("'", "\\'").trim();
   }
+
+  /**
+   * @return The value type of a value result string (see {@link #toValueResultString}), or null for free text values
+   */
+  public static String getValueType(String valueResult) {
+    int separator = valueResult.indexOf("](");
+    String valueType = valueResult.substring(1, separator);
+    return valueType.isEmpty() ? null : valueType.replace("\\'", "'");
+  }
+
+  /**
+   * @return The value label of a value result string (see {@link #toValueResultString})
+   */
+  public static String getValueLabel(String valueResult) {
+    int separator = valueResult.indexOf("](");
+    return valueResult.substring(separator + 2, valueResult.length() - 1).replace("\\'", "'");
+  }
 }
@@ -0,0 +1,36 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions;
+
+import java.util.List;
+
+/**
+ * Most frequent values of a target field, computed from all the single-consequence rules of a template whose
+ * consequence is the field
+ */
+public class FieldValueDistribution {
+
+  private String fieldNormalizedPath;
+  private long totalSupport; // Sum of the support of all the rules, not only of the ones of the top values
+  private List<ValueFrequency> values; // Sorted by support (descending)
+
+  // Needed by Jackson for deserialization
+  public FieldValueDistribution() {}
+
+  public FieldValueDistribution(String fieldNormalizedPath, long totalSupport, List<ValueFrequency> values) {
+    this.fieldNormalizedPath = fieldNormalizedPath;
+    this.totalSupport = totalSupport;
+    this.values = values;
+  }
+
+  public String getFieldNormalizedPath() {
+    return fieldNormalizedPath;
+  }
+
+  public long getTotalSupport() {
+    return totalSupport;
+  }
+
+  public List<ValueFrequency> getValues() {
+    return values;
+  }
+
+}
@@ -0,0 +1,101 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions;
+
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+
+import java.util.*;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.CONSEQUENCE_SIZE;
+
+/**
+ * Value distributions of the fields of a template, indexed by the normalized path of the field. They contain all the
+ * information needed to generate context-independent recommendations, so these recommendations do not need to
+ * retrieve and aggregate the template rules at request time.
+ */
+public class TemplateValueDistributions {
+
+  private String templateId;
+  private Map<String, FieldValueDistribution> fields;
+
+  // Needed by Jackson for deserialization
+  public TemplateValueDistributions() {}
+
+  public TemplateValueDistributions(String templateId, Map<String, FieldValueDistribution> fields) {
+    this.templateId = templateId;
+    this.fields = fields;
+  }
+
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  public Map<String, FieldValueDistribution> getFields() {
+    return fields;
+  }
+
+  /**
+   * Aggregates the support of the values of each target field, in the same way as the context-independent
+   * recommendations did at request time, but using all the rules of the template.
+   *
+   * @param templateId
+   * @param rules          All the rules of the template
+   * @param maxValuesCount Maximum number of values stored for each field
+   * @return
+   */
+  public static TemplateValueDistributions fromRules(String templateId, List<EsRule> rules, int maxValuesCount) {
+    Map<String, Map<String, ValueAggregation>> aggregationsByPath = new HashMap<>();
+    Map<String, Long> totalSupportByPath = new HashMap<>();
+
+    for (EsRule rule : rules) {
+      if (rule.getConsequenceSize() != CONSEQUENCE_SIZE) {
+        continue;
+      }
+      EsRuleItem consequenceItem = rule.getConsequence().get(0);
+      String path = consequenceItem.getFieldNormalizedPath();
+      if (path == null) {
+        continue;
+      }
+      // The map key may be null (e.g., fields with empty values), as in the request-time aggregation
+      ValueAggregation aggregation = aggregationsByPath.computeIfAbsent(path, p -> new HashMap<>())
+          .computeIfAbsent(consequenceItem.getFieldValueLabel(), l -> new ValueAggregation(rule));
+      aggregation.add(rule);
+      totalSupportByPath.merge(path, (long) (int) rule.getSupport(), Long::sum);
+    }
+
+    Map<String, FieldValueDistribution> fields = new HashMap<>();
+    for (Map.Entry<String, Map<String, ValueAggregation>> entry : aggregationsByPath.entrySet()) {
+      List<ValueAggregation> aggregations = new ArrayList<>(entry.getValue().values());
+      aggregations.sort((a1, a2) -> Double.compare(a2.support, a1.support));
+      List<ValueFrequency> values = new ArrayList<>();
+      for (ValueAggregation aggregation : aggregations.subList(0, Math.min(maxValuesCount, aggregations.size()))) {
+        values.add(aggregation.toValueFrequency());
+      }
+      fields.put(entry.getKey(),
+          new FieldValueDistribution(entry.getKey(), totalSupportByPath.get(entry.getKey()), values));
+    }
+    return new TemplateValueDistributions(templateId, fields);
+  }
+
+  private static class ValueAggregation {
+    private double support = 0;
+    private EsRule bestRule;
+
+    private ValueAggregation(EsRule rule) {
+      this.bestRule = rule;
+    }
+
+    private void add(EsRule rule) {
+      support += rule.getSupport();
+      if (rule.getSupport() > bestRule.getSupport()) {
+        bestRule = rule;
+      }
+    }
+
+    private ValueFrequency toValueFrequency() {
+      EsRuleItem consequenceItem = bestRule.getConsequence().get(0);
+      return new ValueFrequency(consequenceItem.getFieldValueLabel(), consequenceItem.getFieldValueType(), support,
+          bestRule.toShortString(), bestRule.getConfidence(), bestRule.getSupport());
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.metadatacenter.intelligentauthoring.valuerecommender.ConfigManager;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.VALUE_DISTRIBUTIONS_FOLDER_NAME;
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.VALUE_DISTRIBUTION_MAX_VALUES;
+
+/**
+ * Keeps the value distributions of the templates. They are computed when the template rules are generated and saved
+ * to a JSON file (one per template), so that they are still available after the server restarts.
+ */
+public class ValueDistributionsManager {
+
+  private static final Logger logger = LoggerFactory.getLogger(ValueDistributionsManager.class);
+
+  private final ObjectMapper mapper;
+  private final Map<String, TemplateValueDistributions> distributions;
+
+  public ValueDistributionsManager() {
+    this.mapper = new ObjectMapper();
+    this.distributions = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the value distributions of a template, loading them from disk if needed
+   *
+   * @param templateId
+   * @return The distributions, or an empty optional if they have not been generated for the template
+   */
+  public Optional<TemplateValueDistributions> getDistributions(String templateId) {
+    if (templateId == null) {
+      return Optional.empty();
+    }
+    TemplateValueDistributions templateDistributions = distributions.get(templateId);
+    if (templateDistributions != null) {
+      return Optional.of(templateDistributions);
+    }
+    File file = getFile(templateId);
+    if (!file.exists()) {
+      return Optional.empty();
+    }
+    try {
+      templateDistributions = mapper.readValue(file, TemplateValueDistributions.class);
+      distributions.put(templateId, templateDistributions);
+      return Optional.of(templateDistributions);
+    } catch (IOException e) {
+      logger.error("Error reading the value distributions of template " + templateId + " from " +
+          file.getAbsolutePath(), e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Computes the value distributions of a template from the rules that have just been generated for it, and saves them
+   *
+   * @param templateId
+   * @param rules
+   */
+  public void setRules(String templateId, List<EsRule> rules) {
+    TemplateValueDistributions templateDistributions =
+        TemplateValueDistributions.fromRules(templateId, rules, VALUE_DISTRIBUTION_MAX_VALUES);
+    distributions.put(templateId, templateDistributions);
+    File file = getFile(templateId);
+    try {
+      file.getParentFile().mkdirs();
+      mapper.writeValue(file, templateDistributions);
+      logger.info("Value distributions saved to " + file.getAbsolutePath() + ". Number of fields: " +
+          templateDistributions.getFields().size());
+    } catch (IOException e) {
+      logger.error("Error saving the value distributions of template " + templateId, e);
+    }
+  }
+
+  private File getFile(String templateId) {
+    String fileName = templateId.substring(templateId.lastIndexOf("/") + 1) + ".json";
+    return new File(new File(ConfigManager.getDataDirectory(), VALUE_DISTRIBUTIONS_FOLDER_NAME), fileName);
+  }
+
+}
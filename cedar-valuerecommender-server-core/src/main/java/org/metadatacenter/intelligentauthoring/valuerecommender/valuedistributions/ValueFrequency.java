@@ -0,0 +1,53 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.valuedistributions;
+
+/**
+ * Aggregated support of a value of a target field, together with the details of the rule with the highest support
+ * for that value (used to report recommendation details)
+ */
+public class ValueFrequency {
+
+  private String valueLabel;
+  private String valueType;
+  private double support;
+  private String rule;
+  private double ruleConfidence;
+  private double ruleSupport;
+
+  // Needed by Jackson for deserialization
+  public ValueFrequency() {}
+
+  public ValueFrequency(String valueLabel, String valueType, double support, String rule, double ruleConfidence,
+                        double ruleSupport) {
+    this.valueLabel = valueLabel;
+    this.valueType = valueType;
+    this.support = support;
+    this.rule = rule;
+    this.ruleConfidence = ruleConfidence;
+    this.ruleSupport = ruleSupport;
+  }
+
+  public String getValueLabel() {
+    return valueLabel;
+  }
+
+  public String getValueType() {
+    return valueType;
+  }
+
+  public double getSupport() {
+    return support;
+  }
+
+  public String getRule() {
+    return rule;
+  }
+
+  public double getRuleConfidence() {
+    return ruleConfidence;
+  }
+
+  public double getRuleSupport() {
+    return ruleSupport;
+  }
+
+}
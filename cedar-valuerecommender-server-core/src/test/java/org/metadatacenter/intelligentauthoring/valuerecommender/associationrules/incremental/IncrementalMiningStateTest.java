@@ -0,0 +1,185 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.incremental;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.ArffInstance;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners.Itemset;
+
+import java.util.*;
+
+public class IncrementalMiningStateTest {
+
+  private static final String TEMPLATE_ID = "https://repo.metadatacenter.org/templates/test";
+  private static final List<String> ATTRIBUTE_NAMES = Arrays.asList("[](a)", "[](b)", "[](c)", "[](d)", "[](e)");
+  private static final List<Boolean> CONSEQUENCE_ENABLED = Arrays.asList(true, true, true, false, false);
+  private static final int VALUES_PER_ATTRIBUTE = 4;
+
+  /**
+   * Applies random batches of created, updated and deleted instances and checks the itemset counts against the ones
+   * found by mining all the transactions again. The number of transactions goes up and down, so the minimum support
+   * count (5% of the transactions) increases and decreases, and some batches are large enough to mine all the
+   * transactions again.
+   */
+  @Test
+  public void applyChangesMatchesMine() {
+    for (long seed = 1; seed <= 5; seed++) {
+      Random random = new Random(seed);
+      Map<String, List<ArffInstance>> instances = new LinkedHashMap<>();
+      int nextInstanceId = 0;
+      IncrementalMiningState state = new IncrementalMiningState(TEMPLATE_ID, ATTRIBUTE_NAMES, CONSEQUENCE_ENABLED);
+      while (countTransactions(instances) < 480) {
+        String instanceId = "instance" + nextInstanceId++;
+        List<ArffInstance> arffInstances = randomArffInstances(random);
+        instances.put(instanceId, arffInstances);
+        state.setInstance(instanceId, arffInstances);
+      }
+      state.mine();
+      assertSameItemsets(instances, state);
+
+      for (int batch = 0; batch < 40; batch++) {
+        // Grow during the first half and shrink during the second one
+        boolean growing = batch < 20;
+        int batchSize = random.nextInt(8) == 0 ? 30 + random.nextInt(20) : 1 + random.nextInt(4);
+        Map<String, List<ArffInstance>> updatedInstances = new LinkedHashMap<>();
+        Set<String> deletedInstanceIds = new HashSet<>();
+        List<String> instanceIds = new ArrayList<>(instances.keySet());
+        for (int i = 0; i < batchSize; i++) {
+          int operation = random.nextInt(10);
+          String existingId = instanceIds.get(random.nextInt(instanceIds.size()));
+          if (operation < (growing ? 5 : 2)) { // Create
+            updatedInstances.put("instance" + nextInstanceId++, randomArffInstances(random));
+          } else if (operation < (growing ? 8 : 5)) { // Update
+            if (!deletedInstanceIds.contains(existingId)) {
+              updatedInstances.put(existingId, randomArffInstances(random));
+            }
+          } else if (!updatedInstances.containsKey(existingId)) { // Delete
+            deletedInstanceIds.add(existingId);
+          }
+        }
+        // Deleting an instance that does not exist has no effect
+        deletedInstanceIds.add("missing" + batch);
+
+        Map<Itemset, Integer> previousSupports = copyItemsetSupports(state);
+        Map<Itemset, Integer> changes = state.applyChanges(updatedInstances, deletedInstanceIds);
+        instances.keySet().removeAll(deletedInstanceIds);
+        instances.putAll(updatedInstances);
+
+        assertSameItemsets(instances, state);
+        assertChangesReported(previousSupports, state.getItemsetSupports(), changes);
+      }
+    }
+  }
+
+  /**
+   * Checks that the state has the counts of a fresh state mined from the same instances. Additional itemsets are
+   * allowed, as long as they are frequent and their counts are exact.
+   */
+  private static void assertSameItemsets(Map<String, List<ArffInstance>> instances, IncrementalMiningState state) {
+    IncrementalMiningState minedState = new IncrementalMiningState(TEMPLATE_ID, ATTRIBUTE_NAMES, CONSEQUENCE_ENABLED);
+    for (Map.Entry<String, List<ArffInstance>> instance : instances.entrySet()) {
+      minedState.setInstance(instance.getKey(), instance.getValue());
+    }
+    minedState.mine();
+    Assert.assertEquals(minedState.getNumTransactions(), state.getNumTransactions());
+    Assert.assertEquals(minedState.getMinSupportCount(), state.getMinSupportCount());
+
+    Map<Set<String>, Integer> supports = decode(state);
+    Map<Set<String>, Integer> minedSupports = decode(minedState);
+    for (Map.Entry<Set<String>, Integer> minedItemset : minedSupports.entrySet()) {
+      Assert.assertEquals(minedItemset.getKey().toString(), minedItemset.getValue(),
+          supports.get(minedItemset.getKey()));
+    }
+    for (Map.Entry<Set<String>, Integer> itemset : supports.entrySet()) {
+      if (!minedSupports.containsKey(itemset.getKey())) {
+        Assert.assertEquals(itemset.getKey().toString(), countSupport(instances, itemset.getKey()),
+            (int) itemset.getValue());
+        Assert.assertTrue(itemset.getKey().toString(), itemset.getValue() >= state.getMinSupportCount());
+      }
+    }
+  }
+
+  /**
+   * Checks that every itemset whose count has changed, has been added or has been removed is reported with its
+   * previous count
+   */
+  private static void assertChangesReported(Map<Itemset, Integer> previousSupports,
+                                            Map<Itemset, Integer> currentSupports, Map<Itemset, Integer> changes) {
+    Set<Itemset> itemsets = new HashSet<>(previousSupports.keySet());
+    itemsets.addAll(currentSupports.keySet());
+    for (Itemset itemset : itemsets) {
+      Integer previous = previousSupports.get(itemset);
+      if (!Objects.equals(previous, currentSupports.get(itemset))) {
+        String items = Arrays.toString(itemset.getItems());
+        Assert.assertTrue(items, changes.containsKey(itemset));
+        Assert.assertEquals(items, previous, changes.get(itemset));
+      }
+    }
+  }
+
+  /**
+   * @return The itemset counts, with the itemsets as sets of attribute=value strings, which do not depend on the
+   * item ids assigned by the state
+   */
+  private static Map<Set<String>, Integer> decode(IncrementalMiningState state) {
+    Map<Set<String>, Integer> decoded = new HashMap<>();
+    for (Map.Entry<Itemset, Integer> itemset : state.getItemsetSupports().entrySet()) {
+      Set<String> pairs = new HashSet<>();
+      for (int item : itemset.getKey().getItems()) {
+        pairs.add(state.getItemAttributeName(item) + "=" + state.getItemValue(item));
+      }
+      decoded.put(pairs, itemset.getValue());
+    }
+    return decoded;
+  }
+
+  private static int countSupport(Map<String, List<ArffInstance>> instances, Set<String> pairs) {
+    int count = 0;
+    for (List<ArffInstance> arffInstances : instances.values()) {
+      for (ArffInstance arffInstance : arffInstances) {
+        Set<String> instancePairs = new HashSet<>();
+        for (int a = 0; a < ATTRIBUTE_NAMES.size(); a++) {
+          instancePairs.add(ATTRIBUTE_NAMES.get(a) + "=" + arffInstance.getValues().get(a));
+        }
+        if (instancePairs.containsAll(pairs)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private static Map<Itemset, Integer> copyItemsetSupports(IncrementalMiningState state) {
+    return new HashMap<>(state.getItemsetSupports());
+  }
+
+  private static int countTransactions(Map<String, List<ArffInstance>> instances) {
+    int count = 0;
+    for (List<ArffInstance> arffInstances : instances.values()) {
+      count += arffInstances.size();
+    }
+    return count;
+  }
+
+  /**
+   * @return The Weka instances of a template instance: one or two (as for an array with two items), with some missing
+   * values. The values are skewed, so that some itemsets are frequent and others are not.
+   */
+  private static List<ArffInstance> randomArffInstances(Random random) {
+    List<ArffInstance> arffInstances = new ArrayList<>();
+    int count = random.nextInt(3) == 0 ? 2 : 1;
+    for (int i = 0; i < count; i++) {
+      List<String> values = new ArrayList<>();
+      for (int a = 0; a < ATTRIBUTE_NAMES.size(); a++) {
+        if (random.nextInt(6) == 0) {
+          values.add(null);
+        } else {
+          int value = Math.min(random.nextInt(VALUES_PER_ATTRIBUTE), random.nextInt(VALUES_PER_ATTRIBUTE));
+          values.add("[](value" + value + ")");
+        }
+      }
+      arffInstances.add(new ArffInstance(values));
+    }
+    return arffInstances;
+  }
+
+}
@@ -0,0 +1,92 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.miners;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.ArffInstance;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.WekaInstancesBuilder;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+import weka.core.Instances;
+
+import java.util.*;
+
+public class FPGrowthRulesMinerTest {
+
+  private static final String TEMPLATE_ID = "https://repo.metadatacenter.org/templates/test";
+  private static final List<String> ATTRIBUTE_NAMES =
+      Arrays.asList("[](a)", "[](b)", "[](c)", "[](d)", "[](e)", "[](f)");
+  private static final List<Boolean> CONSEQUENCE_ENABLED = Arrays.asList(true, true, true, true, false, false);
+  private static final int VALUES_PER_ATTRIBUTE = 3;
+  // Number of instances of each profile (200 instances). The lower bound of the minimum support is 1/200, but Apriori
+  // stops lowering the support at 0.05, so the itemsets of the profiles below 5% of the instances (and of the values
+  // they share) are only frequent if FP-Growth uses the same support. Values shared by large and small profiles give
+  // rules with confidences below MIN_CONFIDENCE
+  private static final int[] PROFILE_WEIGHTS = {1, 2, 3, 4, 6, 8, 10, 12, 15, 20, 25, 34, 60};
+
+  /**
+   * Mines the same synthetic datasets with Apriori and FP-Growth, and checks that they generate the same rules with the
+   * same support and confidence, including the datasets with itemsets whose support is between the lower bound of the
+   * minimum support and the support Apriori ends with
+   */
+  @Test
+  public void mineRulesMatchesApriori() throws Exception {
+    for (long seed = 1; seed <= 3; seed++) {
+      Instances data = randomInstances(new Random(seed));
+      Map<String, EsRule> aprioriRules = byItems(new AprioriRulesMiner().mineRules(data, TEMPLATE_ID));
+      Map<String, EsRule> fpGrowthRules = byItems(new FPGrowthRulesMiner().mineRules(data, TEMPLATE_ID));
+
+      Assert.assertFalse(aprioriRules.isEmpty());
+      Assert.assertEquals(aprioriRules.keySet(), fpGrowthRules.keySet());
+      for (Map.Entry<String, EsRule> aprioriRule : aprioriRules.entrySet()) {
+        EsRule fpGrowthRule = fpGrowthRules.get(aprioriRule.getKey());
+        Assert.assertEquals(aprioriRule.getKey(), aprioriRule.getValue().getSupport(), fpGrowthRule.getSupport(), 0);
+        Assert.assertEquals(aprioriRule.getKey(), aprioriRule.getValue().getConfidence(), fpGrowthRule.getConfidence(),
+            1e-9);
+      }
+    }
+  }
+
+  /**
+   * @return The rules by their premise and consequence items, which do not depend on the order of the items
+   */
+  private static Map<String, EsRule> byItems(List<EsRule> rules) {
+    Map<String, EsRule> rulesByItems = new HashMap<>();
+    for (EsRule rule : rules) {
+      String key = toSortedItems(rule.getPremise()) + " => " + toSortedItems(rule.getConsequence());
+      Assert.assertNull("Duplicated rule: " + key, rulesByItems.put(key, rule));
+    }
+    return rulesByItems;
+  }
+
+  private static String toSortedItems(List<EsRuleItem> items) {
+    Set<String> sortedItems = new TreeSet<>();
+    for (EsRuleItem item : items) {
+      sortedItems.add(item.getFieldNormalizedPath() + "=" + item.getFieldNormalizedValue());
+    }
+    return sortedItems.toString();
+  }
+
+  /**
+   * @return A dataset with a few random profiles, each one repeated PROFILE_WEIGHTS times in random order. The
+   * profiles share some values and have some missing values.
+   */
+  private static Instances randomInstances(Random random) {
+    List<List<String>> instances = new ArrayList<>();
+    for (int weight : PROFILE_WEIGHTS) {
+      List<String> profile = new ArrayList<>();
+      for (int a = 0; a < ATTRIBUTE_NAMES.size(); a++) {
+        profile.add(random.nextInt(5) == 0 ? null : "[](value" + random.nextInt(VALUES_PER_ATTRIBUTE) + ")");
+      }
+      for (int i = 0; i < weight; i++) {
+        instances.add(profile);
+      }
+    }
+    Collections.shuffle(instances, random);
+    WekaInstancesBuilder builder = new WekaInstancesBuilder(TEMPLATE_ID, ATTRIBUTE_NAMES, CONSEQUENCE_ENABLED);
+    for (List<String> values : instances) {
+      builder.addInstance(new ArffInstance(values));
+    }
+    return builder.build();
+  }
+
+}
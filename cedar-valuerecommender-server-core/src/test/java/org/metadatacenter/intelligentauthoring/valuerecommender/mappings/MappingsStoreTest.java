@@ -0,0 +1,115 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.mappings;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class MappingsStoreTest {
+
+  private static final String OBO = "http://purl.obolibrary.org/obo/";
+
+  /**
+   * Converts a JSON mappings file to the binary format, reads it back (from memory and memory-mapped from a file) and
+   * compares the mappings and canonical URIs with the ones of the JSON file. The mappings contain chains and URIs
+   * that are only mapped transitively.
+   */
+  @Test
+  public void binaryStoreMatchesJson() throws IOException {
+    Map<String, List<String>> mappings = new LinkedHashMap<>();
+    // Chain: c is only mapped to a through b
+    mappings.put(OBO + "A_1", Collections.singletonList(OBO + "B_1"));
+    mappings.put(OBO + "B_1", Collections.singletonList(OBO + "C_1"));
+    // a and c are mapped to b, but not to each other. Neither d nor b have mappings of their own
+    mappings.put(OBO + "A_2", Arrays.asList(OBO + "B_2", OBO + "D_2"));
+    mappings.put(OBO + "C_2", Collections.singletonList(OBO + "B_2"));
+    // Non-ASCII URIs and a URI with an empty list of mappings
+    mappings.put("http://example.org/caf\u00e9", Collections.singletonList("http://example.org/\u00e9t\u00e9"));
+    mappings.put(OBO + "E_3", Collections.emptyList());
+    // Random mappings, with several classes of different sizes
+    Random random = new Random(1);
+    for (int i = 0; i < 200; i++) {
+      List<String> uriMappings = new ArrayList<>();
+      for (int j = random.nextInt(4); j > 0; j--) {
+        uriMappings.add(OBO + "R_" + random.nextInt(300));
+      }
+      mappings.put(OBO + "R_" + i, uriMappings);
+    }
+
+    byte[] json = new ObjectMapper().writeValueAsBytes(mappings);
+    ByteArrayOutputStream binary = new ByteArrayOutputStream();
+    MappingsStore.write(new ByteArrayInputStream(json), binary);
+
+    assertSameMappings(mappings, MappingsStore.read(new ByteArrayInputStream(binary.toByteArray())));
+    assertSameMappings(mappings, MappingsStore.fromJson(new ByteArrayInputStream(json)));
+    Path file = Files.createTempFile("mappings", ".bin");
+    try {
+      Files.write(file, binary.toByteArray());
+      assertSameMappings(mappings, MappingsStore.map(file));
+    } finally {
+      Files.delete(file);
+    }
+
+    MappingsStore store = MappingsStore.read(new ByteArrayInputStream(binary.toByteArray()));
+    Assert.assertEquals(OBO + "A_1", store.getCanonicalUri(OBO + "C_1"));
+    Assert.assertEquals(OBO + "A_2", store.getCanonicalUri(OBO + "C_2"));
+    Assert.assertEquals(OBO + "A_2", store.getCanonicalUri(OBO + "D_2"));
+    Assert.assertEquals(Collections.emptyList(), store.getMappings(OBO + "B_2"));
+  }
+
+  private static void assertSameMappings(Map<String, List<String>> mappings, MappingsStore store) {
+    Map<String, String> canonicalUris = getCanonicalUris(mappings);
+    Assert.assertEquals(canonicalUris.size(), store.size());
+    for (Map.Entry<String, String> canonicalUri : canonicalUris.entrySet()) {
+      String uri = canonicalUri.getKey();
+      Assert.assertEquals(uri, mappings.getOrDefault(uri, Collections.emptyList()), store.getMappings(uri));
+      Assert.assertEquals(uri, canonicalUri.getValue(), store.getCanonicalUri(uri));
+    }
+    // URIs that are not in the mappings
+    for (String uri : Arrays.asList(OBO + "UNKNOWN", "", OBO + "A_", OBO + "R_99x", "\uffff")) {
+      Assert.assertEquals(uri, Collections.emptyList(), store.getMappings(uri));
+      Assert.assertEquals(uri, uri, store.getCanonicalUri(uri));
+    }
+  }
+
+  /**
+   * @return The canonical URI (the smallest URI of its connected component) of every URI in the mappings, found by
+   * traversing the undirected mappings graph
+   */
+  private static Map<String, String> getCanonicalUris(Map<String, List<String>> mappings) {
+    Map<String, Set<String>> neighbors = new HashMap<>();
+    for (Map.Entry<String, List<String>> uriMappings : mappings.entrySet()) {
+      neighbors.computeIfAbsent(uriMappings.getKey(), uri -> new HashSet<>());
+      for (String mappedUri : uriMappings.getValue()) {
+        neighbors.get(uriMappings.getKey()).add(mappedUri);
+        neighbors.computeIfAbsent(mappedUri, uri -> new HashSet<>()).add(uriMappings.getKey());
+      }
+    }
+    Map<String, String> canonicalUris = new HashMap<>();
+    for (String uri : neighbors.keySet()) {
+      if (canonicalUris.containsKey(uri)) {
+        continue;
+      }
+      Set<String> component = new HashSet<>();
+      Deque<String> pending = new ArrayDeque<>(Collections.singleton(uri));
+      while (!pending.isEmpty()) {
+        String current = pending.pop();
+        if (component.add(current)) {
+          pending.addAll(neighbors.get(current));
+        }
+      }
+      String canonicalUri = Collections.min(component);
+      for (String componentUri : component) {
+        canonicalUris.put(componentUri, canonicalUri);
+      }
+    }
+    return canonicalUris;
+  }
+
+}
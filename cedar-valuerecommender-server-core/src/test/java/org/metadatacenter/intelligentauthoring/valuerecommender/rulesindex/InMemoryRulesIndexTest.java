@@ -0,0 +1,137 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.Field;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.NormalizedField;
+import org.metadatacenter.intelligentauthoring.valuerecommender.domainobjects.RecommendationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.MAX_ES_RESULTS;
+
+public class InMemoryRulesIndexTest {
+
+  private static final String TEMPLATE_ID = "https://repo.metadatacenter.org/templates/test";
+
+  /**
+   * The index returns all the matching rules, not only the first MAX_ES_RESULTS hits of the OpenSearch query
+   */
+  @Test
+  public void findRulesReturnsAllMatchingRules() {
+    List<EsRule> rules = new ArrayList<>();
+    for (int i = 0; i < MAX_ES_RESULTS + 50; i++) {
+      rules.add(rule(Collections.singletonList(item("a", "x")), item("t", "value" + i), 1, 5));
+    }
+    rules.add(rule(Collections.singletonList(item("a", "x")), item("u", "value"), 1, 5));
+    InMemoryRulesIndex index = new InMemoryRulesIndex(TEMPLATE_ID, rules);
+
+    MatchedRules matchedRules = index.findRules(context(field("a", "x")), target("t"), false, false, false);
+    Assert.assertEquals(rules.subList(0, MAX_ES_RESULTS + 50), matchedRules.getRules());
+    for (int count : matchedRules.getIntersectionCounts()) {
+      Assert.assertEquals(1, count);
+    }
+  }
+
+  @Test
+  public void findRulesCountsMatchedPopulatedFields() {
+    EsRule both = rule(Arrays.asList(item("a", "x"), item("b", "y")), item("t", "v1"), 1, 5);
+    EsRule one = rule(Collections.singletonList(item("a", "x")), item("t", "v2"), 1, 5);
+    EsRule none = rule(Collections.singletonList(item("c", "z")), item("t", "v3"), 1, 5);
+    InMemoryRulesIndex index = new InMemoryRulesIndex(TEMPLATE_ID, Arrays.asList(both, one, none));
+
+    MatchedRules matchedRules = index.findRules(context(field("a", "x"), field("b", "y")), target("t"), false, false,
+        false);
+    Assert.assertEquals(Arrays.asList(both, one, none), matchedRules.getRules());
+    Assert.assertArrayEquals(new int[]{2, 1, 0}, matchedRules.getIntersectionCounts());
+  }
+
+  /**
+   * In strict mode, the premise must contain exactly the populated fields
+   */
+  @Test
+  public void findRulesStrictMatch() {
+    EsRule exact = rule(Arrays.asList(item("a", "x"), item("b", "y")), item("t", "v1"), 1, 5);
+    EsRule partial = rule(Collections.singletonList(item("a", "x")), item("t", "v2"), 1, 5);
+    EsRule larger = rule(Arrays.asList(item("a", "x"), item("b", "y"), item("c", "z")), item("t", "v3"), 1, 5);
+    InMemoryRulesIndex index = new InMemoryRulesIndex(TEMPLATE_ID, Arrays.asList(exact, partial, larger));
+
+    MatchedRules matchedRules = index.findRules(context(field("a", "x"), field("b", "y")), target("t"), true, false,
+        false);
+    Assert.assertEquals(Collections.singletonList(exact), matchedRules.getRules());
+    Assert.assertArrayEquals(new int[]{2}, matchedRules.getIntersectionCounts());
+  }
+
+  @Test
+  public void findRulesFiltersByConfidenceAndSupport() {
+    EsRule highConfidence = rule(Collections.singletonList(item("a", "x")), item("t", "v1"), 0.95, 5);
+    EsRule lowConfidence = rule(Collections.singletonList(item("a", "x")), item("t", "v2"), 0.5, 5);
+    EsRule lowSupport = rule(Collections.singletonList(item("a", "x")), item("t", "v3"), 0.95, 0.5);
+    InMemoryRulesIndex index = new InMemoryRulesIndex(TEMPLATE_ID,
+        Arrays.asList(highConfidence, lowConfidence, lowSupport));
+    RecommendationContext context = context(field("a", "x"));
+
+    Assert.assertEquals(Arrays.asList(highConfidence, lowSupport),
+        index.findRules(context, target("t"), false, true, false).getRules());
+    Assert.assertEquals(Arrays.asList(highConfidence, lowConfidence),
+        index.findRules(context, target("t"), false, false, true).getRules());
+    Assert.assertEquals(Collections.singletonList(highConfidence),
+        index.findRules(context, target("t"), false, true, true).getRules());
+  }
+
+  /**
+   * Rules with several consequences are not indexed, and each target field only gets the rules of its path
+   */
+  @Test
+  public void findRulesForSeveralTargetFields() {
+    EsRule ruleT = rule(Collections.singletonList(item("a", "x")), item("t", "v"), 1, 5);
+    EsRule ruleU = rule(Collections.singletonList(item("a", "x")), item("u", "v"), 1, 5);
+    EsRule twoConsequences = new EsRule(TEMPLATE_ID, Collections.singletonList(item("a", "x")),
+        Arrays.asList(item("t", "v"), item("u", "v")), 5, 1, 1, 0, 1, 1, 2);
+    InMemoryRulesIndex index = new InMemoryRulesIndex(TEMPLATE_ID, Arrays.asList(ruleT, twoConsequences, ruleU));
+    Assert.assertEquals(2, index.size());
+
+    RecommendationContext context = context(field("a", "x"));
+    List<MatchedRules> matchedRules = index.findRules(context, Arrays.asList(target("u"), target("t"), target("w")),
+        false, false, false);
+    Assert.assertEquals(3, matchedRules.size());
+    Assert.assertEquals(Collections.singletonList(ruleU), matchedRules.get(0).getRules());
+    Assert.assertEquals(Collections.singletonList(ruleT), matchedRules.get(1).getRules());
+    Assert.assertTrue(matchedRules.get(2).getRules().isEmpty());
+    Assert.assertEquals(index.findRules(context, target("t"), false, false, false).getRules(),
+        matchedRules.get(1).getRules());
+  }
+
+  private static RecommendationContext context(Field... populatedFields) {
+    return RecommendationContext.of(Arrays.asList(populatedFields), false);
+  }
+
+  private static Field field(String fieldPath, String value) {
+    return new Field(fieldPath, value, null);
+  }
+
+  private static NormalizedField target(String fieldPath) {
+    return NormalizedField.targetField(new Field(fieldPath, null, null), false);
+  }
+
+  private static EsRule rule(List<EsRuleItem> premise, EsRuleItem consequence, double confidence, double support) {
+    return new EsRule(TEMPLATE_ID, premise, Collections.singletonList(consequence), support, confidence, 1, 0, 1,
+        premise.size(), 1);
+  }
+
+  /**
+   * @return A rule item with the normalized path and value of a field with the given path and value
+   */
+  private static EsRuleItem item(String fieldPath, String value) {
+    Field field = new Field(fieldPath, value, null);
+    NormalizedField normalizedField = NormalizedField.populatedField(field, false);
+    return new EsRuleItem(fieldPath, "", normalizedField.getNormalizedPath(), null, null, value,
+        normalizedField.getNormalizedValue(), null, null);
+  }
+
+}
@@ -0,0 +1,89 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.rulesindex;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRule;
+import org.metadatacenter.intelligentauthoring.valuerecommender.associationrules.elasticsearch.EsRuleItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RulePremiseMatcherTest {
+
+  private static final String TEMPLATE_ID = "https://repo.metadatacenter.org/templates/test";
+
+  private static final List<EsRule> RULES = Arrays.asList(
+      rule(item("A", "X"), item("B", "Y")),
+      rule(item("A", "X")),
+      rule(item("C", "Z")),
+      rule(item("A", "Y"), item("B", "Y")),
+      // Two fields with the same normalized path and value
+      rule(item("A", "X"), item("A", "X")));
+
+  @Test
+  public void matchCountsPopulatedItemsContainedInPremises() {
+    RulePremiseMatcher matcher = new RulePremiseMatcher(RULES);
+    RulePremiseMatcher.PremiseMatches matches = matcher.match(Arrays.asList("A", "B"), Arrays.asList("X", "Y"));
+
+    Assert.assertEquals(4, matches.size());
+    Assert.assertArrayEquals(new int[]{0, 1, 3, 4}, ruleIds(matches));
+    Assert.assertArrayEquals(new int[]{2, 1, 1, 2}, counts(matches));
+    Assert.assertEquals(0, matches.getCountForRule(2));
+    Assert.assertEquals(2, matches.getCountForRule(4));
+  }
+
+  @Test
+  public void matchCountsDuplicatedPopulatedItems() {
+    RulePremiseMatcher matcher = new RulePremiseMatcher(RULES);
+    RulePremiseMatcher.PremiseMatches matches = matcher.match(Arrays.asList("A", "A"), Arrays.asList("X", "X"));
+
+    Assert.assertArrayEquals(new int[]{0, 1, 4}, ruleIds(matches));
+    Assert.assertArrayEquals(new int[]{2, 2, 4}, counts(matches));
+  }
+
+  @Test
+  public void matchIgnoresUnknownItems() {
+    RulePremiseMatcher matcher = new RulePremiseMatcher(RULES);
+    Assert.assertEquals(-1, matcher.getItemId("A", "Z"));
+    Assert.assertEquals(-1, matcher.getItemId("D", "X"));
+    Assert.assertEquals(0, matcher.match(Arrays.asList("A", "D"), Arrays.asList("Z", "X")).size());
+    Assert.assertEquals(0, matcher.match(Collections.emptyList(), Collections.emptyList()).size());
+  }
+
+  @Test
+  public void countMatchesReturnsACountForEveryRule() {
+    RulePremiseMatcher matcher = new RulePremiseMatcher(RULES);
+    int[] counts = matcher.countMatches(Arrays.asList("B", "C"), Arrays.asList("Y", "Z"));
+    Assert.assertArrayEquals(new int[]{1, 0, 1, 1, 0}, counts);
+  }
+
+  private static int[] ruleIds(RulePremiseMatcher.PremiseMatches matches) {
+    int[] ruleIds = new int[matches.size()];
+    for (int i = 0; i < matches.size(); i++) {
+      ruleIds[i] = matches.getRuleId(i);
+    }
+    return ruleIds;
+  }
+
+  private static int[] counts(RulePremiseMatcher.PremiseMatches matches) {
+    int[] counts = new int[matches.size()];
+    for (int i = 0; i < matches.size(); i++) {
+      counts[i] = matches.getCount(i);
+    }
+    return counts;
+  }
+
+  private static EsRule rule(EsRuleItem... premise) {
+    List<EsRuleItem> consequence = Collections.singletonList(item("T", "V"));
+    return new EsRule(TEMPLATE_ID, new ArrayList<>(Arrays.asList(premise)), consequence, 1, 1, 1, 0, 1,
+        premise.length, consequence.size());
+  }
+
+  private static EsRuleItem item(String normalizedPath, String normalizedValue) {
+    return new EsRuleItem(normalizedPath, "", normalizedPath, null, null, normalizedValue, normalizedValue, null,
+        null);
+  }
+
+}
@@ -0,0 +1,82 @@
+package org.metadatacenter.intelligentauthoring.valuerecommender.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.metadatacenter.intelligentauthoring.valuerecommender.util.Constants.MAPPINGS_FILE_PATH;
+
+public class CedarTextUtilsTest {
+
+  private static final List<String> VALUES = Arrays.asList(
+      "colorectal cancer", "Colorectal_Cancer", "  frontal cortex ", "FRONTAL CORTEX", "Homo sapiens", "male",
+      "Female", "C57BL/6J", "HeLa", "T-cell", "CD4+ T cell", "RNA-Seq", "Illumina HiSeq 2500", "10 mg/kg",
+      "2019-03-27", "37.5", "-80\u00b0C", "pH 7.4", "50%", "n/a", "", " ", "---", "a", "Z9", "Sj\u00f6gren syndrome",
+      "M\u00e9ni\u00e8re's disease", "caf\u00e9 au lait spots", "na\u00efve B cell", "Crohn\u2019s disease",
+      "\u03b2-cell", "\u03b1-synuclein", "TNF-\u03b1", "IL-1\u03b2", "\u00b5g/ml", "5 \u00b5m", "stra\u00dfe",
+      "\ufb01broblast", "\u00c5ngstr\u00f6m", "\u03a9", "\u00bd", "\u00b2", "\u2460", "\u0661\u0662\u0663",
+      "\u0663 \u0623\u0634\u0647\u0631", "\u6771\u4eac", "\u65e5\u672c\u8a9e\u306e\u30c6\u30ad\u30b9\u30c8",
+      "\ud55c\uad6d\uc5b4", "\u0395\u03bb\u03bb\u03b7\u03bd\u03b9\u03ba\u03ac",
+      "\u0420\u0443\u0441\u0441\u043a\u0438\u0439 \u0442\u0435\u043a\u0441\u0442", "\u05e2\u05d1\u05e8\u05d9\u05ea",
+      "\u0939\u093f\u0928\u094d\u0926\u0940", "\ud835\udc9c\ud835\udcb7\ud835\udcb8",
+      "\ud835\udfd8\ud835\udfd9\ud835\udfda", "emoji \ud83d\ude00 value", "tab\tseparated", "line\nbreak",
+      "\u0000null", "e\u0301", "\u0301", "\u0130stanbul", "\u01c5", "\u0149", "\ud800", "x\udc00y");
+
+  /**
+   * Normalization before the single-pass implementation. The new one must return exactly the same values.
+   */
+  private static String referenceNormalizeValue(String value) {
+    value = value.trim();
+    value = Normalizer.normalize(value, Normalizer.Form.NFD);
+    value = value.replaceAll("[^\\p{L}\\p{Nd}]+", "");
+    value = value.toUpperCase();
+    return value;
+  }
+
+  @Test
+  public void normalizeValueSampleValues() {
+    for (String value : VALUES) {
+      Assert.assertEquals(value, referenceNormalizeValue(value), CedarTextUtils.normalizeValue(value));
+      // Second call, which may be served by the cache
+      Assert.assertEquals(value, referenceNormalizeValue(value), CedarTextUtils.normalizeValue(value));
+    }
+  }
+
+  @Test
+  public void normalizeValueMappedUris() throws IOException {
+    List<String> uris = new ArrayList<>();
+    try (InputStream in = CedarTextUtilsTest.class.getClassLoader().getResourceAsStream(MAPPINGS_FILE_PATH)) {
+      Assert.assertNotNull(in);
+      JsonNode mappings = new ObjectMapper().readTree(in);
+      Iterator<String> it = mappings.fieldNames();
+      while (it.hasNext()) {
+        uris.add(it.next());
+      }
+    }
+    Assert.assertFalse(uris.isEmpty());
+    for (String uri : uris) {
+      Assert.assertEquals(uri, referenceNormalizeValue(uri), CedarTextUtils.normalizeValue(uri));
+    }
+  }
+
+  @Test
+  public void normalizeValueAllCharacters() {
+    // Every BMP character, alone and surrounded by ASCII letters
+    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+      String value = String.valueOf((char) c);
+      Assert.assertEquals(referenceNormalizeValue(value), CedarTextUtils.normalizeValue(value));
+      value = "a" + (char) c + "b";
+      Assert.assertEquals(referenceNormalizeValue(value), CedarTextUtils.normalizeValue(value));
+    }
+  }
+
+}